@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Compile-time benchmark: java -cp <classes> DogCompileBench [lines] [depth]
+// Built from bench/ together with the product sources: javac -encoding UTF-8 -d <classes> src/*.java bench/*.java
+public final class DogCompileBench {
+
+    private DogCompileBench() {
+    }
+
+    public static void main(String[] args) {
+        int target = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        List<String> program = generate(target, depth);
+
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        int instructions = 0;
+        for (int i = 0; i < 10; i++)
+            instructions = compiler.compile(program).size();
+
+        int runs = 10;
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            compiler.compile(program);
+            long dt = System.nanoTime() - t0;
+            best = Math.min(best, dt);
+            total += dt;
+        }
+        System.out.printf("lines=%d depth=%d instructions=%d%n", program.size(), depth, instructions);
+        System.out.printf("best=%.1f ms avg=%.1f ms (%.0f lines/ms)%n",
+                best / 1e6, total / 1e6 / runs, program.size() / (best / 1e6));
+    }
+
+    // Repeats a ladder of nested if/while blocks, each level with a couple of statements.
+    static List<String> generate(int target, int depth) {
+        ArrayList<String> out = new ArrayList<String>(target + 4 * depth);
+        out.add("let total = 0");
+        int unit = 0;
+        while (out.size() < target) {
+            out.add("fn f" + unit + "(n) {");
+            out.add("  let acc = [n, n + 1,");
+            out.add("    n + 2]");
+            for (int d = 0; d < depth; d++) {
+                String pad = indent(d + 1);
+                out.add(pad + (d % 2 == 0 ? "if n > " + d + " {" : "while n < " + d + " {"));
+                out.add(pad + "  let v" + d + " = (n * " + d + " + 1) / 2 # level " + d);
+                out.add(pad + "  n = n + 1");
+            }
+            for (int d = depth - 1; d >= 0; d--)
+                out.add(indent(d + 1) + "}");
+            out.add("  return acc[0]");
+            out.add("}");
+            out.add("total = total + f" + unit + "(" + unit + ")");
+            unit++;
+        }
+        return out;
+    }
+
+    private static String indent(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            sb.append("  ");
+        return sb.toString();
+    }
+}
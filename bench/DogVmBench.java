@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stack VM vs register VM: java -cp <classes> DogVmBench [file.dog ...]
+// Benchmarks live outside src/ so they stay out of dpl.jar; build them together with the product sources:
+//   javac -encoding UTF-8 -d <classes> src/*.java bench/*.java
+// Without arguments it runs the built-in workloads. Program output is discarded while timing.
+public final class DogVmBench {
+
+    private DogVmBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, List<String>> programs = new LinkedHashMap<String, List<String>>();
+        if (args.length == 0) {
+            programs.put("arith", Arrays.asList(
+                    "let s = 0",
+                    "let i = 0",
+                    "while i < 2000000 {",
+                    "  let a = i * 3",
+                    "  let b = a - i",
+                    "  s = s + a + b",
+                    "  i = i + 1",
+                    "}",
+                    "say s"));
+            programs.put("calls", Arrays.asList(
+                    "fn fib(n) {",
+                    "  if n < 2 {",
+                    "    return n",
+                    "  }",
+                    "  return fib(n - 1) + fib(n - 2)",
+                    "}",
+                    "say fib(24)"));
+            programs.put("arrays", Arrays.asList(
+                    "import io",
+                    "let xs = []",
+                    "for i in range(0, 1000) {",
+                    "  io.push(xs, i)",
+                    "}",
+                    "let t = 0",
+                    "for r in range(0, 300) {",
+                    "  for i in range(0, 1000) {",
+                    "    t = t + xs[i] * 2",
+                    "  }",
+                    "}",
+                    "say t"));
+        } else {
+            for (String f : args)
+                programs.put(f, Files.readAllLines(Paths.get(f), StandardCharsets.UTF_8));
+        }
+
+        System.out.printf("%-10s %14s %14s %8s %10s %10s %8s%n",
+                "program", "stack disp", "reg disp", "ratio", "stack ms", "reg ms", "speedup");
+        for (Map.Entry<String, List<String>> e : programs.entrySet()) {
+            Chunk chunk = new BytecodeCompiler().compile(e.getValue());
+            long[] stack = measure(chunk, "stack");
+            long[] reg = measure(chunk, "reg");
+            System.out.printf("%-10s %14d %14d %8.2f %10.1f %10.1f %7.2fx%n", e.getKey(), stack[0], reg[0],
+                    (double) reg[0] / stack[0], stack[1] / 1e6, reg[1] / 1e6, (double) stack[1] / reg[1]);
+        }
+    }
+
+    // Dispatch count of one run and best wall time of ten, after warm-up.
+    private static long[] measure(Chunk chunk, String vm) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        try {
+            long dispatched = 0;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 15; i++) {
+                DogEngine engine = DogEngine.named(vm);
+                long t0 = System.nanoTime();
+                engine.execute(chunk, Code.newContext());
+                long dt = System.nanoTime() - t0;
+                dispatched = engine.dispatchCount();
+                if (i >= 5)
+                    best = Math.min(best, dt);
+            }
+            return new long[] { dispatched, best };
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
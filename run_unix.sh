@@ -1,8 +1,18 @@
 set -eu
 
-ROOT="$(CDPATH= cd -- "$(dirname -- "$0")/.." && pwd)"
+ROOT="$(CDPATH= cd -- "$(dirname -- "$0")" && pwd)"
 DIST_DIR="$ROOT/dist"
 JAR_NAME="dpl.jar"
+CDS_ARCHIVE="$DIST_DIR/dpl.jsa"
+
+# Uses the class-data sharing archive from `scripts/build_jar_unix.sh --cds` when there is one.
+run_dpl() {
+  if [ -f "$CDS_ARCHIVE" ]; then
+    java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xshare:auto -jar "$DIST_DIR/$JAR_NAME" "$@"
+  else
+    java -jar "$DIST_DIR/$JAR_NAME" "$@"
+  fi
+}
 
 echo ""
 echo "=== DPL Run (Unix) ==="
@@ -25,7 +35,7 @@ mkdir -p "$ROOT/out" "$ROOT/test_files_RDL"
 
 echo "✅ Starting DPL..."
 if [ "${1:-}" = "" ]; then
-  java -jar "$DIST_DIR/$JAR_NAME"
+  run_dpl
 else
-  java -jar "$DIST_DIR/$JAR_NAME" "$1"
+  run_dpl "$1"
 fi
\ No newline at end of file
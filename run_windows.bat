@@ -5,6 +5,7 @@ chcp 65001 >nul
 for %%I in ("%~dp0.") do set "ROOT=%%~fI"
 set "DIST_DIR=%ROOT%\dist"
 set "JAR_NAME=dpl.jar"
+set "CDS_ARCHIVE=%DIST_DIR%\dpl.jsa"
 
 echo.
 echo === DPL Run (Windows) ===
@@ -32,7 +33,12 @@ if not exist "%ROOT%\out\" mkdir "%ROOT%\out" >nul 2>nul
 if not exist "%ROOT%\test_files_RDL\" mkdir "%ROOT%\test_files_RDL" >nul 2>nul
 
 echo Starting DPL...
-java -jar "%DIST_DIR%\%JAR_NAME%" %*
+rem Uses the class-data sharing archive from "scripts\build_jar_windows.bat --cds" when there is one.
+if exist "%CDS_ARCHIVE%" (
+  java -XX:SharedArchiveFile="%CDS_ARCHIVE%" -Xshare:auto -jar "%DIST_DIR%\%JAR_NAME%" %*
+) else (
+  java -jar "%DIST_DIR%\%JAR_NAME%" %*
+)
 
 echo.
 pause
\ No newline at end of file
@@ -0,0 +1,60 @@
+set -eu
+
+ROOT="$(CDPATH= cd -- "$(dirname -- "$0")/.." && pwd)"
+DIST_DIR="$ROOT/dist"
+JAR="$DIST_DIR/dpl.jar"
+CDS_ARCHIVE="$DIST_DIR/dpl.jsa"
+RUNS="${1:-20}"
+
+echo ""
+echo "=== DPL Startup Benchmark (Unix) ==="
+echo "Root: $ROOT"
+echo ""
+
+if [ ! -f "$JAR" ] || [ ! -f "$CDS_ARCHIVE" ]; then
+  echo "❌ '$JAR' and '$CDS_ARCHIVE' are both needed."
+  echo "Run: ./scripts/build_jar_unix.sh --cds"
+  exit 1
+fi
+
+case "$(date +%s%N)" in
+  *N | *[!0-9]*)
+    echo "❌ This benchmark needs GNU date (date +%s%N)."
+    exit 1
+    ;;
+esac
+
+TMP_DIR="$(mktemp -d)"
+trap 'rm -rf "$TMP_DIR"' EXIT
+echo 'say "Hello, DPL!"' > "$TMP_DIR/hello.dog"
+
+# Prints the wall time of one `java -jar dpl.jar hello.dog` in milliseconds.
+time_run() {
+  start=$(date +%s%N)
+  "$@" -jar "$JAR" "$TMP_DIR/hello.dog" >/dev/null
+  end=$(date +%s%N)
+  echo $(( (end - start) / 1000000 ))
+}
+
+# Warm the file cache (and the __dogcache__ entry) before measuring.
+time_run java >/dev/null
+time_run java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xshare:auto >/dev/null
+
+: > "$TMP_DIR/plain.txt"
+: > "$TMP_DIR/cds.txt"
+i=0
+while [ "$i" -lt "$RUNS" ]; do
+  time_run java >> "$TMP_DIR/plain.txt"
+  time_run java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xshare:auto >> "$TMP_DIR/cds.txt"
+  i=$((i + 1))
+done
+
+report() {
+  sort -n "$2" | awk -v label="$1" '{ t[NR] = $1; sum += $1 }
+    END { printf "  %-12s median %5d ms   mean %7.1f ms   min %5d ms   (%d runs)\n", label, t[int((NR + 1) / 2)], sum / NR, t[1], NR }'
+}
+
+echo "java -jar dpl.jar hello.dog"
+report "no archive" "$TMP_DIR/plain.txt"
+report "CDS archive" "$TMP_DIR/cds.txt"
+echo ""
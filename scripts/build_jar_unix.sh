@@ -6,6 +6,19 @@ OUT_DIR="$ROOT/out"
 DIST_DIR="$ROOT/dist"
 JAR_NAME="dpl.jar"
 MAIN_CLASS="Code"
+CDS_ARCHIVE="$DIST_DIR/dpl.jsa"
+CDS=0
+
+for arg in "$@"; do
+  case "$arg" in
+    --cds) CDS=1 ;;
+    *)
+      echo "❌ Unknown option: $arg"
+      echo "Usage: $0 [--cds]   (--cds: training run that writes a class-data sharing archive)"
+      exit 1
+      ;;
+  esac
+done
 
 echo ""
 echo "=== DPL Build JAR (Unix) ==="
@@ -53,6 +66,31 @@ MF="$OUT_DIR/manifest.mf"
 echo "✅ Building JAR..."
 jar cfm "$DIST_DIR/$JAR_NAME" "$MF" -C "$OUT_DIR" .
 
+# An archive only matches the jar it was dumped from.
+rm -f "$CDS_ARCHIVE"
+if [ "$CDS" = "1" ]; then
+  echo "✅ Training run for class-data sharing..."
+  TRAIN_DIR="$OUT_DIR/cds"
+  JAR="$DIST_DIR/$JAR_NAME"
+  mkdir -p "$TRAIN_DIR"
+  cp "$ROOT/scripts/cds_training.dog" "$TRAIN_DIR/train.dog"
+  # Record the classes loaded by a fresh run, a compile-cache hit, .dogc compile + run and the console, then dump
+  # them into one archive. Duplicate lines across the lists are harmless.
+  if java -XX:DumpLoadedClassList="$TRAIN_DIR/run.lst" -jar "$JAR" "$TRAIN_DIR/train.dog" >"$TRAIN_DIR/train.log" 2>&1 \
+    && java -XX:DumpLoadedClassList="$TRAIN_DIR/cached.lst" -jar "$JAR" "$TRAIN_DIR/train.dog" >>"$TRAIN_DIR/train.log" 2>&1 \
+    && java -XX:DumpLoadedClassList="$TRAIN_DIR/compile.lst" -jar "$JAR" -c "$TRAIN_DIR/train.dog" "$TRAIN_DIR/train.dogc" >>"$TRAIN_DIR/train.log" 2>&1 \
+    && java -XX:DumpLoadedClassList="$TRAIN_DIR/dogc.lst" -jar "$JAR" "$TRAIN_DIR/train.dogc" >>"$TRAIN_DIR/train.log" 2>&1 \
+    && printf ':help\n:exit\n' | java -XX:DumpLoadedClassList="$TRAIN_DIR/console.lst" -jar "$JAR" >>"$TRAIN_DIR/train.log" 2>&1 \
+    && cat "$TRAIN_DIR"/*.lst > "$TRAIN_DIR/classes.classlist" \
+    && java -Xshare:dump -XX:SharedClassListFile="$TRAIN_DIR/classes.classlist" -XX:SharedArchiveFile="$CDS_ARCHIVE" \
+      -cp "$JAR" >>"$TRAIN_DIR/train.log" 2>&1; then
+    echo "✅ CDS archive: $CDS_ARCHIVE (used by run_unix.sh)"
+  else
+    rm -f "$CDS_ARCHIVE"
+    echo "⚠️  CDS archive skipped (needs JDK 10+). See $TRAIN_DIR/train.log"
+  fi
+fi
+
 echo ""
 echo "✅ Done: $DIST_DIR/$JAR_NAME"
 echo ""
\ No newline at end of file
@@ -10,6 +10,9 @@ set "DIST_DIR=%ROOT%\dist"
 set "JAR_NAME=dpl.jar"
 set "MAIN_CLASS=Code"
 set "LOG=%ROOT%\build_jar.log"
+set "CDS_ARCHIVE=%DIST_DIR%\dpl.jsa"
+set "CDS=0"
+if /i "%~1"=="--cds" set "CDS=1"
 
 > "%LOG%" echo === DPL build log ===
 >>"%LOG%" echo Root: "%ROOT%"
@@ -21,7 +24,37 @@ echo Root: "%ROOT%"
 echo.
 
 where javac >nul 2>nul
-if errorlevel 1 goto :NO_JAVAC
+if errorlevel 1 goto :CDS_TRAIN
+rem Record the classes loaded by a fresh run, a compile-cache hit, .dogc compile + run and the console, then dump
+rem them into one class-data sharing archive. Duplicate lines across the lists are harmless.
+echo ✅ Training run for class-data sharing...
+>>"%LOG%" echo [cds] training run...
+set "TRAIN_DIR=%OUT_DIR%\cds"
+set "JAR=%DIST_DIR%\%JAR_NAME%"
+mkdir "%TRAIN_DIR%" >nul 2>nul
+copy /y "%ROOT%\scripts\cds_training.dog" "%TRAIN_DIR%\train.dog" >nul
+java -XX:DumpLoadedClassList="%TRAIN_DIR%\run.lst" -jar "%JAR%" "%TRAIN_DIR%\train.dog" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+java -XX:DumpLoadedClassList="%TRAIN_DIR%\cached.lst" -jar "%JAR%" "%TRAIN_DIR%\train.dog" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+java -XX:DumpLoadedClassList="%TRAIN_DIR%\compile.lst" -jar "%JAR%" -c "%TRAIN_DIR%\train.dog" "%TRAIN_DIR%\train.dogc" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+java -XX:DumpLoadedClassList="%TRAIN_DIR%\dogc.lst" -jar "%JAR%" "%TRAIN_DIR%\train.dogc" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+(echo :help& echo :exit) | java -XX:DumpLoadedClassList="%TRAIN_DIR%\console.lst" -jar "%JAR%" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+copy /b "%TRAIN_DIR%\run.lst"+"%TRAIN_DIR%\cached.lst"+"%TRAIN_DIR%\compile.lst"+"%TRAIN_DIR%\dogc.lst"+"%TRAIN_DIR%\console.lst" "%TRAIN_DIR%\classes.classlist" >nul
+java -Xshare:dump -XX:SharedClassListFile="%TRAIN_DIR%\classes.classlist" -XX:SharedArchiveFile="%CDS_ARCHIVE%" -cp "%JAR%" >>"%LOG%" 2>&1
+if errorlevel 1 goto :CDS_SKIP
+echo ✅ CDS archive: "%CDS_ARCHIVE%" (used by run_windows.bat)
+exit /b 0
+
+:CDS_SKIP
+if exist "%CDS_ARCHIVE%" del /f /q "%CDS_ARCHIVE%" >nul 2>nul
+echo ⚠️  CDS archive skipped (needs JDK 10+). See build_jar.log
+exit /b 0
+
+:NO_JAVAC
 
 where jar >nul 2>nul
 if errorlevel 1 goto :NO_JAR
@@ -54,6 +87,10 @@ echo ✅ Building JAR...
 jar cfm "%DIST_DIR%\%JAR_NAME%" "%MF%" -C "%OUT_DIR%" . >>"%LOG%" 2>&1
 if errorlevel 1 goto :JAR_FAIL
 
+rem An archive only matches the jar it was dumped from.
+if exist "%CDS_ARCHIVE%" del /f /q "%CDS_ARCHIVE%" >nul 2>nul
+if "%CDS%"=="1" call :CDS_TRAIN
+
 echo.
 echo ✅ Done: "%DIST_DIR%\%JAR_NAME%"
 echo Log: "%LOG%"
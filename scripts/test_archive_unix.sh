@@ -0,0 +1,53 @@
+#!/usr/bin/env sh
+# .dogar entry selection: an archive built from a directory runs `main` by default and any other entry by its path
+# without .dog; a missing entry or an entry whose bytes no longer match its hash is reported, not run.
+. "$(dirname -- "$0")/test_lib_unix.sh"
+
+cd "$TMP_DIR"
+mkdir -p app/lib
+printf 'say "main"\n' > app/main.dog
+printf 'say "util"\n' > app/util.dog
+printf 'fn twice(x) {\n  return x * 2\n}\nsay twice(21)\n' > app/lib/math2.dog
+
+dpl -c --archive app app.dogar > /dev/null
+
+# expect <name> <output> <args...>
+expect() {
+  printf '%s\n' "$2" > expected.txt
+  shift 2
+  dpl "$@" > out.txt 2>&1 || true
+}
+
+expect "default entry" "main" app.dogar
+check "default entry is main" expected.txt out.txt
+expect "named entry" "util" app.dogar util
+check "named entry" expected.txt out.txt
+expect "nested entry" "42" app.dogar lib/math2
+check "nested entry" expected.txt out.txt
+# expect_error <name> <message> <args...>: the run must fail with message.
+expect_error() {
+  name="$1"
+  message="$2"
+  shift 2
+  if dpl "$@" > out.txt 2>&1; then
+    echo "❌ $name: run succeeded"
+    FAILED=1
+  elif grep -qF "$message" out.txt; then
+    echo "✅ $name"
+  else
+    echo "❌ $name"
+    cat out.txt
+    FAILED=1
+  fi
+}
+
+expect_error "missing entry is an error" "No entry 'nope' in archive" app.dogar nope
+
+# Entries are stored in name order, so the first image is lib/math2. Flip one byte inside it: its hash no longer
+# matches, while the other entries still load.
+printf 'X' | dd of=app.dogar bs=1 seek=40 conv=notrunc 2>/dev/null
+expect_error "damaged entry is an error" "hash mismatch for 'lib/math2'" app.dogar lib/math2
+expect "intact entry" "util" app.dogar util
+check "other entries still load" expected.txt out.txt
+
+exit "$FAILED"
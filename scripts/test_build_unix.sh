@@ -0,0 +1,48 @@
+#!/usr/bin/env sh
+# Incremental --build: a first build compiles every source, a second one compiles nothing, and after one source
+# changes only that file is recompiled, the other outputs are left as they were, and the new output runs the edit.
+# A deleted source loses its output, and a file that fails to compile is retried on the next build.
+. "$(dirname -- "$0")/test_lib_unix.sh"
+
+cd "$TMP_DIR"
+mkdir -p proj/sub
+printf 'say 1\n' > proj/a.dog
+printf 'say 2\n' > proj/sub/b.dog
+printf 'say 3\n' > proj/c.dog
+
+# build <expected summary>: the last line, which is the summary, without its timing. Per-file errors come before it.
+build() {
+  printf '%s\n' "$1" > expected.txt
+  { dpl --build proj 2>&1 || true; } | tail -n 1 | sed 's/ ([0-9]* ms)$//' > out.txt
+  check "build: $1" expected.txt out.txt
+}
+
+inode() {
+  ls -i "$1" | cut -d' ' -f1
+}
+
+build "Build: 3 compiled, 0 up to date, 0 removed, 0 failed"
+build "Build: 0 compiled, 3 up to date, 0 removed, 0 failed"
+
+a_before="$(inode proj/out/a.dogc)"
+c_before="$(inode proj/out/c.dogc)"
+printf 'say 22\n' > proj/sub/b.dog
+build "Build: 1 compiled, 2 up to date, 0 removed, 0 failed"
+[ "$(inode proj/out/a.dogc)" = "$a_before" ] && [ "$(inode proj/out/c.dogc)" = "$c_before" ] \
+  || { echo "❌ unchanged outputs were rewritten"; FAILED=1; }
+printf '22\n' > expected.txt
+dpl proj/out/sub/b.dogc > out.txt 2>&1
+check "changed output runs the edit" expected.txt out.txt
+
+rm proj/c.dog
+build "Build: 0 compiled, 2 up to date, 1 removed, 0 failed"
+[ ! -e proj/out/c.dogc ] || { echo "❌ output of a deleted source remains"; FAILED=1; }
+
+# A broken file fails on every build until it is fixed, rather than being recorded as up to date.
+printf 'say (\n' > proj/a.dog
+build "Build: 0 compiled, 1 up to date, 0 removed, 1 failed"
+build "Build: 0 compiled, 1 up to date, 0 removed, 1 failed"
+printf 'say 11\n' > proj/a.dog
+build "Build: 1 compiled, 1 up to date, 0 removed, 0 failed"
+
+exit "$FAILED"
@@ -0,0 +1,56 @@
+#!/usr/bin/env sh
+# __dogcache__: the first run compiles and stores an entry, the next run reuses it untouched, an edited source gets a
+# fresh entry that replaces the old one, and a damaged entry is discarded, recompiled and rewritten.
+. "$(dirname -- "$0")/test_lib_unix.sh"
+
+PROJ="$TMP_DIR/proj"
+CACHE="$PROJ/__dogcache__"
+mkdir -p "$PROJ"
+cd "$PROJ"
+printf 'let s = 0\nfor i in range(0, 5) {\n  s += i\n}\nsay s\n' > prog.dog
+printf '10\n' > expected.txt
+
+# Cache decisions are logged at DEBUG/WARN to log/dpl.log in the working directory.
+run() {
+  java -Ddpl.log.level=DEBUG -cp "$CLASSES" Code prog.dog > out.txt 2>&1
+}
+
+entry() {
+  ls "$CACHE"/prog.*.dogc
+}
+
+# Miss: compiles and writes exactly one entry.
+run
+check "miss runs the program" expected.txt out.txt
+[ "$(entry | wc -l)" -eq 1 ] || { echo "❌ miss did not write one entry"; FAILED=1; }
+first="$(entry)"
+cp "$first" good.dogc
+inode="$(ls -i "$first" | cut -d' ' -f1)"
+
+# Hit: same output, and the entry is not replaced (a store would move a new file into place).
+run
+check "hit runs the program" expected.txt out.txt
+[ "$(ls -i "$first" | cut -d' ' -f1)" = "$inode" ] || { echo "❌ hit rewrote the entry"; FAILED=1; }
+grep -q "Hit: .*prog" log/dpl.log || { echo "❌ second run was not a hit"; FAILED=1; }
+
+# Corrupt payload: the CRC check rejects it, the run still succeeds, and the entry is rewritten.
+printf '\377\377\377\377' | dd of="$first" bs=1 seek=60 conv=notrunc 2>/dev/null
+run
+check "corrupt entry is recompiled" expected.txt out.txt
+check "corrupt entry is rewritten" good.dogc "$first"
+grep -q "Discarding .*checksum mismatch" log/dpl.log || { echo "❌ corrupt entry was not reported"; FAILED=1; }
+
+# Truncated entry: same recovery.
+head -c 20 good.dogc > "$first"
+run
+check "truncated entry is recompiled" expected.txt out.txt
+check "truncated entry is rewritten" good.dogc "$first"
+
+# Edited source: a new key, so a miss; the stale entry is pruned.
+printf 'say 42\n' > prog.dog
+printf '42\n' > expected.txt
+run
+check "edited source runs the new program" expected.txt out.txt
+[ "$(entry | wc -l)" -eq 1 ] && [ "$(entry)" != "$first" ] || { echo "❌ stale entry was not replaced"; FAILED=1; }
+
+exit "$FAILED"
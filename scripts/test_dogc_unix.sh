@@ -0,0 +1,32 @@
+#!/usr/bin/env sh
+# DOGC round trips: DOGC/sample.dog compiled to v4 and to deflated v4, plus the checked-in v3 image of it, must all
+# run like the source. The header is checked too: version 4, with the deflate flag only when asked for.
+. "$(dirname -- "$0")/test_lib_unix.sh"
+
+SAMPLE="$TESTS/DOGC/sample.dog"
+cd "$TMP_DIR"
+
+# header <file>: version int and flags byte, as hex.
+header() {
+  od -A n -t x1 -j 4 -N 5 "$1" | tr -d ' \n'
+}
+
+dpl --no-cache "$SAMPLE" > source.txt 2>&1
+
+dpl -c "$SAMPLE" plain.dogc > /dev/null
+[ "$(header plain.dogc)" = "0000000402" ] || { echo "❌ v4 header: $(header plain.dogc)"; FAILED=1; }
+dpl plain.dogc > out.txt 2>&1
+check "v4" source.txt out.txt
+
+dpl --deflate -c "$SAMPLE" deflated.dogc > /dev/null
+[ "$(header deflated.dogc)" = "0000000403" ] || { echo "❌ deflated v4 header: $(header deflated.dogc)"; FAILED=1; }
+dpl deflated.dogc > out.txt 2>&1
+check "deflated v4" source.txt out.txt
+[ "$(wc -c < deflated.dogc)" -lt "$(wc -c < plain.dogc)" ] || { echo "❌ deflate did not shrink the file"; FAILED=1; }
+
+[ "$(od -A n -t x1 -j 4 -N 4 "$TESTS/DOGC/sample.v3.dogc" | tr -d ' \n')" = "00000003" ] \
+  || { echo "❌ sample.v3.dogc is not a v3 image"; FAILED=1; }
+dpl "$TESTS/DOGC/sample.v3.dogc" > out.txt 2>&1
+check "v3" source.txt out.txt
+
+exit "$FAILED"
@@ -0,0 +1,29 @@
+# Shared setup for the scripts/test_*_unix.sh checks; source it, don't run it.
+# Builds src/ into a temp directory and provides `dpl` (run Code from that build) and `check` (compare two files).
+set -eu
+
+ROOT="$(CDPATH= cd -- "$(dirname -- "$0")/.." && pwd)"
+TESTS="$ROOT/My_projects/test_files_RDL"
+
+TMP_DIR="$(mktemp -d)"
+trap 'rm -rf "$TMP_DIR"' EXIT
+CLASSES="$TMP_DIR/classes"
+mkdir -p "$CLASSES"
+javac -encoding UTF-8 -d "$CLASSES" "$ROOT"/src/*.java
+
+FAILED=0
+
+dpl() {
+  java -cp "$CLASSES" Code "$@"
+}
+
+# check <name> <expected file> <actual file>
+check() {
+  if cmp -s "$2" "$3"; then
+    echo "✅ $1"
+  else
+    echo "❌ $1"
+    diff "$2" "$3" | head -20 || true
+    FAILED=1
+  fi
+}
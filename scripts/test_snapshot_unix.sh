@@ -0,0 +1,57 @@
+#!/usr/bin/env sh
+# Snapshot round trip for every test in My_projects/test_files_RDL/SNAPSHOT: the output of --snapshot plus the
+# resumed .dogi must match a plain run, and neither the .dogi globals nor the console's :vars may list compiler
+# temporaries ($-prefixed names).
+set -eu
+
+ROOT="$(CDPATH= cd -- "$(dirname -- "$0")/.." && pwd)"
+TESTS="$ROOT/My_projects/test_files_RDL/SNAPSHOT"
+
+TMP_DIR="$(mktemp -d)"
+trap 'rm -rf "$TMP_DIR"' EXIT
+CLASSES="$TMP_DIR/classes"
+mkdir -p "$CLASSES"
+javac -encoding UTF-8 -d "$CLASSES" "$ROOT"/src/*.java
+
+cat > "$TMP_DIR/Globals.java" <<'JAVA'
+import java.nio.file.Paths;
+import java.util.TreeSet;
+
+public class Globals {
+    public static void main(String[] args) throws Exception {
+        for (String name : new TreeSet<String>(DogSnapshot.load(Paths.get(args[0])).globals.keySet()))
+            System.out.println(name);
+    }
+}
+JAVA
+
+FAILED=0
+for f in "$TESTS"/*.dog; do
+  name="$(basename "$f" .dog)"
+  dogi="$TMP_DIR/$name.dogi"
+  ok=1
+  java -cp "$CLASSES" Code --no-cache "$f" > "$TMP_DIR/plain.txt" 2>&1
+  {
+    java -cp "$CLASSES" Code --no-cache --snapshot "$f" "$dogi" | grep -v '^Snapshot OK: '
+    java -cp "$CLASSES" Code "$dogi"
+  } > "$TMP_DIR/resumed.txt" 2>&1
+  if ! cmp -s "$TMP_DIR/plain.txt" "$TMP_DIR/resumed.txt"; then
+    echo "❌ $name: resumed output differs"
+    diff "$TMP_DIR/plain.txt" "$TMP_DIR/resumed.txt" || true
+    ok=0
+  fi
+  if java -cp "$CLASSES" "$TMP_DIR/Globals.java" "$dogi" | grep -q '^\$'; then
+    echo "❌ $name: .dogi holds compiler temporaries"
+    ok=0
+  fi
+  if printf ':run %s\n:vars\n:exit\n' "$f" | java -cp "$CLASSES" Code 2>&1 | grep -a '{' | grep -q '[{ ]\$'; then
+    echo "❌ $name: :vars lists compiler temporaries"
+    ok=0
+  fi
+  if [ "$ok" -eq 1 ]; then
+    echo "✅ $name"
+  else
+    FAILED=1
+  fi
+done
+exit "$FAILED"
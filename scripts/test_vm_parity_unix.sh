@@ -0,0 +1,17 @@
+#!/usr/bin/env sh
+# Every sample in My_projects/test_files_RDL must print the same on the stack VM and on `--vm reg`, errors included.
+# IMPORT/test.dog prints clock and random values, and TEST/t3.dog recurses until the Java stack overflows, whose
+# depth differs between the VMs; both are skipped.
+. "$(dirname -- "$0")/test_lib_unix.sh"
+
+find "$TESTS" -name '*.dog' -not -path '*/__dogcache__/*' | sort > "$TMP_DIR/files.txt"
+while IFS= read -r f; do
+  rel="${f#"$TESTS"/}"
+  case "$rel" in
+    IMPORT/test.dog | TEST/t3.dog) continue ;;
+  esac
+  (cd "$TMP_DIR" && dpl --no-cache --vm stack "$f") > "$TMP_DIR/stack.txt" 2>&1 || true
+  (cd "$TMP_DIR" && dpl --no-cache --vm reg "$f") > "$TMP_DIR/reg.txt" 2>&1 || true
+  check "$rel" "$TMP_DIR/stack.txt" "$TMP_DIR/reg.txt"
+done < "$TMP_DIR/files.txt"
+exit "$FAILED"
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+public final class ArrayModule implements DogModule {
+
+    private static final Set<String> PURE = new HashSet<String>(Arrays.asList("sum"));
+
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
+
+    public ArrayModule() {
+        fns.put("ints", DogFunction.unary("arr.ints", (v0, ctx, line, col, fullLine) -> {
+            int n = requireSize(v0, line, col, fullLine);
+            return Value.typedArray(TypedArray.zeros(TypedArray.Elem.INT, n));
+        }));
+        fns.put("longs", DogFunction.unary("arr.longs", (v0, ctx, line, col, fullLine) -> {
+            int n = requireSize(v0, line, col, fullLine);
+            return Value.typedArray(TypedArray.zeros(TypedArray.Elem.LONG, n));
+        }));
+        DogFunction.Unary doubles = (v0, ctx, line, col, fullLine) -> {
+            int n = requireSize(v0, line, col, fullLine);
+            return Value.typedArray(TypedArray.zeros(TypedArray.Elem.DOUBLE, n));
+        };
+        fns.put("doubles", DogFunction.unary("arr.doubles", doubles));
+        // arr.zeros(n) is another name for arr.doubles(n).
+        fns.put("zeros", DogFunction.unary("arr.zeros", doubles));
+        fns.put("range", DogFunction.binary("arr.range", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = requireLong(v0, line, col, fullLine);
+            long b = requireLong(v1, line, col, fullLine);
+            long count;
+            try {
+                count = Math.max(0L, Math.subtractExact(b, a));
+            } catch (ArithmeticException e) {
+                throw DogException.at(line, col, fullLine, "arr.range(a,b): range too large");
+            }
+            if (count > Integer.MAX_VALUE - 8) {
+                throw DogException.at(line, col, fullLine, "arr.range(a,b): range too large");
+            }
+            int n = (int) count;
+            if (a >= Integer.MIN_VALUE && b - 1 <= Integer.MAX_VALUE) {
+                int[] data = new int[n];
+                int start = (int) a;
+                for (int i = 0; i < n; i++)
+                    data[i] = start + i;
+                return Value.typedArray(TypedArray.ofInts(data));
+            }
+            long[] data = new long[n];
+            for (int i = 0; i < n; i++)
+                data[i] = a + i;
+            return Value.typedArray(TypedArray.ofLongs(data));
+        }));
+        fns.put("fill", DogFunction.binary("arr.fill", (v0, v, ctx, line, col, fullLine) -> {
+            int n = requireSize(v0, line, col, fullLine);
+            if (v == null || !v.isNumber() || v.kind == Value.Kind.BIGINT) {
+                throw DogException.at(line, col, fullLine, "arr.fill(n, v): v must be INT, LONG or DOUBLE");
+            }
+            TypedArray.Elem elem = elemOf(v.kind);
+            TypedArray t = TypedArray.zeros(elem, n);
+            for (int i = 0; i < n; i++)
+                t.set(i, v);
+            return Value.typedArray(t);
+        }));
+        fns.put("typed", DogFunction.unary("arr.typed", (src, ctx, line, col, fullLine) -> {
+            if (src != null && src.isTypedArray())
+                return src;
+            if (src == null || !src.isArray()) {
+                throw DogException.at(line, col, fullLine, "arr.typed(a): a must be an array of numbers");
+            }
+            TypedArray.Elem elem = TypedArray.Elem.INT;
+            boolean longs = false;
+            for (Value v : src.arrayVal) {
+                if (v == null || !v.isNumber() || v.kind == Value.Kind.BIGINT) {
+                    throw DogException.at(line, col, fullLine,
+                            "arr.typed(a): every element must be INT, LONG or DOUBLE");
+                }
+                TypedArray.Elem e = elemOf(v.kind);
+                longs |= e == TypedArray.Elem.LONG;
+                if (e.ordinal() > elem.ordinal())
+                    elem = e;
+            }
+            // INT widens to double exactly; LONG does not above 2^53, so a LONG/DOUBLE mix has no exact element type.
+            if (longs && elem == TypedArray.Elem.DOUBLE) {
+                throw DogException.at(line, col, fullLine, "arr.typed(a): cannot mix LONG and DOUBLE elements");
+            }
+            TypedArray t = TypedArray.zeros(elem, src.arrayVal.size());
+            for (int i = 0; i < src.arrayVal.size(); i++)
+                t.set(i, src.arrayVal.get(i));
+            return Value.typedArray(t);
+        }));
+        fns.put("toList", DogFunction.unary("arr.toList", (v0, ctx, line, col, fullLine) -> {
+            TypedArray t = requireTyped(v0, "toList", line, col, fullLine);
+            ArrayList<Value> out = new ArrayList<Value>(t.size());
+            for (int i = 0; i < t.size(); i++)
+                out.add(t.get(i));
+            return Value.arrayOwned(out);
+        }));
+        fns.put("sum", DogFunction.unary("arr.sum", (v0, ctx, line, col, fullLine) -> {
+            TypedArray t = requireTyped(v0, "sum", line, col, fullLine);
+            if (t.elem == TypedArray.Elem.DOUBLE) {
+                double s = 0.0;
+                for (int i = 0; i < t.size(); i++)
+                    s += t.getDouble(i);
+                return Value.ofDouble(s);
+            }
+            long s = 0L;
+            try {
+                for (int i = 0; i < t.size(); i++)
+                    s = Math.addExact(s, t.getLong(i));
+            } catch (ArithmeticException e) {
+                throw DogException.at(line, col, fullLine, "arr.sum(a): overflow");
+            }
+            if (s >= Integer.MIN_VALUE && s <= Integer.MAX_VALUE)
+                return Value.ofInt((int) s);
+            return Value.ofLong(s);
+        }));
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
+    }
+
+    @Override
+    public String name() {
+        return "arr";
+    }
+
+    @Override
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
+    }
+
+    @Override
+    public Value getConstant(String member, DogContext ctx, int line, int col, String fullLine) {
+        throw DogException.at(line, col, fullLine, "arr has no constants. Use functions like arr.zeros(n)");
+    }
+
+    @Override
+    public boolean isPure(String member) {
+        return PURE.contains(member);
+    }
+
+    private static TypedArray.Elem elemOf(Value.Kind kind) {
+        if (kind == Value.Kind.INT)
+            return TypedArray.Elem.INT;
+        if (kind == Value.Kind.LONG)
+            return TypedArray.Elem.LONG;
+        return TypedArray.Elem.DOUBLE;
+    }
+
+    private static TypedArray requireTyped(Value v, String fn, int line, int col, String fullLine) {
+        if (v == null || !v.isTypedArray()) {
+            throw DogException.at(line, col, fullLine, "arr." + fn + "(a): a must be a typed array");
+        }
+        return v.typedVal;
+    }
+
+    private static long requireLong(Value v, int line, int col, String fullLine) {
+        if (v == null || !v.isNumber()) {
+            throw DogException.at(line, col, fullLine, "Expected a number argument");
+        }
+        double d = v.toDouble();
+        if (d != Math.rint(d)) {
+            throw DogException.at(line, col, fullLine, "Expected an integer argument");
+        }
+        return v.toLong();
+    }
+
+    private static int requireSize(Value v, int line, int col, String fullLine) {
+        long n = requireLong(v, line, col, fullLine);
+        if (n < 0 || n > Integer.MAX_VALUE - 8) {
+            throw DogException.at(line, col, fullLine, "Array size out of range: " + n);
+        }
+        return (int) n;
+    }
+}
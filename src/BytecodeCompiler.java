@@ -1,782 +1,468 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public final class BytecodeCompiler {
 
-    public Chunk compile(List<String> lines) {
-        Chunk chunk = new Chunk();
-
-        for (int i = 0; i < lines.size(); i++) {
-            String raw0 = lines.get(i);
-            int line0 = i + 1;
-
-            String t0 = raw0.trim();
-            if (t0.isEmpty() || t0.startsWith("#"))
-                continue;
-            if (t0.startsWith("if ")) {
-                i = compileIf(lines, i, chunk);
-                continue;
-            }
-            if (t0.startsWith("while ")) {
-                i = compileWhile(lines, i, chunk);
-                continue;
-            }
-            if (t0.startsWith("fn ")) {
-                i = compileFn(lines, i, chunk);
-                continue;
-            }
-            LogicalLine L = readLogicalLine(lines, i);
-            i = L.endIndex;
-            compileSingleLine(L.raw, line0, chunk);
-        }
-        return chunk;
-    }
-
-    private int compileIf(List<String> lines, int i, Chunk chunk) {
-        String rawIf = lines.get(i);
-        int lineIf = i + 1;
-        int ifIndex = rawIf.indexOf("if");
-        int baseCol = (ifIndex >= 0 ? ifIndex + 1 : 1);
-        int brace = rawIf.indexOf('{');
+    private static final boolean OPTIMIZE = !"false".equals(System.getProperty("dpl.optimize"));
 
-        if (brace < 0) {
-            throw DogException.at(lineIf, baseCol, rawIf,
-                    "Expected '{' after if condition (use: if cond { ... })");
-        }
-        if (stripInlineComment(rawIf.substring(brace + 1)).trim().length() > 0) {
-            throw DogException.at(lineIf, baseCol, rawIf,
-                    "Put '{' at end of line. Body must be on next lines.");
-        }
-        String condExpr = rawIf.substring(ifIndex + 2, brace).trim();
-        if (condExpr.isEmpty()) {
-            throw DogException.at(lineIf, baseCol, rawIf, "Expected condition after 'if'");
-        }
+    // Changes whenever the same source may compile to different bytecode; DogCompileCache keys entries on it.
+    public static final String COMPILER_VERSION = "0.2.0+6" + (OPTIMIZE ? "" : "-noopt");
 
-        Parser p = new Parser(condExpr, lineIf, baseCol, rawIf, chunk);
-        p.parseExpression();
-        p.finish();
-
-        int jFalseIndex = chunk.code().size();
-        chunk.add(Instruction.jumpIfFalse(-1, lineIf, baseCol, rawIf));
-        int thenCloseLineIndex = compileThenBlock(lines, i, chunk);
-        int elseLineIndex = -1;
-
-        String closeTrim = lines.get(thenCloseLineIndex).trim();
-        if (closeTrim.startsWith("} else")) {
-            elseLineIndex = thenCloseLineIndex;
-        } else if (thenCloseLineIndex + 1 < lines.size()) {
-            String nextTrim = lines.get(thenCloseLineIndex + 1).trim();
-            if (nextTrim.startsWith("else") || nextTrim.startsWith("} else")) {
-                elseLineIndex = thenCloseLineIndex + 1;
-            }
-        }
-        if (elseLineIndex != -1) {
-            int jEndIndex = chunk.code().size();
-            chunk.add(Instruction.jump(-1, lineIf, baseCol, rawIf));
+    private static final ModuleRegistry MODULES = ModuleRegistry.standard();
 
-            chunk.code().get(jFalseIndex).jumpTarget = chunk.code().size();
-
-            int elseCloseLineIndex = compileElseBlock(lines, elseLineIndex, chunk);
-
-            chunk.code().get(jEndIndex).jumpTarget = chunk.code().size();
+    public Chunk compile(List<String> lines) {
+        return compile(new DogLexer(lines));
+    }
 
-            return elseCloseLineIndex;
+    // Reads the source a line at a time while statements are emitted, so the full text is never held in memory.
+    public Chunk compile(Reader source) throws IOException {
+        BufferedReader br = (source instanceof BufferedReader) ? (BufferedReader) source : new BufferedReader(source);
+        try {
+            return compile(new DogLexer(br));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        chunk.code().get(jFalseIndex).jumpTarget = chunk.code().size();
-        return thenCloseLineIndex;
     }
 
-    private int compileThenBlock(List<String> lines, int ifLineIndex, Chunk chunk) {
-        int depth = 0;
-
-        for (int k = ifLineIndex; k < lines.size(); k++) {
-            String raw = lines.get(k);
-            String tr = raw.trim();
-
-            if (k == ifLineIndex) {
-                depth += braceDelta(raw);
-                continue;
-            }
-            if (tr.startsWith("} else")) {
-                depth -= 1;
-                if (depth == 0)
-                    return k;
-                continue;
-            }
-            depth += braceDelta(raw);
-            if (depth == 0)
-                return k;
-            if (tr.isEmpty() || tr.startsWith("#"))
-                continue;
-            if (tr.equals("{") || tr.equals("}"))
-                continue;
-            if (tr.startsWith("}"))
-                continue;
-            if (tr.startsWith("if ")) {
-                int end = compileIf(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
-            }
-            if (tr.startsWith("while ")) {
-                int end = compileWhile(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
-            }
-            if (tr.startsWith("fn ")) {
-                int end = compileFn(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
-            }
-            LogicalLine L = readLogicalLine(lines, k);
-            compileSingleLine(L.raw, k + 1, chunk);
-            k = L.endIndex;
-        }
-        throw DogException.at(ifLineIndex + 1, 1, lines.get(ifLineIndex), "Unclosed block: missing '}'");
+    private Chunk compile(DogLexer lexer) {
+        Chunk chunk = new Chunk();
+        Parser p = new Parser(lexer, chunk);
+        p.parseProgram();
+        DogLinker.check(chunk, MODULES);
+        if (OPTIMIZE)
+            chunk = BytecodeOptimizer.optimize(chunk);
+        DogVerifier.verifyAll(chunk);
+        return chunk;
     }
 
-    private int compileElseBlock(List<String> lines, int elseLineIndex, Chunk chunk) {
-        String rawElse = lines.get(elseLineIndex);
+    private static final class Parser {
+        private final DogLexer lx;
+        private Chunk out;
+        boolean didCall = false;
 
-        int elsePos = rawElse.indexOf("else");
-        if (elsePos < 0) {
-            throw DogException.at(elseLineIndex + 1, 1, rawElse, "Expected 'else'");
-        }
-        int brace = rawElse.indexOf('{', elsePos);
-        if (brace < 0) {
-            throw DogException.at(elseLineIndex + 1, 1, rawElse, "Expected '{' after else");
-        }
-        if (stripInlineComment(rawElse.substring(brace + 1)).trim().length() > 0) {
-            throw DogException.at(elseLineIndex + 1, 1, rawElse,
-                    "Put '{' at end of line. Else body must be on next lines.");
+        Parser(DogLexer lx, Chunk out) {
+            this.lx = lx;
+            this.out = out;
         }
-        int depth = 1;
-
-        for (int k = elseLineIndex + 1; k < lines.size(); k++) {
-            String raw = lines.get(k);
-            String t = raw.trim();
 
-            depth += braceDelta(raw);
-            if (depth == 0)
-                return k;
-            if (t.isEmpty() || t.startsWith("#"))
-                continue;
-            if (t.equals("{") || t.equals("}"))
-                continue;
-            if (t.startsWith("}"))
-                continue;
-            if (t.startsWith("if ")) {
-                int end = compileIf(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
-            }
-            if (t.startsWith("while ")) {
-                int end = compileWhile(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
-            }
-            if (t.startsWith("fn ")) {
-                int end = compileFn(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+        void parseProgram() {
+            while (true) {
+                DogToken t = lx.peek();
+                if (t.type == DogToken.Type.EOF)
+                    return;
+                if (t.type == DogToken.Type.NEWLINE) {
+                    lx.next();
+                    continue;
+                }
+                parseStatement();
             }
-            LogicalLine L = readLogicalLine(lines, k);
-            compileSingleLine(L.raw, k + 1, chunk);
-            k = L.endIndex;
         }
-        throw DogException.at(elseLineIndex + 1, 1, rawElse, "Unclosed else block: missing '}'");
-    }
 
-    private int compileWhile(List<String> lines, int i, Chunk chunk) {
-        String rawWhile = lines.get(i);
-        int lineWhile = i + 1;
-        int whIndex = rawWhile.indexOf("while");
-        int baseCol = (whIndex >= 0 ? whIndex + 1 : 1);
-        int brace = rawWhile.indexOf('{');
-        if (brace < 0) {
-            throw DogException.at(lineWhile, baseCol, rawWhile,
-                    "Expected '{' after while condition (use: while cond { ... })");
-        }
-        if (stripInlineComment(rawWhile.substring(brace + 1)).trim().length() > 0) {
-            throw DogException.at(lineWhile, baseCol, rawWhile,
-                    "Put '{' at end of line. Body must be on next lines.");
-        }
-        String condExpr = rawWhile.substring(whIndex + "while".length(), brace).trim();
-        if (condExpr.isEmpty()) {
-            throw DogException.at(lineWhile, baseCol, rawWhile, "Expected condition after 'while'");
+        void parseStatement() {
+            DogToken t = lx.peek();
+            if (t.type == DogToken.Type.IDENT) {
+                switch (t.text) {
+                    case "if":
+                        parseIf();
+                        return;
+                    case "while":
+                        parseWhile();
+                        return;
+                    case "for":
+                        parseFor();
+                        return;
+                    case "fn":
+                        parseFn();
+                        return;
+                    case "import":
+                        parseImport();
+                        return;
+                    case "return":
+                        parseReturn();
+                        return;
+                    case "say":
+                        parseSay();
+                        return;
+                    case "let":
+                        parseLet();
+                        return;
+                    case "else":
+                        throw err(t, "'else' without a matching 'if'");
+                    default:
+                        break;
+                }
+            }
+            if (t.is("}"))
+                throw err(t, "Unexpected '}'");
+            parseSimpleStatement();
         }
-        int loopStartIp = chunk.code().size();
-        Parser p = new Parser(condExpr, lineWhile, baseCol, rawWhile, chunk);
-        p.parseExpression();
-        p.finish();
-        int jFalseIndex = chunk.code().size();
-        chunk.add(Instruction.jumpIfFalse(-1, lineWhile, baseCol, rawWhile));
-        int closeLine = compileWhileBlock(lines, i, chunk);
-        chunk.add(Instruction.jump(loopStartIp, lineWhile, baseCol, rawWhile));
-        chunk.code().get(jFalseIndex).jumpTarget = chunk.code().size();
-        return closeLine;
-    }
 
-    private int compileWhileBlock(List<String> lines, int whileLineIndex, Chunk chunk) {
-        int depth = 0;
+        void parseIf() {
+            DogToken kw = lx.next();
+            parseExpression();
+            int jFalseIndex = out.add(Instruction.jumpIfFalse(-1, kw.line, kw.col, kw.sourceLine));
+            parseBlock(kw, "Expected '{' after if condition (use: if cond { ... })", "Unclosed block: missing '}'");
 
-        for (int k = whileLineIndex; k < lines.size(); k++) {
-            String raw = lines.get(k);
-            String tr = raw.trim();
-            depth += braceDelta(raw);
-            if (k == whileLineIndex) {
-                continue;
-            }
-            if (depth == 0)
-                return k;
-            if (tr.isEmpty() || tr.startsWith("#"))
-                continue;
-            if (tr.equals("{") || tr.equals("}"))
-                continue;
-            if (tr.startsWith("}"))
-                continue;
-            if (tr.startsWith("if ")) {
-                int end = compileIf(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+            DogToken t = lx.peek();
+            boolean hasElse = t.isWord("else") || (t.type == DogToken.Type.NEWLINE && lx.peek(1).isWord("else"));
+            if (!hasElse) {
+                out.code().get(jFalseIndex).jumpTarget = out.size();
+                endStatement();
+                return;
             }
-            if (tr.startsWith("while ")) {
-                int end = compileWhile(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+            if (t.type == DogToken.Type.NEWLINE)
+                lx.next();
+            DogToken elseKw = lx.next();
+            int jEndIndex = out.add(Instruction.jump(-1, kw.line, kw.col, kw.sourceLine));
+            out.code().get(jFalseIndex).jumpTarget = out.size();
+            if (lx.peek().isWord("if")) {
+                parseIf();
+            } else {
+                parseBlock(elseKw, "Expected '{' after else", "Unclosed else block: missing '}'");
+                endStatement();
+            }
+            out.code().get(jEndIndex).jumpTarget = out.size();
+        }
+
+        void parseWhile() {
+            DogToken kw = lx.next();
+            int loopStartIp = out.size();
+            parseExpression();
+            int jFalseIndex = out.add(Instruction.jumpIfFalse(-1, kw.line, kw.col, kw.sourceLine));
+            parseBlock(kw, "Expected '{' after while condition (use: while cond { ... })",
+                    "Unclosed while block: missing '}'");
+            out.add(Instruction.jump(loopStartIp, kw.line, kw.col, kw.sourceLine));
+            out.code().get(jFalseIndex).jumpTarget = out.size();
+            endStatement();
+        }
+
+        void parseFor() {
+            DogToken kw = lx.next();
+            DogToken var = lx.next();
+            if (var.type != DogToken.Type.IDENT) {
+                throw err(kw, "Bad loop variable name: " + var.describe());
+            }
+            if (!lx.next().isWord("in")) {
+                throw err(kw, "Expected 'in' in for header (use: for x in expr {)");
+            }
+            if (lx.peek().isEnd() || lx.peek().is("{")) {
+                throw err(kw, "Expected expression after 'in'");
+            }
+            parseExpression();
+            OpCode next = out.code().get(out.size() - 1).op == OpCode.RANGE ? OpCode.RANGE_NEXT : OpCode.ITER_NEXT;
+            out.add(Instruction.simple(OpCode.ITER_INIT, kw.line, kw.col, kw.sourceLine));
+            int loopStartIp = out.add(Instruction.iterNext(next, var.text, -1, kw.line, kw.col, kw.sourceLine));
+            parseBlock(kw, "Expected '{' after for header (use: for x in expr { ... })",
+                    "Unclosed for block: missing '}'");
+            out.add(Instruction.jump(loopStartIp, kw.line, kw.col, kw.sourceLine));
+            out.code().get(loopStartIp).jumpTarget = out.size();
+            endStatement();
+        }
+
+        void parseFn() {
+            DogToken kw = lx.next();
+            DogToken name = lx.next();
+            if (name.type != DogToken.Type.IDENT) {
+                throw err(kw, "Bad function name: " + name.describe());
+            }
+            if (!lx.next().is("(")) {
+                throw err(kw, "Bad fn header. Use: fn name(a,b) {");
             }
-            if (tr.startsWith("fn ")) {
-                int end = compileFn(lines, k, chunk);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+            ArrayList<String> params = new ArrayList<>();
+            if (!lx.peek().is(")")) {
+                while (true) {
+                    DogToken p = lx.next();
+                    if (p.type != DogToken.Type.IDENT) {
+                        throw err(kw, "Bad parameter name: " + p.describe());
+                    }
+                    params.add(p.text);
+                    if (lx.peek().is(")"))
+                        break;
+                    if (!lx.next().is(",")) {
+                        throw err(kw, "Bad fn header. Use: fn name(a,b) {");
+                    }
+                }
             }
-            LogicalLine L = readLogicalLine(lines, k);
-            compileSingleLine(L.raw, k + 1, chunk);
-            k = L.endIndex;
-        }
-        throw DogException.at(whileLineIndex + 1, 1, lines.get(whileLineIndex), "Unclosed while block: missing '}'");
-    }
+            lx.next();
 
-    private int compileFn(List<String> lines, int i, Chunk chunk) {
-        String rawFn = lines.get(i);
-        int lineFn = i + 1;
-        int fnPos = rawFn.indexOf("fn");
-        int baseCol = (fnPos >= 0 ? fnPos + 1 : 1);
-        int brace = rawFn.indexOf('{');
-        if (brace < 0) {
-            throw DogException.at(lineFn, baseCol, rawFn, "Expected '{' after fn header");
-        }
-        if (stripInlineComment(rawFn.substring(brace + 1)).trim().length() > 0) {
-            throw DogException.at(lineFn, baseCol, rawFn, "Put '{' at end of line. Body must be on next lines.");
-        }
-        String header = rawFn.substring(fnPos + 2, brace).trim(); // after "fn"
-        int lp = header.indexOf('(');
-        int rp = header.lastIndexOf(')');
-        if (lp < 0 || rp < 0 || rp < lp) {
-            throw DogException.at(lineFn, baseCol, rawFn, "Bad fn header. Use: fn name(a,b) {");
-        }
-        String name = header.substring(0, lp).trim();
-        String paramsText = header.substring(lp + 1, rp).trim();
-        if (!isIdent(name)) {
-            throw DogException.at(lineFn, baseCol, rawFn, "Bad function name: " + name);
-        }
-        ArrayList<String> params = new ArrayList<>();
-        if (!paramsText.isEmpty()) {
-            String[] parts = paramsText.split(",");
-            for (String p : parts) {
-                String id = p.trim();
-                if (!isIdent(id)) {
-                    throw DogException.at(lineFn, baseCol, rawFn, "Bad parameter name: " + id);
-                }
-                params.add(id);
+            Chunk body = new Chunk();
+            Chunk saved = out;
+            out = body;
+            parseBlock(kw, "Expected '{' after fn header", "Unclosed fn block: missing '}'");
+            out = saved;
+            if (body.code().isEmpty() || body.code().get(body.size() - 1).op != OpCode.RETURN) {
+                body.add(Instruction.constNil(kw.line, kw.col, kw.sourceLine));
+                body.add(Instruction.ret(kw.line, kw.col, kw.sourceLine));
             }
+            int fnIndex = out.addFunction(new FunctionProto(params, body));
+            out.add(Instruction.constFunc(fnIndex, kw.line, kw.col, kw.sourceLine));
+            out.add(Instruction.store(name.text, kw.line, kw.col, kw.sourceLine));
+            endStatement();
         }
-        Chunk body = new Chunk();
-        int depth = 0;
-        int closeLineIndex = -1;
-        for (int k = i; k < lines.size(); k++) {
-            String raw = lines.get(k);
-            String tr = raw.trim();
-            depth += braceDelta(raw);
-            if (k == i) {
-                continue;
-            }
-            if (depth == 0) {
-                closeLineIndex = k;
-                break;
-            }
-            if (tr.isEmpty() || tr.startsWith("#"))
-                continue;
-            if (tr.equals("{") || tr.equals("}"))
-                continue;
-            if (tr.startsWith("}"))
-                continue;
-            if (tr.startsWith("if ")) {
-                int end = compileIf(lines, k, body);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+
+        // '{' must end the header line; statements run until the matching '}'.
+        void parseBlock(DogToken header, String missingOpen, String unclosed) {
+            DogToken open = lx.next();
+            if (!open.is("{")) {
+                throw err(header, missingOpen);
             }
-            if (tr.startsWith("while ")) {
-                int end = compileWhile(lines, k, body);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+            if (!lx.peek().isEnd()) {
+                throw err(header, "Put '{' at end of line. Body must be on next lines.");
             }
-            if (tr.startsWith("fn ")) {
-                int end = compileFn(lines, k, body);
-                depth += braceDeltaRange(lines, k, end);
-                k = end;
-                continue;
+            while (true) {
+                DogToken t = lx.peek();
+                if (t.type == DogToken.Type.NEWLINE) {
+                    lx.next();
+                    continue;
+                }
+                if (t.type == DogToken.Type.EOF) {
+                    throw err(header, unclosed);
+                }
+                if (t.is("}")) {
+                    lx.next();
+                    return;
+                }
+                parseStatement();
             }
-            LogicalLine L = readLogicalLine(lines, k);
-            compileSingleLine(L.raw, k + 1, body);
-            k = L.endIndex;
         }
 
-        if (closeLineIndex == -1) {
-            throw DogException.at(lineFn, baseCol, rawFn, "Unclosed fn block: missing '}'");
-        }
-        if (body.code().isEmpty() || body.code().get(body.code().size() - 1).op != OpCode.RETURN) {
-            body.add(Instruction.constNil(lineFn, baseCol, rawFn));
-            body.add(Instruction.ret(lineFn, baseCol, rawFn));
-        }
-        int fnIndex = chunk.addFunction(new FunctionProto(params, body));
-        chunk.add(Instruction.constFunc(fnIndex, lineFn, baseCol, rawFn));
-        chunk.add(Instruction.store(name, lineFn, baseCol, rawFn));
-        return closeLineIndex;
-    }
-
-    private void compileSingleLine(String rawOriginal, int line, Chunk chunk) {
-        String raw = stripInlineComment(rawOriginal);
-        String trimmed = raw.trim();
-        if (trimmed.isEmpty())
-            return;
-        if (trimmed.startsWith("import ")) {
-            int col = indexOfNonSpace(raw) + 1;
-            String mod = trimmed.substring("import ".length()).trim();
-            if (mod.isEmpty()) {
-                throw DogException.at(line, col, rawOriginal, "Expected module name after import");
+        void parseImport() {
+            DogToken kw = lx.next();
+            DogToken mod = lx.next();
+            if (mod.type != DogToken.Type.IDENT) {
+                throw err(kw, "Expected module name after import");
             }
-            chunk.add(Instruction.importMod(mod, line, col, rawOriginal));
-            return;
+            out.add(Instruction.importMod(mod.text, kw.line, kw.col, kw.sourceLine));
+            endStatement();
         }
 
-        if (trimmed.startsWith("return")) {
-            int col = indexOfNonSpace(raw) + 1;
-            String rest = trimmed.substring("return".length()).trim();
-
-            if (rest.isEmpty()) {
-                chunk.add(Instruction.constNil(line, col, rawOriginal));
-                chunk.add(Instruction.ret(line, col, rawOriginal));
+        void parseReturn() {
+            DogToken kw = lx.next();
+            if (lx.peek().isEnd()) {
+                out.add(Instruction.constNil(kw.line, kw.col, kw.sourceLine));
+            } else {
+                parseExpression();
+            }
+            out.add(Instruction.ret(kw.line, kw.col, kw.sourceLine));
+            endStatement();
+        }
+
+        void parseSay() {
+            DogToken kw = lx.next();
+            DogToken first = lx.peek();
+            if (first.isEnd()) {
+                throw err(kw, "Expected expression after 'say'");
+            }
+            parseExpression();
+            out.add(Instruction.simple(OpCode.PRINT, first.line, first.col, kw.sourceLine));
+            endStatement();
+        }
+
+        void parseLet() {
+            DogToken kw = lx.next();
+            DogToken var = lx.next();
+            if (var.type != DogToken.Type.IDENT) {
+                throw err(kw, "Bad variable name: " + var.describe());
+            }
+            if (!lx.next().is("=")) {
+                throw err(kw, "Expected '=' in let statement");
+            }
+            if (lx.peek().isEnd()) {
+                throw err(kw, "Expected expression after '='");
+            }
+            parseExpression();
+            out.add(Instruction.store(var.text, kw.line, kw.col, kw.sourceLine));
+            endStatement();
+        }
+
+        // Assignment, compound assignment, increment, or a call used as a statement.
+        void parseSimpleStatement() {
+            DogToken first = lx.peek();
+            int end = 0;
+            int assignAt = -1;
+            int depth = 0;
+            while (!lx.peek(end).isEnd()) {
+                DogToken t = lx.peek(end);
+                if (t.is("(") || t.is("["))
+                    depth++;
+                else if (t.is(")") || t.is("]"))
+                    depth--;
+                else if (depth == 0 && assignAt < 0
+                        && (t.is("=") || t.is("+=") || t.is("-=") || t.is("*=")))
+                    assignAt = end;
+                end++;
+            }
+
+            if (end >= 3 && isStep(lx.peek(end - 2), lx.peek(end - 1))) {
+                int delta = lx.peek(end - 1).is("+") ? 1 : -1;
+                if (end == 3 && first.type == DogToken.Type.IDENT) {
+                    lx.next();
+                    out.add(Instruction.incVar(first.text, delta, first.line, first.col, first.sourceLine));
+                } else {
+                    parseSlotTarget(first, end - 2, "Bad increment target: ");
+                    out.add(Instruction.constInt(delta, first.line, first.col, first.sourceLine));
+                    out.add(Instruction.simple(OpCode.ARRAY_ADD, first.line, first.col, first.sourceLine));
+                }
+                lx.next();
+                lx.next();
+                endStatement();
                 return;
             }
 
-            Parser p = new Parser(rest, line, col, rawOriginal, chunk);
-            p.parseExpression();
-            p.finish();
-
-            chunk.add(Instruction.ret(line, col, rawOriginal));
-            return;
-        }
-
-        if (trimmed.startsWith("say")) {
-            int sayPos = raw.indexOf("say");
-            int after = sayPos + 3;
-
-            if (raw.substring(after).trim().isEmpty()) {
-                throw DogException.at(line, after + 1, rawOriginal, "Expected expression after 'say'");
+            if (assignAt < 0) {
+                didCall = false;
+                parseExpression();
+                if (!didCall) {
+                    throw err(first, "This line does nothing. Use 'say <expr>' or call something like io.print(...)");
+                }
+                out.add(Instruction.simple(OpCode.POP, first.line, first.col, first.sourceLine));
+                endStatement();
+                return;
             }
 
-            int exprStart = findExprStartIndex(raw, after);
-            int exprCol = exprStart + 1;
-            String expr = raw.substring(exprStart);
-
-            Parser p = new Parser(expr, line, exprCol, rawOriginal, chunk);
-            p.parseExpression();
-            p.finish();
-
-            chunk.add(Instruction.simple(OpCode.PRINT, line, exprCol, rawOriginal));
-            return;
-        }
-
-        if (trimmed.startsWith("let ")) {
-            int letPos = raw.indexOf("let");
-            int baseCol = letPos + 1;
-
-            String rest = trimmed.substring(4).trim();
-            int eq = rest.indexOf('=');
-            if (eq < 0) {
-                throw DogException.at(line, baseCol, rawOriginal, "Expected '=' in let statement");
+            DogToken op = lx.peek(assignAt);
+            if (assignAt == end - 1) {
+                throw err(first, "Expected expression after '" + op.text + "'");
             }
-
-            String var = rest.substring(0, eq).trim();
-            String expr = rest.substring(eq + 1).trim();
-
-            if (!isIdent(var)) {
-                throw DogException.at(line, baseCol, rawOriginal, "Bad variable name: " + var);
+            if (assignAt == 1 && first.type == DogToken.Type.IDENT) {
+                lx.next();
+                lx.next();
+                parseExpression();
+                if (op.is("=")) {
+                    out.add(Instruction.store(first.text, first.line, first.col, first.sourceLine));
+                } else {
+                    out.add(Instruction.updateVar(varOpFor(op), first.text, first.line, first.col, first.sourceLine));
+                }
+                endStatement();
+                return;
             }
-            if (expr.isEmpty()) {
-                throw DogException.at(line, baseCol, rawOriginal, "Expected expression after '='");
+            parseSlotTarget(first, assignAt, "Bad assignment target: ");
+            lx.next();
+            parseExpression();
+            if (op.is("=")) {
+                out.add(Instruction.arraySet(first.line, first.col, first.sourceLine));
+                out.add(Instruction.simple(OpCode.POP, first.line, first.col, first.sourceLine));
+            } else {
+                out.add(Instruction.simple(slotOpFor(op), first.line, first.col, first.sourceLine));
             }
-
-            Parser p = new Parser(expr, line, baseCol, rawOriginal, chunk);
-            p.parseExpression();
-            p.finish();
-            chunk.add(Instruction.store(var, line, baseCol, rawOriginal));
-            return;
-        }
-
-        if (tryCompileArraySet(raw, line, rawOriginal, chunk)) {
-            return;
+            endStatement();
         }
-        int assignPos = findTopLevelAssign(trimmed);
-        if (assignPos >= 0) {
-            String left = trimmed.substring(0, assignPos).trim();
-            String right = trimmed.substring(assignPos + 1).trim();
-            int col = indexOfNonSpace(raw) + 1;
 
-            if (!isIdent(left)) {
-                throw DogException.at(line, col, rawOriginal, "Bad assignment target: " + left);
+        // name[i][j]... : leaves the array and the last index on the stack, stopping before token `count`.
+        void parseSlotTarget(DogToken first, int count, String badTarget) {
+            DogToken stop = lx.peek(count);
+            if (first.type != DogToken.Type.IDENT || !lx.peek(1).is("[")) {
+                throw err(first, badTarget + targetText(first, stop));
             }
-            if (right.isEmpty()) {
-                throw DogException.at(line, col, rawOriginal, "Expected expression after '='");
+            lx.next();
+            out.add(Instruction.load(first.text, first.line, first.col, first.sourceLine));
+            while (true) {
+                DogToken lb = lx.next();
+                if (!lb.is("[") || lx.peek().is("]")) {
+                    throw err(first, badTarget + targetText(first, stop));
+                }
+                parseExpression();
+                if (!lx.next().is("]")) {
+                    throw err(first, "Missing ']'");
+                }
+                if (lx.peek() == stop)
+                    return;
+                out.add(Instruction.arrayGet(first.line, first.col, first.sourceLine));
             }
-            Parser p = new Parser(right, line, col, rawOriginal, chunk);
-            p.parseExpression();
-            p.finish();
-            chunk.add(Instruction.store(left, line, col, rawOriginal));
-            return;
         }
-        compileExprStatement(raw, line, rawOriginal, chunk);
-    }
 
-    private boolean tryCompileArraySet(String raw, int line, String src, Chunk chunk) {
-        String trimmed = raw.trim();
-        int eq = findTopLevelAssign(trimmed);
-        if (eq < 0)
-            return false;
-        String left = trimmed.substring(0, eq).trim();
-        String right = trimmed.substring(eq + 1).trim();
-        int lb = left.indexOf('[');
-        int rb = left.lastIndexOf(']');
-        if (lb < 0 || rb < 0 || rb < lb)
-            return false;
-        String name = left.substring(0, lb).trim();
-        String idxExpr = left.substring(lb + 1, rb).trim();
-        if (!isIdent(name))
-            return false;
-        if (idxExpr.isEmpty()) {
-            throw DogException.at(line, 1, src, "Expected index expression inside []");
-        }
-        if (right.isEmpty()) {
-            throw DogException.at(line, 1, src, "Expected expression after '='");
-        }
-        int col = indexOfNonSpace(raw) + 1;
-        chunk.add(Instruction.load(name, line, col, src));
-        Parser pIdx = new Parser(idxExpr, line, col, src, chunk);
-        pIdx.parseExpression();
-        pIdx.finish();
-        Parser pVal = new Parser(right, line, col, src, chunk);
-        pVal.parseExpression();
-        pVal.finish();
-        chunk.add(Instruction.arraySet(line, col, src));
-        chunk.add(Instruction.simple(OpCode.POP, line, col, src));
-        return true;
-    }
-
-    private void compileExprStatement(String raw, int line, String src, Chunk chunk) {
-        int exprStart = indexOfNonSpace(raw);
-        int exprCol = exprStart + 1;
-        String expr = raw.substring(exprStart);
-        Parser p = new Parser(expr, line, exprCol, src, chunk);
-        p.parseExpression();
-        p.finish();
-        if (!p.didCall) {
-            throw DogException.at(line, exprCol, src,
-                    "This line does nothing. Use 'say <expr>' or call something like io.print(...)");
-        }
-        chunk.add(Instruction.simple(OpCode.POP, line, exprCol, src));
-    }
-
-    private static final class LogicalLine {
-        final String raw;
-        final int endIndex;
-
-        LogicalLine(String raw, int endIndex) {
-            this.raw = raw;
-            this.endIndex = endIndex;
-        }
-    }
-
-    private static LogicalLine readLogicalLine(List<String> lines, int startIndex) {
-        String raw0 = lines.get(startIndex);
-        String t0 = raw0.trim();
-        if (isStructuralLine(t0)) {
-            return new LogicalLine(raw0, startIndex);
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(raw0);
-        int i = startIndex;
-        while (true) {
-            if (isStatementComplete(sb.toString())) {
-                return new LogicalLine(sb.toString(), i);
-            }
-            if (i + 1 >= lines.size()) {
-                return new LogicalLine(sb.toString(), i);
+        void endStatement() {
+            DogToken t = lx.peek();
+            if (t.type == DogToken.Type.NEWLINE) {
+                lx.next();
+                return;
             }
-            i++;
-            sb.append('\n').append(lines.get(i));
+            if (t.type == DogToken.Type.EOF)
+                return;
+            throw err(t, "Bad expression near: " + restOfLine(t));
         }
-    }
 
-    private static boolean isStructuralLine(String trimmed) {
-        if (trimmed == null)
-            return false;
-        if (trimmed.startsWith("if "))
-            return true;
-        if (trimmed.startsWith("while "))
-            return true;
-        if (trimmed.startsWith("fn "))
-            return true;
-        if (trimmed.startsWith("else"))
-            return true;
-        if (trimmed.startsWith("} else"))
-            return true;
-        if (trimmed.equals("{") || trimmed.equals("}"))
-            return true;
-        if (trimmed.startsWith("}"))
-            return true;
-        return false;
-    }
-
-    private static boolean isStatementComplete(String raw) {
-        int par = 0, br = 0, cr = 0;
-        boolean inStr = false;
-        boolean esc = false;
-
-        for (int i = 0; i < raw.length(); i++) {
-            char c = raw.charAt(i);
-            if (inStr) {
-                if (esc) {
-                    esc = false;
-                } else if (c == '\\') {
-                    esc = true;
-                } else if (c == '"') {
-                    inStr = false;
-                }
-                continue;
-            }
-            if (c == '#')
-                break;
-
-            if (c == '"') {
-                inStr = true;
-                continue;
-            }
-            if (c == '(')
-                par++;
-            else if (c == ')')
-                par = Math.max(0, par - 1);
-            else if (c == '[')
-                br++;
-            else if (c == ']')
-                br = Math.max(0, br - 1);
-            else if (c == '{')
-                cr++;
-            else if (c == '}')
-                cr = Math.max(0, cr - 1);
+        void parseExpression() {
+            parseOr();
         }
-        return !inStr && par == 0 && br == 0 && cr == 0;
-    }
-
-    private static String stripInlineComment(String raw) {
-        if (raw == null)
-            return null;
-        boolean inStr = false;
-        boolean esc = false;
 
-        for (int i = 0; i < raw.length(); i++) {
-            char c = raw.charAt(i);
-            if (inStr) {
-                if (esc)
-                    esc = false;
-                else if (c == '\\')
-                    esc = true;
-                else if (c == '"')
-                    inStr = false;
-                continue;
-            }
-            if (c == '"') {
-                inStr = true;
-                continue;
-            }
-            if (c == '#') {
-                return raw.substring(0, i);
+        // a or b / a and b evaluate to a bool; the right side runs only when it can change the result.
+        void parseOr() {
+            DogToken start = lx.peek();
+            parseAnd();
+            if (!matchOr())
+                return;
+            ArrayList<Integer> exits = new ArrayList<>();
+            while (true) {
+                exits.add(out.add(Instruction.jumpIfTrue(-1, start.line, start.col, start.sourceLine)));
+                parseAnd();
+                if (!matchOr())
+                    break;
             }
+            exits.add(out.add(Instruction.jumpIfTrue(-1, start.line, start.col, start.sourceLine)));
+            emitBoolJoin(exits, false, start);
         }
-        return raw;
-    }
 
-    private static int braceDelta(String raw) {
-        if (raw == null)
-            return 0;
-        boolean inStr = false;
-        boolean esc = false;
-        int d = 0;
-
-        for (int i = 0; i < raw.length(); i++) {
-            char c = raw.charAt(i);
-            if (inStr) {
-                if (esc)
-                    esc = false;
-                else if (c == '\\')
-                    esc = true;
-                else if (c == '"')
-                    inStr = false;
-                continue;
-            }
-            if (c == '#')
-                break;
-            if (c == '"') {
-                inStr = true;
-                continue;
+        void parseAnd() {
+            DogToken start = lx.peek();
+            parseEquality();
+            if (!matchAnd())
+                return;
+            ArrayList<Integer> exits = new ArrayList<>();
+            while (true) {
+                exits.add(out.add(Instruction.jumpIfFalse(-1, start.line, start.col, start.sourceLine)));
+                parseEquality();
+                if (!matchAnd())
+                    break;
             }
-            if (c == '{')
-                d++;
-            else if (c == '}')
-                d--;
+            exits.add(out.add(Instruction.jumpIfFalse(-1, start.line, start.col, start.sourceLine)));
+            emitBoolJoin(exits, true, start);
         }
-        return d;
-    }
 
-    private static int braceDeltaRange(List<String> lines, int fromExclusive, int toInclusive) {
-        int d = 0;
-        int a = fromExclusive + 1;
-        int b = Math.min(toInclusive, lines.size() - 1);
-        for (int i = a; i <= b; i++) {
-            d += braceDelta(lines.get(i));
+        // Fall-through pushes fallThrough; every exit jump lands on !fallThrough.
+        void emitBoolJoin(List<Integer> exits, boolean fallThrough, DogToken at) {
+            out.add(Instruction.constBool(fallThrough, at.line, at.col, at.sourceLine));
+            int jEnd = out.add(Instruction.jump(-1, at.line, at.col, at.sourceLine));
+            int target = out.add(Instruction.constBool(!fallThrough, at.line, at.col, at.sourceLine));
+            for (int idx : exits)
+                out.code().get(idx).jumpTarget = target;
+            out.code().get(jEnd).jumpTarget = out.size();
         }
-        return d;
-    }
 
-    private static boolean isIdent(String s) {
-        if (s == null || s.isEmpty())
-            return false;
-        char c0 = s.charAt(0);
-        if (!(Character.isLetter(c0) || c0 == '_'))
+        boolean matchAnd() {
+            DogToken t = lx.peek();
+            if (t.is("&&") || t.isWord("and")) {
+                lx.next();
+                return true;
+            }
             return false;
-        for (int i = 1; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (!(Character.isLetterOrDigit(c) || c == '_'))
-                return false;
         }
-        return true;
-    }
-
-    private static int indexOfNonSpace(String raw) {
-        for (int i = 0; i < raw.length(); i++) {
-            if (!Character.isWhitespace(raw.charAt(i)))
-                return i;
-        }
-        return raw.length();
-    }
 
-    private static int findExprStartIndex(String raw, int afterIndex) {
-        int i = afterIndex;
-        while (i < raw.length() && Character.isWhitespace(raw.charAt(i)))
-            i++;
-        return i;
-    }
-
-    private static int findTopLevelAssign(String s) {
-        if (s == null || s.isEmpty())
-            return -1;
-        int paren = 0;
-        int bracket = 0;
-        int brace = 0;
-        boolean inQuotes = false;
-
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '"') {
-                boolean escaped = (i > 0 && s.charAt(i - 1) == '\\');
-                if (!escaped)
-                    inQuotes = !inQuotes;
-                continue;
-            }
-            if (inQuotes)
-                continue;
-            if (c == '#')
-                break;
-            if (c == '(')
-                paren++;
-            else if (c == ')' && paren > 0)
-                paren--;
-            else if (c == '[')
-                bracket++;
-            else if (c == ']' && bracket > 0)
-                bracket--;
-            else if (c == '{')
-                brace++;
-            else if (c == '}' && brace > 0)
-                brace--;
-            if (paren != 0 || bracket != 0 || brace != 0)
-                continue;
-            if (c == '=') {
-                if (i + 1 < s.length() && s.charAt(i + 1) == '=')
-                    continue;
-                if (i - 1 >= 0) {
-                    char prev = s.charAt(i - 1);
-                    if (prev == '!' || prev == '<' || prev == '>')
-                        continue;
-                }
-                return i;
+        boolean matchOr() {
+            DogToken t = lx.peek();
+            if (t.is("||") || t.isWord("or")) {
+                lx.next();
+                return true;
             }
-        }
-        return -1;
-    }
-
-    private static final class Parser {
-        private final String s;
-        private final int line;
-        private final int baseCol;
-        private final String fullLine;
-        private final Chunk out;
-        int pos = 0;
-        boolean didCall = false;
-
-        Parser(String s, int line, int baseCol, String fullLine, Chunk out) {
-            this.s = s;
-            this.line = line;
-            this.baseCol = baseCol;
-            this.fullLine = fullLine;
-            this.out = out;
-        }
-
-        void parseExpression() {
-            parseEquality();
+            return false;
         }
 
         void parseEquality() {
             parseCompare();
             while (true) {
-                skipSpaces();
-                if (match2("==")) {
+                DogToken t = lx.peek();
+                if (t.is("==")) {
+                    lx.next();
                     parseCompare();
-                    emit(OpCode.EQ);
-                } else if (match2("!=") || match2("<>")) {
+                    emit(OpCode.EQ, t);
+                } else if (t.is("!=") || t.is("<>")) {
+                    lx.next();
                     parseCompare();
-                    emit(OpCode.NEQ);
+                    emit(OpCode.NEQ, t);
                 } else {
                     break;
                 }
@@ -786,37 +472,36 @@ public final class BytecodeCompiler {
         void parseCompare() {
             parseAdd();
             while (true) {
-                skipSpaces();
-                if (peek() == '<' && peekNext() == '>')
+                DogToken t = lx.peek();
+                OpCode op;
+                if (t.is(">="))
+                    op = OpCode.GE;
+                else if (t.is("<="))
+                    op = OpCode.LE;
+                else if (t.is(">"))
+                    op = OpCode.GT;
+                else if (t.is("<"))
+                    op = OpCode.LT;
+                else
                     break;
-                if (match2(">=")) {
-                    parseAdd();
-                    emit(OpCode.GE);
-                } else if (match2("<=")) {
-                    parseAdd();
-                    emit(OpCode.LE);
-                } else if (match('>')) {
-                    parseAdd();
-                    emit(OpCode.GT);
-                } else if (match('<')) {
-                    parseAdd();
-                    emit(OpCode.LT);
-                } else {
-                    break;
-                }
+                lx.next();
+                parseAdd();
+                emit(op, t);
             }
         }
 
         void parseAdd() {
             parseMul();
             while (true) {
-                skipSpaces();
-                if (match('+')) {
+                DogToken t = lx.peek();
+                if (t.is("+")) {
+                    lx.next();
                     parseMul();
-                    emit(OpCode.ADD);
-                } else if (match('-')) {
+                    emit(OpCode.ADD, t);
+                } else if (t.is("-")) {
+                    lx.next();
                     parseMul();
-                    emit(OpCode.SUB);
+                    emit(OpCode.SUB, t);
                 } else {
                     break;
                 }
@@ -826,13 +511,15 @@ public final class BytecodeCompiler {
         void parseMul() {
             parseUnary();
             while (true) {
-                skipSpaces();
-                if (match('*')) {
+                DogToken t = lx.peek();
+                if (t.is("*")) {
+                    lx.next();
                     parseUnary();
-                    emit(OpCode.MUL);
-                } else if (match('/')) {
+                    emit(OpCode.MUL, t);
+                } else if (t.is("/")) {
+                    lx.next();
                     parseUnary();
-                    emit(OpCode.DIV);
+                    emit(OpCode.DIV, t);
                 } else {
                     break;
                 }
@@ -840,18 +527,18 @@ public final class BytecodeCompiler {
         }
 
         void parseUnary() {
-            skipSpaces();
-
-            if (match('!')) {
+            DogToken t = lx.peek();
+            if (t.is("!")) {
+                lx.next();
                 parseUnary();
-                emit(OpCode.NOT);
+                emit(OpCode.NOT, t);
                 return;
             }
-            if (match('-')) {
-                int start = pos;
-                emitConstInt(0, start);
+            if (t.is("-")) {
+                lx.next();
+                out.add(Instruction.constInt(0, t.line, t.col, t.sourceLine));
                 parseUnary();
-                emit(OpCode.SUB);
+                emit(OpCode.SUB, t);
                 return;
             }
             parsePrimary();
@@ -860,20 +547,20 @@ public final class BytecodeCompiler {
 
         void parsePostfix() {
             while (true) {
-                skipSpaces();
-                if (match('(')) {
+                DogToken t = lx.peek();
+                if (t.is("(")) {
+                    lx.next();
                     didCall = true;
                     int argc = parseArgsAfterOpenParen();
-                    out.add(Instruction.callValue(argc, line, baseCol + pos, fullLine));
+                    out.add(Instruction.callValue(argc, t.line, t.col, t.sourceLine));
                     continue;
                 }
-                if (match('[')) {
-                    skipSpaces();
+                if (t.is("[")) {
+                    lx.next();
                     parseExpression();
-                    skipSpaces();
-                    if (!match(']'))
-                        throw err("Missing ']'");
-                    out.add(Instruction.arrayGet(line, baseCol + pos, fullLine));
+                    if (!lx.next().is("]"))
+                        throw err(t, "Missing ']'");
+                    out.add(Instruction.arrayGet(t.line, t.col, t.sourceLine));
                     continue;
                 }
                 break;
@@ -881,402 +568,226 @@ public final class BytecodeCompiler {
         }
 
         int parseArgsAfterOpenParen() {
-            skipSpaces();
-            if (match(')'))
+            if (lx.peek().is(")")) {
+                lx.next();
                 return 0;
+            }
             int count = 0;
             while (true) {
                 parseExpression();
                 count++;
-                skipSpaces();
-                if (match(')'))
+                DogToken t = lx.next();
+                if (t.is(")"))
                     break;
-                if (!match(','))
-                    throw err("Expected ',' or ')' in arguments");
-                skipSpaces();
+                if (!t.is(","))
+                    throw err(t, "Expected ',' or ')' in arguments");
             }
             return count;
         }
 
         void parsePrimary() {
-            skipSpaces();
-            if (match('[')) {
-                skipSpaces();
+            DogToken t = lx.peek();
+            if (t.is("[")) {
+                lx.next();
                 int count = 0;
-                if (match(']')) {
-                    out.add(Instruction.arrayNew(0, line, baseCol + pos, fullLine));
-                    return;
-                }
-                while (true) {
-                    parseExpression();
-                    count++;
-                    skipSpaces();
-                    if (match(']'))
-                        break;
-                    if (!match(','))
-                        throw err("Expected ',' or ']' in array literal");
-                    skipSpaces();
+                if (!lx.peek().is("]")) {
+                    while (true) {
+                        parseExpression();
+                        count++;
+                        DogToken sep = lx.next();
+                        if (sep.is("]"))
+                            break;
+                        if (!sep.is(","))
+                            throw err(sep, "Expected ',' or ']' in array literal");
+                    }
+                } else {
+                    lx.next();
                 }
-                out.add(Instruction.arrayNew(count, line, baseCol + pos, fullLine));
+                out.add(Instruction.arrayNew(count, t.line, t.col, t.sourceLine));
                 return;
             }
-            if (peek() == '"') {
-                int start = pos;
-                String str = parseString();
-                out.add(Instruction.constStr(str, line, baseCol + start, fullLine));
+            if (t.type == DogToken.Type.STRING) {
+                lx.next();
+                out.add(Instruction.constStr(t.text, t.line, t.col, t.sourceLine));
                 return;
             }
-            if (peek() == '(') {
-                int saved = pos;
-                LambdaHeader lh = tryParseLambdaHeader(saved);
-                if (lh != null) {
-                    skipSpaces();
-                    if (matchArrow()) {
-                        skipSpaces();
-                        int bodyStart = pos;
-                        String bodyExpr = readLambdaBodySlice();
-                        if (bodyExpr.trim().isEmpty())
-                            throw err("Expected expression after lambda arrow");
-                        Chunk body = new Chunk();
-                        Parser p2 = new Parser(bodyExpr, line, baseCol + bodyStart, fullLine, body);
-                        p2.parseExpression();
-                        p2.finish();
-                        body.add(Instruction.ret(line, baseCol + bodyStart, fullLine));
-                        int fnIndex = out.addFunction(new FunctionProto(lh.params, body));
-                        out.add(Instruction.constFunc(fnIndex, line, baseCol + saved, fullLine));
-                        pos = bodyStart + bodyExpr.length();
-                        return;
-                    } else {
-                        pos = saved;
-                    }
+            if (t.is("(")) {
+                int arrowAt = lambdaArrowOffset();
+                if (arrowAt > 0) {
+                    parseLambda(t, arrowAt);
+                    return;
                 }
-                match('(');
+                lx.next();
                 parseExpression();
-                skipSpaces();
-                if (!match(')'))
-                    throw err("Missing ')'");
+                if (!lx.next().is(")"))
+                    throw err(t, "Missing ')'");
                 return;
             }
-
-            if (Character.isDigit(peek()) || peek() == '.') {
-                int start = pos;
-                emitNumberLiteral(parseNumberToken(), start);
+            if (t.type == DogToken.Type.NUMBER) {
+                lx.next();
+                emitNumberLiteral(t);
                 return;
             }
-            if (isIdentStart(peek())) {
-                parseIdentOrQualifiedOrKeyword();
+            if (t.type == DogToken.Type.IDENT) {
+                lx.next();
+                parseIdentOrQualifiedOrKeyword(t);
                 return;
             }
-            throw err("Unexpected token near: " + rest());
+            throw err(t, "Unexpected token near: " + restOfLine(t));
         }
 
-        boolean matchArrow() {
-            if (match2("=>"))
-                return true;
-            if (match2("->"))
-                return true;
-            return false;
-        }
-
-        LambdaHeader tryParseLambdaHeader(int savedPos) {
-            int p = savedPos;
-            if (p >= s.length() || s.charAt(p) != '(')
-                return null;
-            p++;
-            ArrayList<String> params = new ArrayList<>();
-            while (p < s.length() && Character.isWhitespace(s.charAt(p)))
-                p++;
-            if (p < s.length() && s.charAt(p) == ')') {
-                p++;
-                pos = p;
-                return new LambdaHeader(params);
-            }
-            while (true) {
-                while (p < s.length() && Character.isWhitespace(s.charAt(p)))
-                    p++;
-                if (p >= s.length())
-                    return null;
-                char c = s.charAt(p);
-                if (!(Character.isLetter(c) || c == '_'))
-                    return null;
-                int start = p;
-                p++;
-                while (p < s.length()) {
-                    char cc = s.charAt(p);
-                    if (Character.isLetterOrDigit(cc) || cc == '_')
-                        p++;
-                    else
+        // "(a, b) =>" / "(a, b) ->": offset of the arrow token, or -1 when '(' opens a plain group.
+        int lambdaArrowOffset() {
+            int k = 1;
+            if (lx.peek(k).is(")")) {
+                k++;
+            } else {
+                while (true) {
+                    if (lx.peek(k).type != DogToken.Type.IDENT)
+                        return -1;
+                    k++;
+                    DogToken sep = lx.peek(k++);
+                    if (sep.is(")"))
                         break;
+                    if (!sep.is(","))
+                        return -1;
                 }
-                params.add(s.substring(start, p));
-
-                while (p < s.length() && Character.isWhitespace(s.charAt(p)))
-                    p++;
-                if (p >= s.length())
-                    return null;
-
-                if (s.charAt(p) == ')') {
-                    p++;
-                    pos = p;
-                    return new LambdaHeader(params);
-                }
-                if (s.charAt(p) == ',') {
-                    p++;
-                    continue;
-                }
-                return null;
             }
+            DogToken arrow = lx.peek(k);
+            return (arrow.is("=>") || arrow.is("->")) ? k : -1;
         }
 
-        String readLambdaBodySlice() {
-            int i = pos;
-            int par = 0, br = 0, cr = 0;
-            boolean inStr = false;
-            boolean esc = false;
-            while (i < s.length()) {
-                char c = s.charAt(i);
-                if (inStr) {
-                    if (esc)
-                        esc = false;
-                    else if (c == '\\')
-                        esc = true;
-                    else if (c == '"')
-                        inStr = false;
-                    i++;
-                    continue;
-                }
-                if (c == '"') {
-                    inStr = true;
-                    i++;
-                    continue;
-                }
-                if (c == '#')
-                    break;
-                if (par == 0 && br == 0 && cr == 0) {
-                    if (c == ',' || c == ')' || c == ']' || c == '}') {
-                        break;
-                    }
-                }
-                if (c == '(')
-                    par++;
-                else if (c == ')' && par > 0)
-                    par--;
-                else if (c == '[')
-                    br++;
-                else if (c == ']' && br > 0)
-                    br--;
-                else if (c == '{')
-                    cr++;
-                else if (c == '}' && cr > 0)
-                    cr--;
-                i++;
+        void parseLambda(DogToken open, int arrowAt) {
+            ArrayList<String> params = new ArrayList<>();
+            for (int i = 0; i < arrowAt; i++) {
+                DogToken t = lx.next();
+                if (t.type == DogToken.Type.IDENT)
+                    params.add(t.text);
+            }
+            lx.next();
+            DogToken bodyStart = lx.peek();
+            if (bodyStart.isEnd() || bodyStart.is(")") || bodyStart.is(",") || bodyStart.is("]"))
+                throw err(bodyStart, "Expected expression after lambda arrow");
+            Chunk body = new Chunk();
+            Chunk saved = out;
+            boolean savedCall = didCall;
+            out = body;
+            parseExpression();
+            body.add(Instruction.ret(bodyStart.line, bodyStart.col, bodyStart.sourceLine));
+            out = saved;
+            didCall = savedCall;
+            int fnIndex = out.addFunction(new FunctionProto(params, body));
+            out.add(Instruction.constFunc(fnIndex, open.line, open.col, open.sourceLine));
+        }
+
+        void parseIdentOrQualifiedOrKeyword(DogToken a) {
+            if (a.text.equals("true")) {
+                out.add(Instruction.constBool(true, a.line, a.col, a.sourceLine));
+                return;
             }
-            return s.substring(pos, i);
-        }
-
-        void parseIdentOrQualifiedOrKeyword() {
-            int start = pos;
-            String a = parseIdent();
-            if (a.equals("true")) {
-                out.add(Instruction.constBool(true, line, baseCol + start, fullLine));
+            if (a.text.equals("false")) {
+                out.add(Instruction.constBool(false, a.line, a.col, a.sourceLine));
                 return;
             }
-            if (a.equals("false")) {
-                out.add(Instruction.constBool(false, line, baseCol + start, fullLine));
+            if (a.text.equals("nil")) {
+                out.add(Instruction.constNil(a.line, a.col, a.sourceLine));
                 return;
             }
-            if (a.equals("nil")) {
-                out.add(Instruction.constNil(line, baseCol + start, fullLine));
+            if (a.text.equals("range") && lx.peek().is("(")) {
+                lx.next();
+                int argCount = parseArgsAfterOpenParen();
+                if (argCount < 1 || argCount > 3)
+                    throw err(a, "range(...) expects 1 to 3 arguments");
+                out.add(Instruction.range(argCount, a.line, a.col, a.sourceLine));
                 return;
             }
-            skipSpaces();
-            if (match('.')) {
-                skipSpaces();
-                if (!isIdentStart(peek()))
-                    throw err("Expected identifier after '.'");
-                String b = parseIdent();
-                skipSpaces();
-                if (match('(')) {
+            if (lx.peek().is(".")) {
+                lx.next();
+                DogToken b = lx.next();
+                if (b.type != DogToken.Type.IDENT)
+                    throw err(b, "Expected identifier after '.'");
+                if (lx.peek().is("(")) {
+                    lx.next();
                     didCall = true;
                     int argCount = parseArgsAfterOpenParen();
-                    out.add(Instruction.call(a, b, argCount, false, line, baseCol + start, fullLine));
+                    out.add(Instruction.call(a.text, b.text, argCount, false, a.line, a.col, a.sourceLine));
                     return;
                 }
-                out.add(Instruction.call(a, b, 0, true, line, baseCol + start, fullLine));
+                out.add(Instruction.call(a.text, b.text, 0, true, a.line, a.col, a.sourceLine));
                 return;
             }
-            out.add(Instruction.load(a, line, baseCol + start, fullLine));
-        }
-
-        void emitConstInt(int v, int startPos) {
-            out.add(Instruction.constInt(v, line, baseCol + startPos, fullLine));
-        }
-
-        String parseString() {
-            if (!match('"'))
-                throw err("Expected '\"'");
-            StringBuilder sb = new StringBuilder();
-            while (!isEnd()) {
-                char c = s.charAt(pos++);
-                if (c == '"')
-                    return sb.toString();
-
-                if (c == '\\' && !isEnd()) {
-                    char n = s.charAt(pos++);
-                    if (n == 'n')
-                        sb.append('\n');
-                    else if (n == 't')
-                        sb.append('\t');
-                    else if (n == '"')
-                        sb.append('"');
-                    else if (n == '\\')
-                        sb.append('\\');
-                    else
-                        sb.append(n);
-                } else {
-                    sb.append(c);
-                }
-            }
-            throw err("Unterminated string literal");
+            out.add(Instruction.load(a.text, a.line, a.col, a.sourceLine));
         }
 
-        String parseNumberToken() {
-            int start = pos;
-            boolean dot = false;
-            boolean exp = false;
-
-            while (!isEnd()) {
-                char c = s.charAt(pos);
-                if (Character.isDigit(c)) {
-                    pos++;
-                    continue;
-                }
-                if (c == '.' && !dot && !exp) {
-                    dot = true;
-                    pos++;
-                    continue;
-                }
-                if ((c == 'e' || c == 'E') && !exp) {
-                    exp = true;
-                    pos++;
-                    if (!isEnd()) {
-                        char sgn = s.charAt(pos);
-                        if (sgn == '+' || sgn == '-')
-                            pos++;
-                    }
-                    continue;
-                }
-                break;
-            }
-            return s.substring(start, pos);
-        }
-
-        void emitNumberLiteral(String token, int startPos) {
-            if (token == null || token.isEmpty())
-                throw err("Bad number");
+        void emitNumberLiteral(DogToken t) {
+            String token = t.text;
             if (token.indexOf('.') >= 0 || token.indexOf('e') >= 0 || token.indexOf('E') >= 0) {
                 try {
                     double d = Double.parseDouble(token);
-                    out.add(Instruction.constDouble(d, line, baseCol + startPos, fullLine));
+                    out.add(Instruction.constDouble(d, t.line, t.col, t.sourceLine));
                 } catch (NumberFormatException e) {
-                    throw err("Bad number: " + token);
+                    throw err(t, "Bad number: " + token);
                 }
                 return;
             }
-
             try {
                 java.math.BigInteger bi = new java.math.BigInteger(token);
                 if (bi.bitLength() <= 31) {
-                    out.add(Instruction.constInt(bi.intValue(), line, baseCol + startPos, fullLine));
+                    out.add(Instruction.constInt(bi.intValue(), t.line, t.col, t.sourceLine));
                     return;
                 }
                 if (bi.bitLength() <= 63) {
-                    out.add(Instruction.constLong(bi.longValue(), line, baseCol + startPos, fullLine));
+                    out.add(Instruction.constLong(bi.longValue(), t.line, t.col, t.sourceLine));
                     return;
                 }
-                out.add(Instruction.constBigInt(bi.toString(), line, baseCol + startPos, fullLine));
+                out.add(Instruction.constBigInt(bi.toString(), t.line, t.col, t.sourceLine));
             } catch (NumberFormatException e) {
-                throw err("Bad number: " + token);
+                throw err(t, "Bad number: " + token);
             }
         }
 
-        void finish() {
-            skipSpaces();
-            if (!isEnd())
-                throw err("Bad expression near: " + rest());
+        void emit(OpCode op, DogToken at) {
+            out.add(Instruction.simple(op, at.line, at.col, at.sourceLine));
         }
 
-        void emit(OpCode op) {
-            out.add(Instruction.simple(op, line, baseCol + pos, fullLine));
-        }
-
-        void skipSpaces() {
-            while (!isEnd() && Character.isWhitespace(s.charAt(pos)))
-                pos++;
-        }
-
-        boolean match(char c) {
-            if (!isEnd() && s.charAt(pos) == c) {
-                pos++;
-                return true;
-            }
-            return false;
-        }
-
-        boolean match2(String two) {
-            if (pos + 1 >= s.length())
+        static boolean isStep(DogToken a, DogToken b) {
+            if (!((a.is("+") && b.is("+")) || (a.is("-") && b.is("-"))))
                 return false;
-            if (s.charAt(pos) == two.charAt(0) && s.charAt(pos + 1) == two.charAt(1)) {
-                pos += 2;
-                return true;
-            }
-            return false;
-        }
-
-        char peek() {
-            return isEnd() ? '\0' : s.charAt(pos);
+            return a.line == b.line && b.col == a.col + 1;
         }
 
-        char peekNext() {
-            return (pos + 1 >= s.length()) ? '\0' : s.charAt(pos + 1);
+        static OpCode varOpFor(DogToken op) {
+            if (op.is("+="))
+                return OpCode.ADD_VAR;
+            if (op.is("-="))
+                return OpCode.SUB_VAR;
+            return OpCode.MUL_VAR;
         }
 
-        boolean isEnd() {
-            return pos >= s.length();
+        static OpCode slotOpFor(DogToken op) {
+            if (op.is("+="))
+                return OpCode.ARRAY_ADD;
+            if (op.is("-="))
+                return OpCode.ARRAY_SUB;
+            return OpCode.ARRAY_MUL;
         }
 
-        String rest() {
-            return s.substring(Math.min(pos, s.length()));
+        static String targetText(DogToken first, DogToken stop) {
+            String src = first.sourceLine;
+            if (src == null)
+                return first.text;
+            int to = (stop.line == first.line) ? Math.min(src.length(), stop.col - 1) : src.length();
+            return src.substring(first.col - 1, Math.max(first.col - 1, to)).trim();
         }
 
-        boolean isIdentStart(char c) {
-            return Character.isLetter(c) || c == '_';
+        static String restOfLine(DogToken t) {
+            if (t.sourceLine == null || t.isEnd())
+                return t.describe();
+            return t.sourceLine.substring(Math.min(t.col - 1, t.sourceLine.length())).trim();
         }
 
-        boolean isIdentPart(char c) {
-            return Character.isLetterOrDigit(c) || c == '_';
-        }
-
-        String parseIdent() {
-            int start = pos;
-            if (!isIdentStart(peek()))
-                throw err("Expected identifier");
-            pos++;
-            while (!isEnd() && isIdentPart(s.charAt(pos)))
-                pos++;
-            return s.substring(start, pos);
-        }
-
-        DogException err(String msg) {
-            return DogException.at(line, baseCol + pos, fullLine, msg);
-        }
-
-        static final class LambdaHeader {
-            final ArrayList<String> params;
-
-            LambdaHeader(ArrayList<String> params) {
-                this.params = params;
-            }
+        static DogException err(DogToken at, String msg) {
+            return DogException.at(at.line, at.col, at.sourceLine, msg);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,321 @@
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BytecodeOptimizer {
+
+    private BytecodeOptimizer() {
+    }
+
+    public static Chunk optimize(Chunk chunk) {
+        return optimize(chunk, ModuleRegistry.standard());
+    }
+
+    // The registry only answers purity questions; modules are never called at compile time.
+    public static Chunk optimize(Chunk chunk, ModuleRegistry modules) {
+        return optimize(chunk, true, new CallInliner(chunk), new LoopInvariantMotion(modules));
+    }
+
+    // Function bodies are finished first so the inliner sees their optimized code.
+    private static Chunk optimize(Chunk chunk, boolean topLevel, CallInliner inliner, LoopInvariantMotion licm) {
+        Chunk out = new Chunk();
+        for (FunctionProto fp : chunk.functions())
+            out.addFunction(new FunctionProto(fp.params, optimize(fp.body, false, inliner, licm)));
+        List<Instruction> code = foldConstants(chunk.code());
+        code = pruneConstantBranches(code);
+        code = removeUnreachable(code);
+        code = inliner.apply(code, out.functions(), topLevel);
+        code = licm.apply(code);
+        code = peephole(code);
+        for (Instruction ins : code)
+            out.add(ins);
+        return out;
+    }
+
+    // Collapses const/const/op and const/NOT windows as they are emitted, so folds cascade left to right.
+    static List<Instruction> foldConstants(List<Instruction> code) {
+        int n = code.size();
+        boolean[] isTarget = jumpTargets(code);
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n);
+        ArrayList<Boolean> outTarget = new ArrayList<Boolean>(n);
+        int[] map = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            map[i] = out.size();
+            out.add(code.get(i));
+            outTarget.add(isTarget[i]);
+            while (foldTail(out, outTarget)) {
+            }
+        }
+        map[n] = out.size();
+        return remap(out, map);
+    }
+
+    private static boolean foldTail(ArrayList<Instruction> out, ArrayList<Boolean> outTarget) {
+        int k = out.size();
+        Instruction last = out.get(k - 1);
+        if (last.op == OpCode.NOT) {
+            if (k < 2 || outTarget.get(k - 1))
+                return false;
+            Value a = constValue(out.get(k - 2));
+            if (a == null)
+                return false;
+            replaceTail(out, outTarget, 2, constOf(Value.bool(!DogOps.isTruthy(a)), out.get(k - 2)));
+            return true;
+        }
+        if (!isFoldableBinary(last.op) || k < 3 || outTarget.get(k - 1) || outTarget.get(k - 2))
+            return false;
+        Value a = constValue(out.get(k - 3));
+        Value b = constValue(out.get(k - 2));
+        if (a == null || b == null)
+            return false;
+        Value r = foldBinary(last.op, a, b);
+        if (r == null)
+            return false;
+        replaceTail(out, outTarget, 3, constOf(r, out.get(k - 3)));
+        return true;
+    }
+
+    private static void replaceTail(ArrayList<Instruction> out, ArrayList<Boolean> outTarget, int count,
+            Instruction ins) {
+        int first = out.size() - count;
+        boolean target = outTarget.get(first);
+        for (int i = 0; i < count; i++) {
+            out.remove(out.size() - 1);
+            outTarget.remove(outTarget.size() - 1);
+        }
+        out.add(ins);
+        outTarget.add(target);
+    }
+
+    // CONST c; JUMP_IF_FALSE/JUMP_IF_TRUE t becomes JUMP t or nothing, unless another path lands on the jump.
+    static List<Instruction> pruneConstantBranches(List<Instruction> code) {
+        int n = code.size();
+        boolean[] isTarget = jumpTargets(code);
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n);
+        int[] map = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            Instruction nextIns = (i + 1 < n) ? code.get(i + 1) : null;
+            Value c = constValue(ins);
+            if (c != null && nextIns != null && !isTarget[i + 1]
+                    && (nextIns.op == OpCode.JUMP_IF_FALSE || nextIns.op == OpCode.JUMP_IF_TRUE)) {
+                boolean truthy = DogOps.isTruthy(c);
+                boolean taken = (nextIns.op == OpCode.JUMP_IF_TRUE) == truthy;
+                map[i] = out.size();
+                map[i + 1] = out.size();
+                if (taken)
+                    out.add(Instruction.jump(nextIns.jumpTarget, nextIns.line, nextIns.col, nextIns.sourceLine));
+                i++;
+                continue;
+            }
+            map[i] = out.size();
+            out.add(ins);
+        }
+        map[n] = out.size();
+        return remap(out, map);
+    }
+
+    // Repeats until a round removes nothing; threading can expose new jump-to-next and dead code.
+    static List<Instruction> peephole(List<Instruction> code) {
+        while (true) {
+            int before = code.size();
+            code = threadJumps(code);
+            code = fuseAdjacent(code);
+            code = removeUnreachable(code);
+            if (code.size() == before)
+                return code;
+        }
+    }
+
+    // Points every jump at the end of its JUMP chain.
+    static List<Instruction> threadJumps(List<Instruction> code) {
+        int n = code.size();
+        ArrayList<Instruction> out = new ArrayList<Instruction>(code);
+        for (int i = 0; i < n; i++) {
+            Instruction ins = out.get(i);
+            if (!ins.isJump())
+                continue;
+            int t = ins.jumpTarget;
+            for (int hops = 0; hops < n && t >= 0 && t < n && code.get(t).op == OpCode.JUMP; hops++)
+                t = code.get(t).jumpTarget;
+            if (t != ins.jumpTarget)
+                out.set(i, ins.withTarget(t));
+        }
+        return out;
+    }
+
+    // JUMP to the next instruction disappears, STORE x; LOAD x becomes STORE_KEEP x, NOT; JUMP_IF_* flips the branch.
+    static List<Instruction> fuseAdjacent(List<Instruction> code) {
+        int n = code.size();
+        boolean[] isTarget = jumpTargets(code);
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n);
+        int[] map = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            map[i] = out.size();
+            if (ins.op == OpCode.JUMP && ins.jumpTarget == i + 1)
+                continue;
+            Instruction nextIns = (i + 1 < n && !isTarget[i + 1]) ? code.get(i + 1) : null;
+            if (nextIns != null && ins.op == OpCode.STORE && nextIns.op == OpCode.LOAD
+                    && ins.name != null && ins.name.equals(nextIns.name)) {
+                map[i + 1] = out.size();
+                out.add(Instruction.storeKeep(ins.name, ins.line, ins.col, ins.sourceLine));
+                i++;
+                continue;
+            }
+            if (nextIns != null && ins.op == OpCode.NOT
+                    && (nextIns.op == OpCode.JUMP_IF_FALSE || nextIns.op == OpCode.JUMP_IF_TRUE)) {
+                map[i + 1] = out.size();
+                out.add(nextIns.op == OpCode.JUMP_IF_FALSE
+                        ? Instruction.jumpIfTrue(nextIns.jumpTarget, nextIns.line, nextIns.col, nextIns.sourceLine)
+                        : Instruction.jumpIfFalse(nextIns.jumpTarget, nextIns.line, nextIns.col, nextIns.sourceLine));
+                i++;
+                continue;
+            }
+            out.add(ins);
+        }
+        map[n] = out.size();
+        return remap(out, map);
+    }
+
+    static List<Instruction> removeUnreachable(List<Instruction> code) {
+        int n = code.size();
+        boolean[] live = new boolean[n];
+        ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+        if (n > 0)
+            work.push(0);
+        while (!work.isEmpty()) {
+            int i = work.pop();
+            if (i < 0 || i >= n || live[i])
+                continue;
+            live[i] = true;
+            Instruction ins = code.get(i);
+            if (ins.isJump())
+                work.push(ins.jumpTarget);
+            if (ins.op != OpCode.JUMP && ins.op != OpCode.RETURN)
+                work.push(i + 1);
+        }
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n);
+        int[] map = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            map[i] = out.size();
+            if (live[i])
+                out.add(code.get(i));
+        }
+        map[n] = out.size();
+        return remap(out, map);
+    }
+
+    static boolean[] jumpTargets(List<Instruction> code) {
+        boolean[] t = new boolean[code.size() + 1];
+        for (Instruction ins : code) {
+            if (ins.isJump() && ins.jumpTarget >= 0 && ins.jumpTarget <= code.size())
+                t[ins.jumpTarget] = true;
+        }
+        return t;
+    }
+
+    // map[old] is the new index of the first surviving instruction at or after old.
+    static List<Instruction> remap(ArrayList<Instruction> out, int[] map) {
+        for (int i = 0; i < out.size(); i++) {
+            Instruction ins = out.get(i);
+            if (ins.isJump() && ins.jumpTarget >= 0 && ins.jumpTarget < map.length)
+                out.set(i, ins.withTarget(map[ins.jumpTarget]));
+        }
+        return out;
+    }
+
+    private static boolean isFoldableBinary(OpCode op) {
+        switch (op) {
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case EQ:
+            case NEQ:
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Mirrors the VM; null when the VM would raise an error so the error still happens at run time.
+    static Value foldBinary(OpCode op, Value a, Value b) {
+        switch (op) {
+            case ADD:
+                if (a.isString() || b.isString())
+                    return Value.str(a.printable() + b.printable());
+                return (a.isNumber() && b.isNumber()) ? DogOps.numAdd(a, b) : null;
+            case SUB:
+                return (a.isNumber() && b.isNumber()) ? DogOps.numSub(a, b) : null;
+            case MUL:
+                return (a.isNumber() && b.isNumber()) ? DogOps.numMul(a, b) : null;
+            case DIV:
+                return (a.isNumber() && b.isNumber()) ? DogOps.div(a, b) : null;
+            case EQ:
+                return Value.bool(DogOps.isEqual(a, b));
+            case NEQ:
+                return Value.bool(!DogOps.isEqual(a, b));
+            default:
+                break;
+        }
+        if (!a.isNumber() || !b.isNumber())
+            return null;
+        int c = DogOps.numCompare(a, b);
+        switch (op) {
+            case LT:
+                return Value.bool(c < 0);
+            case GT:
+                return Value.bool(c > 0);
+            case LE:
+                return Value.bool(c <= 0);
+            default:
+                return Value.bool(c >= 0);
+        }
+    }
+
+    static Value constValue(Instruction ins) {
+        switch (ins.op) {
+            case CONST_INT:
+                return Value.ofInt(ins.intVal != null ? ins.intVal : 0);
+            case CONST_LONG:
+                return Value.ofLong(ins.longVal != null ? ins.longVal : 0L);
+            case CONST_DOUBLE:
+                return Value.ofDouble(ins.doubleVal != null ? ins.doubleVal : 0.0);
+            case CONST_BIGINT:
+                return Value.ofBigInt(new BigInteger(ins.text != null ? ins.text : "0"));
+            case CONST_STR:
+                return Value.str(ins.text);
+            case CONST_BOOL:
+                return Value.bool(ins.boolVal != null && ins.boolVal);
+            case CONST_NIL:
+                return Value.nil();
+            default:
+                return null;
+        }
+    }
+
+    static Instruction constOf(Value v, Instruction at) {
+        switch (v.kind) {
+            case INT:
+                return Instruction.constInt(v.intVal, at.line, at.col, at.sourceLine);
+            case LONG:
+                return Instruction.constLong(v.longVal, at.line, at.col, at.sourceLine);
+            case DOUBLE:
+                return Instruction.constDouble(v.doubleVal, at.line, at.col, at.sourceLine);
+            case BIGINT:
+                return Instruction.constBigInt(v.bigIntVal.toString(), at.line, at.col, at.sourceLine);
+            case STRING:
+                return Instruction.constStr(v.stringVal, at.line, at.col, at.sourceLine);
+            case BOOL:
+                return Instruction.constBool(v.boolVal, at.line, at.col, at.sourceLine);
+            default:
+                return Instruction.constNil(at.line, at.col, at.sourceLine);
+        }
+    }
+}
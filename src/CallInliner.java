@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Splices small functions into their CALL_VALUE sites. A callee qualifies when `CONST_FUNC; STORE f` sits outside every
+// branch and loop of the chunk, nothing else ever writes f, and its body is a short expression over its own
+// parameters that ends in RETURN. Parameters become `$f.param` variables of the caller.
+public final class CallInliner {
+
+    static final int MAX_BODY = 16;
+
+    private final Map<String, Integer> writesInFunctions = new HashMap<String, Integer>();
+
+    // Functions can assign into their callers' frames, so below top level a binding is only trusted when it is the
+    // one write of that name in any function body.
+    public CallInliner(Chunk program) {
+        collectWrites(program, writesInFunctions);
+    }
+
+    private static void collectWrites(Chunk chunk, Map<String, Integer> out) {
+        for (FunctionProto fp : chunk.functions()) {
+            countWrites(fp.body.code(), out);
+            collectWrites(fp.body, out);
+        }
+    }
+
+    private static void countWrites(List<Instruction> code, Map<String, Integer> out) {
+        for (Instruction ins : code) {
+            if (writesName(ins))
+                out.put(ins.name, out.containsKey(ins.name) ? out.get(ins.name) + 1 : 1);
+        }
+    }
+
+    private static boolean writesName(Instruction ins) {
+        switch (ins.op) {
+            case STORE:
+            case STORE_KEEP:
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+            case INC_VAR:
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public List<Instruction> apply(List<Instruction> code, List<FunctionProto> functions, boolean topLevel) {
+        int n = code.size();
+        boolean[] isTarget = BytecodeOptimizer.jumpTargets(code);
+        Map<String, Integer> bound = bindings(code, functions, isTarget, topLevel);
+        if (bound.isEmpty())
+            return code;
+
+        boolean[] drop = new boolean[n];
+        String[] site = new String[n];
+        for (int c = 0; c < n; c++) {
+            Instruction call = code.get(c);
+            if (call.op != OpCode.CALL_VALUE)
+                continue;
+            int k = calleeLoad(code, c, isTarget);
+            if (k < 0)
+                continue;
+            String f = code.get(k).name;
+            Integer at = bound.get(f);
+            if (at == null || k <= at)
+                continue;
+            FunctionProto fp = functions.get(code.get(at - 1).funcIndex);
+            if (fp.params.size() != call.argCount)
+                continue;
+            drop[k] = true;
+            site[c] = f;
+        }
+
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n);
+        ArrayList<Boolean> placed = new ArrayList<Boolean>(n);
+        int[] map = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            map[i] = out.size();
+            if (drop[i])
+                continue;
+            Instruction ins = code.get(i);
+            if (site[i] == null) {
+                out.add(ins);
+                placed.add(false);
+                continue;
+            }
+            String f = site[i];
+            FunctionProto fp = functions.get(code.get(bound.get(f) - 1).funcIndex);
+            for (int p = fp.params.size() - 1; p >= 0; p--) {
+                out.add(Instruction.store(temp(f, fp.params.get(p)), ins.line, ins.col, ins.sourceLine));
+                placed.add(false);
+            }
+            List<Instruction> body = fp.body.code();
+            int base = out.size();
+            for (int b = 0; b < body.size() - 1; b++) {
+                Instruction bi = body.get(b);
+                if (bi.op == OpCode.LOAD) {
+                    out.add(Instruction.load(temp(f, bi.name), bi.line, bi.col, bi.sourceLine));
+                    placed.add(false);
+                } else if (bi.isJump()) {
+                    out.add(bi.withTarget(base + bi.jumpTarget));
+                    placed.add(true);
+                } else {
+                    out.add(bi);
+                    placed.add(false);
+                }
+            }
+        }
+        map[n] = out.size();
+        for (int i = 0; i < out.size(); i++) {
+            Instruction ins = out.get(i);
+            if (ins.isJump() && !placed.get(i) && ins.jumpTarget >= 0 && ins.jumpTarget <= n)
+                out.set(i, ins.withTarget(map[ins.jumpTarget]));
+        }
+        return out;
+    }
+
+    private static String temp(String function, String param) {
+        return "$" + function + "." + param;
+    }
+
+    // Names bound to an inlinable function, mapped to the index of their STORE. No jump may cross the binding, so
+    // every path to code after it runs it first.
+    private Map<String, Integer> bindings(List<Instruction> code, List<FunctionProto> functions, boolean[] isTarget,
+            boolean topLevel) {
+        Map<String, Integer> writes = new HashMap<String, Integer>();
+        countWrites(code, writes);
+        Map<String, Integer> bound = new HashMap<String, Integer>();
+        for (int i = 0; i + 1 < code.size(); i++) {
+            Instruction ins = code.get(i);
+            Instruction next = code.get(i + 1);
+            if (ins.op != OpCode.CONST_FUNC || next.op != OpCode.STORE || isTarget[i + 1])
+                continue;
+            if (writes.get(next.name) != 1 || (!topLevel && writesInFunctions.get(next.name) != 1))
+                continue;
+            if (ins.funcIndex < 0 || ins.funcIndex >= functions.size() || !inlinable(functions.get(ins.funcIndex)))
+                continue;
+            if (!crossed(code, i + 1))
+                bound.put(next.name, i + 1);
+        }
+        return bound;
+    }
+
+    private static boolean crossed(List<Instruction> code, int at) {
+        for (int i = 0; i < code.size(); i++) {
+            Instruction ins = code.get(i);
+            if (!ins.isJump())
+                continue;
+            if ((i < at && ins.jumpTarget > at) || (i > at && ins.jumpTarget <= at))
+                return true;
+        }
+        return false;
+    }
+
+    // Walks back from a CALL_VALUE through straight-line code to the instruction that pushed the callee.
+    private static int calleeLoad(List<Instruction> code, int call, boolean[] isTarget) {
+        int want = code.get(call).argCount;
+        for (int i = call - 1; i >= 0; i--) {
+            Instruction ins = code.get(i);
+            if (isTarget[i + 1] || ins.isJump() || ins.op == OpCode.RETURN)
+                return -1;
+            if (want < ins.pushes())
+                return (ins.op == OpCode.LOAD && ins.pushes() == 1) ? i : -1;
+            want = want - ins.pushes() + ins.pops();
+        }
+        return -1;
+    }
+
+    static boolean inlinable(FunctionProto fp) {
+        List<Instruction> body = fp.body.code();
+        int m = body.size();
+        if (m < 2 || m > MAX_BODY + 1 || body.get(m - 1).op != OpCode.RETURN)
+            return false;
+        if (new HashSet<String>(fp.params).size() != fp.params.size())
+            return false;
+        for (int i = 0; i < m - 1; i++) {
+            Instruction ins = body.get(i);
+            switch (ins.op) {
+                case CONST_INT:
+                case CONST_LONG:
+                case CONST_DOUBLE:
+                case CONST_BIGINT:
+                case CONST_STR:
+                case CONST_BOOL:
+                case CONST_NIL:
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case NOT:
+                case EQ:
+                case NEQ:
+                case LT:
+                case GT:
+                case LE:
+                case GE:
+                case ARRAY_GET:
+                case ARRAY_NEW:
+                case RANGE:
+                case CALL:
+                case PRINT:
+                case POP:
+                    break;
+                case LOAD:
+                    if (!fp.params.contains(ins.name))
+                        return false;
+                    break;
+                case JUMP:
+                case JUMP_IF_FALSE:
+                case JUMP_IF_TRUE:
+                    if (ins.jumpTarget < 0 || ins.jumpTarget >= m)
+                        return false;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return returnsOneValue(body);
+    }
+
+    // The spliced body must leave exactly one value where the call result would have been, on every path.
+    private static boolean returnsOneValue(List<Instruction> body) {
+        int m = body.size();
+        int[] depth = new int[m];
+        Arrays.fill(depth, -1);
+        ArrayList<Integer> work = new ArrayList<Integer>();
+        depth[0] = 0;
+        work.add(0);
+        while (!work.isEmpty()) {
+            int i = work.remove(work.size() - 1);
+            Instruction ins = body.get(i);
+            if (ins.op == OpCode.RETURN) {
+                if (depth[i] != 1)
+                    return false;
+                continue;
+            }
+            if (depth[i] < ins.pops())
+                return false;
+            int d = depth[i] - ins.pops() + ins.pushes();
+            int[] next = ins.op == OpCode.JUMP ? new int[] { ins.jumpTarget }
+                    : ins.isJump() ? new int[] { i + 1, ins.jumpTarget } : new int[] { i + 1 };
+            for (int t : next) {
+                if (depth[t] == -1) {
+                    depth[t] = d;
+                    work.add(t);
+                } else if (depth[t] != d) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -4,34 +4,97 @@ import java.util.List;
 public final class Chunk {
     private final ArrayList<Instruction> code = new ArrayList<Instruction>();
     private final ArrayList<FunctionProto> functions = new ArrayList<>();
+    private volatile Loader loader;
+    private volatile boolean verified;
+    private volatile ModuleRegistry linkedTo;
+
+    // Supplies the contents of a deferred chunk; see DogBytecodeIO.mapFromFile.
+    interface Loader {
+        Chunk load();
+    }
+
+    // A chunk whose code and functions are produced by loader on first access.
+    static Chunk deferred(Loader loader) {
+        Chunk c = new Chunk();
+        c.loader = loader;
+        return c;
+    }
+
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    private void ensureLoaded() {
+        if (loader == null)
+            return;
+        synchronized (this) {
+            Loader l = loader;
+            if (l == null)
+                return;
+            Chunk c = l.load();
+            code.addAll(c.code);
+            functions.addAll(c.functions);
+            verified = c.verified;
+            loader = null;
+        }
+    }
+
+    // Set by DogVerifier; any edit to the code clears it.
+    public boolean isVerified() {
+        return verified;
+    }
+
+    void markVerified() {
+        verified = true;
+    }
+
+    // The registry DogLinker last resolved this chunk's CALLs against; any edit to the code clears it.
+    ModuleRegistry linkedTo() {
+        return linkedTo;
+    }
+
+    void markLinked(ModuleRegistry modules) {
+        linkedTo = modules;
+    }
 
     public int add(Instruction ins) {
+        ensureLoaded();
+        verified = false;
+        linkedTo = null;
         code.add(ins);
         return code.size() - 1;
     }
 
     public void set(int index, Instruction ins) {
+        ensureLoaded();
+        verified = false;
+        linkedTo = null;
         code.set(index, ins);
     }
 
     public int size() {
+        ensureLoaded();
         return code.size();
     }
 
     public List<Instruction> code() {
+        ensureLoaded();
         return code;
     }
 
     public int addFunction(FunctionProto proto) {
+        ensureLoaded();
         functions.add(proto);
         return functions.size() - 1;
     }
 
     public FunctionProto getFunction(int index) {
+        ensureLoaded();
         return functions.get(index);
     }
 
     public List<FunctionProto> functions() {
+        ensureLoaded();
         return functions;
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,20 @@
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.io.IOException;
-import java.util.List;
+import java.io.Reader;
+import java.util.Arrays;
 
 public class Code {
 
+    private static String vmName = "stack";
+    private static boolean useCache = true;
+    private static boolean deflate = false;
+
     public static void main(String[] args) {
         DogLog.init();
         try {
+            args = takeOptions(args);
             if (args == null || args.length == 0) {
                 DogLog.info("MAIN", "Starting console (no args)");
                 new DogConsole().start();
@@ -22,6 +27,10 @@ public class Code {
                     printUsage();
                     return;
                 }
+                if (args[1].equals("--archive")) {
+                    compileArchive(args);
+                    return;
+                }
                 String src = args[1];
                 String out = (args.length >= 3) ? args[2] : defaultDogcName(src);
                 try {
@@ -40,6 +49,19 @@ public class Code {
                 return;
             }
 
+            if (a0.equals("--build")) {
+                buildProject(args.length >= 2 ? args[1] : ".");
+                return;
+            }
+            if (a0.equals("--snapshot")) {
+                if (args.length < 3) {
+                    printUsage();
+                    return;
+                }
+                snapshotDogFile(args[1], args[2]);
+                return;
+            }
+
             String filename = a0;
 
             if (filename.toLowerCase().endsWith(".dog")) {
@@ -50,7 +72,15 @@ public class Code {
                 runDogcFile(filename);
                 return;
             }
-            System.out.println("❌ Error: file must have .dog or .dogc extension");
+            if (filename.toLowerCase().endsWith(".dogar")) {
+                runDogarFile(filename, args.length >= 2 ? args[1] : "main");
+                return;
+            }
+            if (filename.toLowerCase().endsWith(".dogi")) {
+                runDogiFile(filename);
+                return;
+            }
+            System.out.println("❌ Error: file must have .dog, .dogc, .dogar or .dogi extension");
             printUsage();
             System.exit(1);
         } catch (Throwable t) {
@@ -77,16 +107,36 @@ public class Code {
         return s.equals("-c") || s.equals("--compile") || s.equals("compile");
     }
 
+    // Accepts `--vm stack|reg`, `--no-cache` and `--deflate` ahead of the file name and returns the remaining arguments.
+    private static String[] takeOptions(String[] args) {
+        int i = 0;
+        while (args != null && i < args.length) {
+            if (args[i].equals("--no-cache")) {
+                useCache = false;
+                i++;
+            } else if (args[i].equals("--deflate")) {
+                deflate = true;
+                i++;
+            } else if (args[i].equals("--vm") && i + 1 < args.length) {
+                if (DogEngine.named(args[i + 1]) == null) {
+                    System.out.println("❌ Unknown VM: " + args[i + 1] + " (expected stack or reg)");
+                    System.exit(1);
+                }
+                vmName = args[i + 1];
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i == 0 ? args : Arrays.copyOfRange(args, i, args.length);
+    }
+
+    static DogEngine newEngine() {
+        return DogEngine.named(vmName);
+    }
+
     static DogContext newContext() {
-        ModuleRegistry reg = new ModuleRegistry();
-        reg.register(new IoModule());
-        reg.register(new MathModule());
-        reg.register(new TimeModule());
-        reg.register(new StringModule());
-        reg.register(new RandomModule());
-        reg.register(new SystemModule());
-        reg.register(new JsonModule());
-        return new DogContext(reg);
+        return new DogContext(ModuleRegistry.standard());
     }
 
     private static void printUsage() {
@@ -96,6 +146,14 @@ public class Code {
         System.out.println("  java -jar dpl.jar <file.dogc>      (run compiled bytecode)");
         System.out.println("  java -jar dpl.jar -c <file.dog>    (compile to .dogc)");
         System.out.println("  java -jar dpl.jar -c <file.dog> <out.dogc>");
+        System.out.println("  java -jar dpl.jar --deflate -c <file.dog> (compressed .dogc)");
+        System.out.println("  java -jar dpl.jar -c --archive <dir> <out.dogar> (compile a directory to one archive)");
+        System.out.println("  java -jar dpl.jar <file.dogar> [entry] (run one entry, default main)");
+        System.out.println("  java -jar dpl.jar --build [dir]    (compile a project's .dog files to out/, changed ones only)");
+        System.out.println("  java -jar dpl.jar --snapshot <file.dog> <out.dogi> (run up to sys.checkpoint() and save)");
+        System.out.println("  java -jar dpl.jar <file.dogi>      (resume from a snapshot)");
+        System.out.println("  java -jar dpl.jar --vm reg <file>  (run on the register VM)");
+        System.out.println("  java -jar dpl.jar --no-cache <file.dog> (skip the __dogcache__ compile cache)");
     }
 
     private static String defaultDogcName(String src) {
@@ -118,11 +176,16 @@ public class Code {
         }
         try {
             DogLog.info("RUN", "Running .dog: " + path.toAbsolutePath().normalize());
-            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            Chunk chunk;
+            if (useCache) {
+                chunk = DogCompileCache.compile(path);
+            } else {
+                try (Reader r = DogCompileCache.sourceReader(Files.newInputStream(path))) {
+                    chunk = new BytecodeCompiler().compile(r);
+                }
+            }
             DogContext ctx = newContext();
-            DogVM vm = new DogVM();
-            BytecodeCompiler compiler = new BytecodeCompiler();
-            Chunk chunk = compiler.compile(lines);
+            DogEngine vm = newEngine();
             vm.execute(chunk, ctx);
         } catch (DogException e) {
             printDogError(e);
@@ -147,11 +210,147 @@ public class Code {
         if (!Files.exists(src)) {
             throw new IOException("Source file not found: " + srcDog);
         }
-        List<String> lines = Files.readAllLines(src, StandardCharsets.UTF_8);
         BytecodeCompiler compiler = new BytecodeCompiler();
-        Chunk chunk = compiler.compile(lines);
+        Chunk chunk;
+        try (Reader r = DogCompileCache.sourceReader(Files.newInputStream(src))) {
+            chunk = compiler.compile(r);
+        }
         Path out = Paths.get(outDogc);
-        DogBytecodeIO.writeToFile(chunk, out);
+        DogBytecodeIO.writeToFile(chunk, out, deflate);
+    }
+
+    private static void compileArchive(String[] args) {
+        if (args.length < 4) {
+            printUsage();
+            return;
+        }
+        try {
+            int count = DogArchive.buildFromDirectory(Paths.get(args[2]), Paths.get(args[3]));
+            System.out.println("Archived OK: " + args[3] + " (" + count + " entries)");
+            DogLog.info("COMPILE", "Archived: " + args[2] + " -> " + args[3] + " (" + count + " entries)");
+        } catch (DogException e) {
+            printDogError(e);
+            DogLog.error("DOG", e.formatForLog());
+            System.exit(2);
+        } catch (IOException e) {
+            System.out.println("❌ IO error: " + e.getMessage());
+            DogLog.error("IO", "Archive IO error: " + e.getMessage(), e);
+            System.exit(3);
+        }
+    }
+
+    private static void buildProject(String dir) {
+        try {
+            DogBuild.Result r = DogBuild.build(Paths.get(dir));
+            for (String f : r.failures)
+                System.out.println("❌ " + f);
+            System.out.println(r.summary());
+            DogLog.info("BUILD", dir + ": " + r.summary());
+            if (!r.failures.isEmpty())
+                System.exit(2);
+        } catch (IOException e) {
+            System.out.println("❌ IO error: " + e.getMessage());
+            DogLog.error("IO", "Build IO error: " + e.getMessage(), e);
+            System.exit(3);
+        }
+    }
+
+    // Snapshots always run on the stack VM, since they resume at an index in the chunk's own code.
+    static void snapshotDogFile(String dogFile, String outDogi) {
+        Path path = Paths.get(dogFile);
+        if (!Files.exists(path)) {
+            System.out.println("❌ Error: file not found: " + dogFile);
+            DogLog.error("IO", "File not found: " + dogFile);
+            System.exit(4);
+            return;
+        }
+        try {
+            DogLog.info("RUN", "Snapshotting .dog: " + path.toAbsolutePath().normalize());
+            Chunk chunk;
+            if (useCache) {
+                chunk = DogCompileCache.compile(path);
+            } else {
+                try (Reader r = DogCompileCache.sourceReader(Files.newInputStream(path))) {
+                    chunk = new BytecodeCompiler().compile(r);
+                }
+            }
+            if (!DogSnapshot.capture(chunk, Paths.get(outDogi))) {
+                System.out.println("❌ Error: program finished without reaching sys.checkpoint()");
+                System.exit(1);
+                return;
+            }
+            System.out.println("Snapshot OK: " + outDogi);
+            DogLog.info("SNAPSHOT", "Saved: " + dogFile + " -> " + outDogi);
+        } catch (DogException e) {
+            printDogError(e);
+            DogLog.error("DOG", e.formatForLog());
+            System.exit(2);
+        } catch (IOException e) {
+            System.out.println("❌ IO error: " + e.getMessage());
+            DogLog.error("IO", "Snapshot IO error: " + e.getMessage(), e);
+            System.exit(3);
+        } catch (RuntimeException e) {
+            System.out.println("❌ Runtime error: " + e.getMessage());
+            DogLog.error("RUNTIME", "Runtime error while snapshotting .dog: " + e.getMessage(), e);
+            System.exit(5);
+        }
+    }
+
+    static void runDogiFile(String dogiFile) {
+        Path path = Paths.get(dogiFile);
+        if (!Files.exists(path)) {
+            System.out.println("❌ Error: file not found: " + dogiFile);
+            DogLog.error("IO", "File not found: " + dogiFile);
+            System.exit(4);
+            return;
+        }
+
+        try {
+            DogLog.info("RUN", "Resuming .dogi: " + path.toAbsolutePath().normalize());
+            DogSnapshot.load(path).resume(newContext());
+        } catch (DogException e) {
+            printDogError(e);
+            DogLog.error("DOG", e.formatForLog());
+            System.exit(2);
+        } catch (IOException e) {
+            System.out.println("❌ Error reading .dogi: " + e.getMessage());
+            DogLog.error("IO", "Read .dogi error: " + e.getMessage(), e);
+            System.exit(3);
+        } catch (RuntimeException e) {
+            System.out.println("❌ Runtime error: " + e.getMessage());
+            DogLog.error("RUNTIME", "Runtime error while running .dogi: " + e.getMessage(), e);
+            System.exit(5);
+        }
+    }
+
+    static void runDogarFile(String dogarFile, String entry) {
+        Path path = Paths.get(dogarFile);
+        if (!Files.exists(path)) {
+            System.out.println("❌ Error: file not found: " + dogarFile);
+            DogLog.error("IO", "File not found: " + dogarFile);
+            System.exit(4);
+            return;
+        }
+
+        try {
+            DogLog.info("RUN", "Running .dogar: " + path.toAbsolutePath().normalize() + " entry " + entry);
+            Chunk chunk = DogArchive.open(path).load(entry);
+            DogContext ctx = newContext();
+            DogEngine vm = newEngine();
+            vm.execute(chunk, ctx);
+        } catch (DogException e) {
+            printDogError(e);
+            DogLog.error("DOG", e.formatForLog());
+            System.exit(2);
+        } catch (IOException e) {
+            System.out.println("❌ Error reading .dogar: " + e.getMessage());
+            DogLog.error("IO", "Read .dogar error: " + e.getMessage(), e);
+            System.exit(3);
+        } catch (RuntimeException e) {
+            System.out.println("❌ Runtime error: " + e.getMessage());
+            DogLog.error("RUNTIME", "Runtime error while running .dogar: " + e.getMessage(), e);
+            System.exit(5);
+        }
     }
 
     static void runDogcFile(String dogcFile) {
@@ -165,9 +364,9 @@ public class Code {
 
         try {
             DogLog.info("RUN", "Running .dogc: " + path.toAbsolutePath().normalize());
-            Chunk chunk = DogBytecodeIO.readFromFile(path);
+            Chunk chunk = DogBytecodeIO.mapFromFile(path);
             DogContext ctx = newContext();
-            DogVM vm = new DogVM();
+            DogEngine vm = newEngine();
             vm.execute(chunk, ctx);
         } catch (DogException e) {
             printDogError(e);
@@ -0,0 +1,193 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// .dogar: several compiled chunks in one file.
+//   "DOGA", int version, long directoryOffset, the entries (each a complete DOGC image), then the directory:
+//   int count, and per entry its name, long offset, int length and the SHA-256 of its bytes.
+// open() maps the file once and reads only the directory; load() decodes one entry in place after checking its hash.
+public final class DogArchive {
+    private static final byte[] MAGIC = new byte[] { 'D', 'O', 'G', 'A' };
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int HASH_LENGTH = 32;
+
+    private static final class Entry {
+        final int offset;
+        final int length;
+        final byte[] hash;
+
+        Entry(int offset, int length, byte[] hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private final ByteBuffer buf;
+    private final Map<String, Entry> entries;
+
+    private DogArchive(ByteBuffer buf, Map<String, Entry> entries) {
+        this.buf = buf;
+        this.entries = entries;
+    }
+
+    public static DogArchive open(Path file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file is null");
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE)
+                throw new IOException("Archive too large: " + file);
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.limit() < HEADER)
+            throw new IOException("Not a DOGAR file (too short)");
+        byte[] mg = new byte[4];
+        buf.duplicate().get(mg);
+        if (!Arrays.equals(mg, MAGIC))
+            throw new IOException("Not a DOGAR file (bad magic)");
+        int ver = buf.getInt(4);
+        if (ver != VERSION)
+            throw new IOException("Unsupported DOGAR version: " + ver + " (expected " + VERSION + ")");
+        long dir = buf.getLong(8);
+        if (dir < HEADER || dir > buf.limit())
+            throw new IOException("Corrupt DOGAR: bad directory offset");
+
+        ByteBuffer in = buf.duplicate();
+        in.position((int) dir);
+        try {
+            int count = in.getInt();
+            if (count < 0)
+                throw new IOException("Corrupt DOGAR: negative entry count");
+            Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[in.getShort() & 0xFFFF];
+                in.get(name);
+                long offset = in.getLong();
+                int length = in.getInt();
+                byte[] hash = new byte[HASH_LENGTH];
+                in.get(hash);
+                if (offset < HEADER || length < 0 || offset + length > dir)
+                    throw new IOException("Corrupt DOGAR: entry out of range");
+                entries.put(new String(name, StandardCharsets.UTF_8), new Entry((int) offset, length, hash));
+            }
+            return new DogArchive(buf, entries);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("Corrupt DOGAR: truncated directory");
+        }
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public Chunk load(String name) throws IOException {
+        Entry e = entries.get(name);
+        if (e == null)
+            throw new IOException("No entry '" + name + "' in archive");
+        ByteBuffer view = buf.duplicate();
+        view.position(e.offset);
+        view.limit(e.offset + e.length);
+        ByteBuffer image = view.slice();
+        if (!Arrays.equals(sha256(image.duplicate()), e.hash))
+            throw new IOException("Corrupt DOGAR: hash mismatch for '" + name + "'");
+        return DogBytecodeIO.readFromBuffer(image);
+    }
+
+    // Compiles every .dog file under dir into one archive; entries are named by their path relative to dir, with
+    // '/' separators and without the extension.
+    public static int buildFromDirectory(Path dir, Path out) throws IOException {
+        Map<String, Chunk> chunks = new TreeMap<String, Chunk>();
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            sources = walk.filter(p -> Files.isRegularFile(p) && p.toString().toLowerCase().endsWith(".dog"))
+                    .collect(Collectors.toList());
+        }
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        for (Path src : sources) {
+            String rel = dir.relativize(src).toString().replace('\\', '/');
+            String name = rel.substring(0, rel.length() - ".dog".length());
+            try {
+                try (Reader r = DogCompileCache.sourceReader(Files.newInputStream(src))) {
+                    chunks.put(name, compiler.compile(r));
+                }
+            } catch (DogException e) {
+                throw DogException.at(e.line, e.column, e.sourceLine, rel + ": " + e.getMessage());
+            }
+        }
+        write(chunks, out);
+        return chunks.size();
+    }
+
+    public static void write(Map<String, Chunk> chunks, Path out) throws IOException {
+        List<String> names = new ArrayList<String>(chunks.keySet());
+        List<byte[]> images = new ArrayList<byte[]>(names.size());
+        for (String name : names) {
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            DogBytecodeIO.writeToStream(chunks.get(name), image);
+            images.add(image.toByteArray());
+        }
+        long imagesLength = 0;
+        for (byte[] image : images)
+            imagesLength += image.length;
+        long dirOffset = HEADER + imagesLength;
+
+        DogBytecodeIO.writeAtomically(out, os -> {
+            DataOutputStream data = new DataOutputStream(os);
+            data.write(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(dirOffset);
+            for (byte[] image : images)
+                data.write(image);
+            data.writeInt(names.size());
+            long offset = HEADER;
+            for (int i = 0; i < names.size(); i++) {
+                byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+                if (name.length > 0xFFFF)
+                    throw new IOException("Entry name too long: " + names.get(i));
+                data.writeShort(name.length);
+                data.write(name);
+                data.writeLong(offset);
+                data.writeInt(images.get(i).length);
+                data.write(sha256(ByteBuffer.wrap(images.get(i))));
+                offset += images.get(i).length;
+            }
+            data.flush();
+        });
+    }
+
+    private static byte[] sha256(ByteBuffer bytes) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(bytes);
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Incremental project build: every .dog file under a project compiles to out/<path>.dogc on a ForkJoinPool.
+// out/.dpl_build lists the DogCompileCache key of each source at its last successful compile; a source whose key
+// still matches and whose output exists is skipped, and outputs of deleted sources are removed.
+public final class DogBuild {
+
+    static final String OUT_DIR = "out";
+    static final String MANIFEST = ".dpl_build";
+
+    public static final class Result {
+        public final int compiled;
+        public final int upToDate;
+        public final int removed;
+        public final List<String> failures;
+        public final long nanos;
+
+        Result(int compiled, int upToDate, int removed, List<String> failures, long nanos) {
+            this.compiled = compiled;
+            this.upToDate = upToDate;
+            this.removed = removed;
+            this.failures = failures;
+            this.nanos = nanos;
+        }
+
+        public String summary() {
+            return "Build: " + compiled + " compiled, " + upToDate + " up to date, " + removed + " removed, "
+                    + failures.size() + " failed (" + (nanos / 1_000_000) + " ms)";
+        }
+    }
+
+    // One source file's outcome: its new manifest key, or the compile error.
+    private static final class Unit {
+        final String name;
+        final String key;
+        final boolean compiled;
+        final String failure;
+
+        Unit(String name, String key, boolean compiled, String failure) {
+            this.name = name;
+            this.key = key;
+            this.compiled = compiled;
+            this.failure = failure;
+        }
+    }
+
+    private DogBuild() {
+    }
+
+    public static Result build(Path projectDir) throws IOException {
+        long t0 = System.nanoTime();
+        Path root = projectDir.toAbsolutePath().normalize();
+        if (!Files.isDirectory(root))
+            throw new IOException("Not a directory: " + projectDir);
+        Path outDir = root.resolve(OUT_DIR);
+        Path manifestFile = outDir.resolve(MANIFEST);
+        Map<String, String> manifest = readManifest(manifestFile);
+
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(root)) {
+            sources = walk.filter(p -> isSource(root, p)).sorted().collect(Collectors.toList());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        List<ForkJoinTask<Unit>> tasks = new ArrayList<ForkJoinTask<Unit>>(sources.size());
+        try {
+            for (Path src : sources) {
+                String name = root.relativize(src).toString().replace('\\', '/');
+                String known = manifest.get(name);
+                tasks.add(pool.submit(() -> compileOne(src, name, outDir.resolve(outputName(name)), known)));
+            }
+            Map<String, String> next = new TreeMap<String, String>();
+            List<String> failures = new ArrayList<String>();
+            int compiled = 0;
+            for (ForkJoinTask<Unit> task : tasks) {
+                Unit u = join(task);
+                if (u.failure != null) {
+                    failures.add(u.failure);
+                    continue;
+                }
+                next.put(u.name, u.key);
+                if (u.compiled)
+                    compiled++;
+            }
+
+            int removed = 0;
+            for (String name : manifest.keySet()) {
+                if (!Files.exists(root.resolve(name)) && Files.deleteIfExists(outDir.resolve(outputName(name))))
+                    removed++;
+            }
+            if (!next.equals(manifest) || !Files.exists(manifestFile))
+                writeManifest(manifestFile, next);
+            int upToDate = sources.size() - compiled - failures.size();
+            return new Result(compiled, upToDate, removed, Collections.unmodifiableList(failures),
+                    System.nanoTime() - t0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Unit compileOne(Path src, String name, Path out, String known) throws IOException {
+        byte[] bytes = Files.readAllBytes(src);
+        String key = hex(DogCompileCache.key(bytes));
+        if (key.equals(known) && Files.isRegularFile(out))
+            return new Unit(name, key, false, null);
+        try {
+            Chunk chunk = new BytecodeCompiler().compile(
+                    DogCompileCache.sourceReader(new ByteArrayInputStream(bytes)));
+            Files.createDirectories(out.getParent());
+            DogBytecodeIO.writeToFile(chunk, out);
+            DogLog.debug("BUILD", "Compiled " + name);
+            return new Unit(name, key, true, null);
+        } catch (DogException e) {
+            return new Unit(name, null, false, name + ":" + e.line + ":" + e.column + ": " + e.getMessage());
+        }
+    }
+
+    private static Unit join(ForkJoinTask<Unit> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Build interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Sources are .dog files outside out/, hidden directories and __dogcache__.
+    private static boolean isSource(Path root, Path p) {
+        if (!Files.isRegularFile(p) || !p.getFileName().toString().toLowerCase().endsWith(".dog"))
+            return false;
+        Path rel = root.relativize(p);
+        for (int i = 0; i < rel.getNameCount() - 1; i++) {
+            String dir = rel.getName(i).toString();
+            if ((i == 0 && dir.equals(OUT_DIR)) || dir.startsWith(".") || dir.equals(DogCompileCache.DIR_NAME))
+                return false;
+        }
+        return true;
+    }
+
+    private static String outputName(String name) {
+        return name.substring(0, name.length() - ".dog".length()) + ".dogc";
+    }
+
+    // One "<key> <relative path>" line per source; an unreadable manifest just means a full rebuild.
+    private static Map<String, String> readManifest(Path file) {
+        Map<String, String> m = new TreeMap<String, String>();
+        if (!Files.isRegularFile(file))
+            return m;
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int sp = line.indexOf(' ');
+                if (sp > 0)
+                    m.put(line.substring(sp + 1), line.substring(0, sp));
+            }
+        } catch (IOException e) {
+            DogLog.warn("BUILD", "Ignoring unreadable manifest " + file + ": " + e.getMessage());
+            m.clear();
+        }
+        return m;
+    }
+
+    private static void writeManifest(Path file, Map<String, String> entries) throws IOException {
+        List<String> lines = new ArrayList<String>(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet())
+            lines.add(e.getValue() + " " + e.getKey());
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b)
+            sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+        return sb.toString();
+    }
+}
@@ -1,29 +1,87 @@
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+// DOGC files: MAGIC, a 4-byte version, then the chunk tree.
+//   v3: fixed-width ints, every string written in full.
+//   v4: a flags byte, then (deflated when FLAG_DEFLATE is set) a string table followed by the chunk tree with varint
+//       operands, string-table references (0 = null) and per-instruction line deltas. An instruction's source line
+//       is only written when it differs from the previous instruction's. With FLAG_INDEXED, a chunk lists every
+//       function's params and encoded body length before the bodies themselves, so a reader can skip to any body.
+// Readers accept both; writers produce v4.
 public final class DogBytecodeIO {
     private static final byte[] MAGIC = new byte[] { 'D', 'O', 'G', 'C' };
-    private static final int VERSION = 3;
+    private static final int VERSION = 4;
+    private static final int VERSION_V3 = 3;
+    static final int FLAG_DEFLATE = 1;
+    static final int FLAG_INDEXED = 2;
 
     private DogBytecodeIO() {
     }
 
     public static void writeToFile(Chunk chunk, Path file) throws IOException {
+        writeToFile(chunk, file, false);
+    }
+
+    public static void writeToFile(Chunk chunk, Path file, boolean deflate) throws IOException {
         if (chunk == null)
             throw new IllegalArgumentException("chunk is null");
         if (file == null)
             throw new IllegalArgumentException("file is null");
-        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
-            writeToStream(chunk, os);
+        writeAtomically(file, os -> writeToStream(chunk, os, deflate));
+    }
+
+    interface FileBody {
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    // .dogc and .dogar files are written to a sibling temp file that is then renamed over the target, never
+    // rewritten in place: a running program may still have the old file mapped (mapFromFile, DogArchive.open) with
+    // function bodies left to decode, and truncating it under them faults those reads.
+    static void writeAtomically(Path file, FileBody body) throws IOException {
+        Path target = file.toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE))) {
+                body.writeTo(os);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
         }
     }
 
@@ -36,18 +94,41 @@ public final class DogBytecodeIO {
     }
 
     public static void writeToStream(Chunk chunk, OutputStream os) throws IOException {
+        writeToStream(chunk, os, false);
+    }
+
+    public static void writeToStream(Chunk chunk, OutputStream os, boolean deflate) throws IOException {
         if (chunk == null)
             throw new IllegalArgumentException("chunk is null");
         if (os == null)
             throw new IllegalArgumentException("os is null");
-        DataOutputStream out = new DataOutputStream(os);
-        out.write(MAGIC);
-        out.writeInt(VERSION);
-        writeChunk(out, chunk);
+        DataOutputStream head = new DataOutputStream(os);
+        head.write(MAGIC);
+        head.writeInt(VERSION);
+        head.writeByte(FLAG_INDEXED | (deflate ? FLAG_DEFLATE : 0));
+        head.flush();
+
+        DeflaterOutputStream zip = deflate ? new DeflaterOutputStream(os, new Deflater(Deflater.BEST_COMPRESSION)) : null;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(zip != null ? zip : os));
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        collectStrings(chunk, strings);
+        writeVarint(out, strings.size());
+        for (String str : strings.keySet())
+            writeUtfV4(out, str);
+        writeChunkV4(out, chunk, strings);
         out.flush();
+        if (zip != null)
+            zip.finish();
+        os.flush();
     }
 
     public static Chunk readFromStream(InputStream is) throws IOException {
+        Chunk chunk = decode(is);
+        DogVerifier.verifyAll(chunk);
+        return chunk;
+    }
+
+    private static Chunk decode(InputStream is) throws IOException {
         if (is == null)
             throw new IllegalArgumentException("is is null");
         DataInputStream in = new DataInputStream(is);
@@ -61,10 +142,356 @@ public final class DogBytecodeIO {
             throw new IOException("Not a DOGC file (bad magic)");
         }
         int ver = in.readInt();
+        if (ver == VERSION_V3)
+            return readChunk(in, new HashMap<String, String>());
         if (ver != VERSION) {
-            throw new IOException("Unsupported DOGC version: " + ver + " (expected " + VERSION + ")");
+            throw new IOException("Unsupported DOGC version: " + ver + " (expected " + VERSION_V3 + " or " + VERSION
+                    + ")");
+        }
+        int flags = readFlags(in);
+        if ((flags & FLAG_DEFLATE) != 0)
+            in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(is)));
+        return readChunkV4(in, readStrings(in), (flags & FLAG_INDEXED) != 0);
+    }
+
+    // Maps the file and decodes only the top-level chunk; each function body decodes on first use. Files without
+    // the body index (v3, or deflated v4) are read eagerly instead.
+    public static Chunk mapFromFile(Path file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file is null");
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        return readFromBuffer(buf);
+    }
+
+    // Like mapFromFile for a DOGC image that is already in memory, such as one entry of a mapped archive. buf's
+    // position 0 is the start of the image.
+    public static Chunk readFromBuffer(ByteBuffer buf) throws IOException {
+        if (buf.limit() < 9 || buf.getInt(4) != VERSION)
+            return readFromStream(new BufferInput(buf, 0));
+        byte[] mg = new byte[4];
+        buf.duplicate().get(mg, 0, 4);
+        if (!eq4(mg, MAGIC))
+            throw new IOException("Not a DOGC file (bad magic)");
+        BufferInput src = new BufferInput(buf, 8);
+        DataInputStream in = new DataInputStream(src);
+        int flags = readFlags(in);
+        if ((flags & FLAG_DEFLATE) != 0 || (flags & FLAG_INDEXED) == 0)
+            return readFromStream(new BufferInput(buf, 0));
+        String[] strings = readStrings(in);
+        Chunk chunk = readChunkLazy(buf, src.position(), strings);
+        DogVerifier.verify(chunk);
+        return chunk;
+    }
+
+    private static int readFlags(DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & ~(FLAG_DEFLATE | FLAG_INDEXED)) != 0)
+            throw new IOException("Unsupported DOGC flags: " + flags);
+        return flags;
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int sCount = readVarint(in);
+        if (sCount < 0)
+            throw new IOException("Corrupt DOGC: negative stringCount");
+        String[] strings = new String[sCount];
+        for (int i = 0; i < sCount; i++)
+            strings[i] = readUtfV4(in);
+        return strings;
+    }
+
+    private static void collectStrings(Chunk chunk, Map<String, Integer> strings) {
+        for (FunctionProto fp : chunk.functions()) {
+            for (String p : fp.params)
+                intern(strings, p);
+            collectStrings(fp.body, strings);
+        }
+        for (Instruction ins : chunk.code()) {
+            intern(strings, ins.text);
+            intern(strings, ins.name);
+            intern(strings, ins.module);
+            intern(strings, ins.member);
+            intern(strings, ins.sourceLine);
+        }
+    }
+
+    private static void intern(Map<String, Integer> strings, String s) {
+        if (s != null && !strings.containsKey(s))
+            strings.put(s, strings.size());
+    }
+
+    private static void writeRef(DataOutputStream out, Map<String, Integer> strings, String s) throws IOException {
+        writeVarint(out, s == null ? 0 : strings.get(s) + 1);
+    }
+
+    private static String readRef(DataInputStream in, String[] strings) throws IOException {
+        int ref = readVarint(in);
+        if (ref == 0)
+            return null;
+        if (ref < 0 || ref > strings.length)
+            throw new IOException("Corrupt DOGC: bad string reference: " + ref);
+        return strings[ref - 1];
+    }
+
+    private static void writeChunkV4(DataOutputStream out, Chunk chunk, Map<String, Integer> strings)
+            throws IOException {
+        List<FunctionProto> functions = chunk.functions();
+        byte[][] bodies = new byte[functions.size()][];
+        for (int i = 0; i < bodies.length; i++) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(buf);
+            writeChunkV4(body, functions.get(i).body, strings);
+            body.flush();
+            bodies[i] = buf.toByteArray();
+        }
+        writeVarint(out, functions.size());
+        for (int i = 0; i < bodies.length; i++) {
+            FunctionProto fp = functions.get(i);
+            writeVarint(out, fp.params.size());
+            for (String p : fp.params)
+                writeRef(out, strings, p);
+            writeVarint(out, bodies[i].length);
+        }
+        for (byte[] body : bodies)
+            out.write(body);
+
+        List<Instruction> code = chunk.code();
+        writeVarint(out, code.size());
+        int line = 0;
+        String src = null;
+        for (Instruction ins : code) {
+            writeVarint(out, ins.op.ordinal());
+            writePayloadV4(out, ins, strings);
+            boolean srcChanged = ins.sourceLine == null ? src != null : !ins.sourceLine.equals(src);
+            writeVarint(out, (zigzag(ins.line - line) << 1) | (srcChanged ? 1 : 0));
+            writeVarint(out, zigzag(ins.col));
+            if (srcChanged)
+                writeRef(out, strings, ins.sourceLine);
+            line = ins.line;
+            src = ins.sourceLine;
+        }
+    }
+
+    private static Chunk readChunkV4(DataInputStream in, String[] strings, boolean indexed) throws IOException {
+        Chunk chunk = new Chunk();
+        int fCount = readVarint(in);
+        if (fCount < 0)
+            throw new IOException("Corrupt DOGC: negative functionsCount");
+        if (indexed) {
+            List<ArrayList<String>> params = new ArrayList<ArrayList<String>>(fCount);
+            for (int i = 0; i < fCount; i++) {
+                params.add(readParams(in, strings));
+                readLength(in);
+            }
+            for (int i = 0; i < fCount; i++)
+                chunk.addFunction(new FunctionProto(params.get(i), readChunkV4(in, strings, true)));
+        } else {
+            for (int i = 0; i < fCount; i++) {
+                ArrayList<String> params = readParams(in, strings);
+                chunk.addFunction(new FunctionProto(params, readChunkV4(in, strings, false)));
+            }
+        }
+        readCodeV4(in, strings, chunk);
+        return chunk;
+    }
+
+    // Decodes the function table and code of the chunk at pos; function bodies are only located, and decode when
+    // they are first used.
+    private static Chunk readChunkLazy(ByteBuffer file, int pos, String[] strings) throws IOException {
+        BufferInput src = new BufferInput(file, pos);
+        DataInputStream in = new DataInputStream(src);
+        Chunk chunk = new Chunk();
+        int fCount = readVarint(in);
+        if (fCount < 0)
+            throw new IOException("Corrupt DOGC: negative functionsCount");
+        List<ArrayList<String>> params = new ArrayList<ArrayList<String>>(fCount);
+        int[] lengths = new int[fCount];
+        for (int i = 0; i < fCount; i++) {
+            params.add(readParams(in, strings));
+            lengths[i] = readLength(in);
+        }
+        int offset = src.position();
+        for (int i = 0; i < fCount; i++) {
+            final int at = offset;
+            chunk.addFunction(new FunctionProto(params.get(i), Chunk.deferred(() -> {
+                try {
+                    Chunk body = readChunkLazy(file, at, strings);
+                    DogVerifier.verify(body);
+                    return body;
+                } catch (IOException e) {
+                    throw DogException.at(0, 0, "", "Cannot load a function body: " + e.getMessage());
+                } catch (InternalError e) {
+                    // How the JVM reports a read from a mapping whose file shrank underneath it.
+                    throw DogException.at(0, 0, "",
+                            "Cannot load a function body: the compiled file changed or became unreadable while in use");
+                }
+            })));
+            offset += lengths[i];
+            if (offset > file.limit() || offset < 0)
+                throw new IOException("Corrupt DOGC: function body out of range");
+        }
+        src.seek(offset);
+        readCodeV4(in, strings, chunk);
+        return chunk;
+    }
+
+    private static ArrayList<String> readParams(DataInputStream in, String[] strings) throws IOException {
+        int pCount = readVarint(in);
+        if (pCount < 0)
+            throw new IOException("Corrupt DOGC: negative paramsCount");
+        ArrayList<String> params = new ArrayList<String>(pCount);
+        for (int p = 0; p < pCount; p++)
+            params.add(readRef(in, strings));
+        return params;
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int n = readVarint(in);
+        if (n < 0)
+            throw new IOException("Corrupt DOGC: negative body length");
+        return n;
+    }
+
+    private static void readCodeV4(DataInputStream in, String[] strings, Chunk chunk) throws IOException {
+        int cCount = readVarint(in);
+        if (cCount < 0)
+            throw new IOException("Corrupt DOGC: negative codeCount");
+        int line = 0;
+        String src = null;
+        for (int i = 0; i < cCount; i++) {
+            OpCode op = opcodeByOrdinal(readVarint(in));
+            Payload payload = readPayloadV4(in, op, strings);
+            int pos = readVarint(in);
+            line += unzigzag(pos >>> 1);
+            int col = unzigzag(readVarint(in));
+            if ((pos & 1) != 0)
+                src = readRef(in, strings);
+            chunk.add(buildInstruction(op, payload, line, col, src));
+        }
+    }
+
+    private static void writePayloadV4(DataOutputStream out, Instruction ins, Map<String, Integer> strings)
+            throws IOException {
+        switch (ins.op) {
+            case CONST_INT:
+                writeVarint(out, zigzag(ins.intVal != null ? ins.intVal : 0));
+                break;
+            case CONST_LONG:
+                writeVarlong(out, zigzag(ins.longVal != null ? ins.longVal : 0L));
+                break;
+            case CONST_DOUBLE:
+                out.writeDouble(ins.doubleVal != null ? ins.doubleVal : 0.0);
+                break;
+            case CONST_BIGINT:
+            case CONST_STR:
+                writeRef(out, strings, ins.text);
+                break;
+            case CONST_BOOL:
+                out.writeBoolean(ins.boolVal != null && ins.boolVal);
+                break;
+            case CONST_FUNC:
+                writeVarint(out, ins.funcIndex);
+                break;
+            case CALL_VALUE:
+            case ARRAY_NEW:
+            case RANGE:
+                writeVarint(out, ins.argCount);
+                break;
+            case LOAD:
+            case STORE:
+            case STORE_KEEP:
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+                writeRef(out, strings, ins.name);
+                break;
+            case IMPORT:
+                writeRef(out, strings, ins.module);
+                break;
+            case CALL:
+                writeRef(out, strings, ins.module);
+                writeRef(out, strings, ins.member);
+                writeVarint(out, ins.argCount);
+                out.writeBoolean(ins.isConst);
+                break;
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+                writeVarint(out, ins.jumpTarget);
+                break;
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                writeRef(out, strings, ins.name);
+                writeVarint(out, ins.jumpTarget);
+                break;
+            case INC_VAR:
+                writeRef(out, strings, ins.name);
+                writeVarint(out, zigzag(ins.intVal != null ? ins.intVal : 0));
+                break;
+            default:
+                break;
         }
-        return readChunk(in);
+    }
+
+    private static Payload readPayloadV4(DataInputStream in, OpCode op, String[] strings) throws IOException {
+        Payload p = new Payload();
+        switch (op) {
+            case CONST_INT:
+                p.i = unzigzag(readVarint(in));
+                break;
+            case CONST_LONG:
+                p.l = unzigzag(readVarlong(in));
+                break;
+            case CONST_DOUBLE:
+                p.d = in.readDouble();
+                break;
+            case CONST_BIGINT:
+            case CONST_STR:
+                p.s1 = readRef(in, strings);
+                break;
+            case CONST_BOOL:
+                p.b = in.readBoolean();
+                break;
+            case CONST_FUNC:
+            case CALL_VALUE:
+            case ARRAY_NEW:
+            case RANGE:
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+                p.i = readVarint(in);
+                break;
+            case LOAD:
+            case STORE:
+            case STORE_KEEP:
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+            case IMPORT:
+                p.s1 = readRef(in, strings);
+                break;
+            case CALL:
+                p.s1 = readRef(in, strings);
+                p.s2 = readRef(in, strings);
+                p.i = readVarint(in);
+                p.b = in.readBoolean();
+                break;
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                p.s1 = readRef(in, strings);
+                p.i = readVarint(in);
+                break;
+            case INC_VAR:
+                p.s1 = readRef(in, strings);
+                p.i = unzigzag(readVarint(in));
+                break;
+            default:
+                break;
+        }
+        return p;
     }
 
     private static void writeChunk(DataOutputStream out, Chunk chunk) throws IOException {
@@ -96,7 +523,9 @@ public final class DogBytecodeIO {
         }
     }
 
-    private static Chunk readChunk(DataInputStream in) throws IOException {
+    // lines is the file's line table: each distinct source line is kept once and shared by every instruction on it,
+    // as the v4 string table does.
+    private static Chunk readChunk(DataInputStream in, Map<String, String> lines) throws IOException {
         Chunk chunk = new Chunk();
         int fCount = in.readInt();
         if (fCount < 0)
@@ -105,11 +534,11 @@ public final class DogBytecodeIO {
             int pCount = in.readInt();
             if (pCount < 0)
                 throw new IOException("Corrupt DOGC: negative paramsCount");
-            java.util.ArrayList<String> params = new java.util.ArrayList<>();
+            ArrayList<String> params = new ArrayList<>();
             for (int p = 0; p < pCount; p++) {
                 params.add(readUtf(in));
             }
-            Chunk body = readChunk(in);
+            Chunk body = readChunk(in, lines);
             chunk.addFunction(new FunctionProto(params, body));
         }
 
@@ -123,7 +552,7 @@ public final class DogBytecodeIO {
             int line = in.readInt();
             int col = in.readInt();
             boolean hasSrc = in.readBoolean();
-            String srcLine = hasSrc ? readUtf(in) : null;
+            String srcLine = hasSrc ? shared(lines, readUtf(in)) : null;
             Instruction ins = buildInstruction(op, payload, line, col, srcLine);
             chunk.add(ins);
         }
@@ -168,6 +597,7 @@ public final class DogBytecodeIO {
                 break;
             case LOAD:
             case STORE:
+            case STORE_KEEP:
                 writeUtf(out, ins.name != null ? ins.name : "");
                 break;
             case IMPORT:
@@ -181,8 +611,26 @@ public final class DogBytecodeIO {
                 break;
             case JUMP:
             case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
                 out.writeInt(ins.jumpTarget);
                 break;
+            case RANGE:
+                out.writeInt(ins.argCount);
+                break;
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                writeUtf(out, ins.name != null ? ins.name : "");
+                out.writeInt(ins.jumpTarget);
+                break;
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+                writeUtf(out, ins.name != null ? ins.name : "");
+                break;
+            case INC_VAR:
+                writeUtf(out, ins.name != null ? ins.name : "");
+                out.writeInt(ins.intVal != null ? ins.intVal : 0);
+                break;
             default:
                 break;
         }
@@ -227,6 +675,7 @@ public final class DogBytecodeIO {
                 break;
             case LOAD:
             case STORE:
+            case STORE_KEEP:
                 p.s1 = readUtf(in);
                 break;
             case IMPORT:
@@ -240,6 +689,24 @@ public final class DogBytecodeIO {
                 break;
             case JUMP:
             case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+                p.i = in.readInt();
+                break;
+            case RANGE:
+                p.i = in.readInt();
+                break;
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                p.s1 = readUtf(in);
+                p.i = in.readInt();
+                break;
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+                p.s1 = readUtf(in);
+                break;
+            case INC_VAR:
+                p.s1 = readUtf(in);
                 p.i = in.readInt();
                 break;
             default:
@@ -280,6 +747,8 @@ public final class DogBytecodeIO {
                 return Instruction.load(p.s1, line, col, srcLine);
             case STORE:
                 return Instruction.store(p.s1, line, col, srcLine);
+            case STORE_KEEP:
+                return Instruction.storeKeep(p.s1, line, col, srcLine);
             case IMPORT:
                 return Instruction.importMod(p.s1, line, col, srcLine);
             case CALL:
@@ -288,6 +757,19 @@ public final class DogBytecodeIO {
                 return Instruction.jump(p.i, line, col, srcLine);
             case JUMP_IF_FALSE:
                 return Instruction.jumpIfFalse(p.i, line, col, srcLine);
+            case JUMP_IF_TRUE:
+                return Instruction.jumpIfTrue(p.i, line, col, srcLine);
+            case RANGE:
+                return Instruction.range(p.i, line, col, srcLine);
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                return Instruction.iterNext(op, p.s1, p.i, line, col, srcLine);
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+                return Instruction.updateVar(op, p.s1, line, col, srcLine);
+            case INC_VAR:
+                return Instruction.incVar(p.s1, p.i, line, col, srcLine);
             default:
                 return Instruction.simple(op, line, col, srcLine);
         }
@@ -301,6 +783,20 @@ public final class DogBytecodeIO {
         return all[ord];
     }
 
+    private static boolean hasMagic(Path file) throws IOException {
+        byte[] mg = new byte[4];
+        try (InputStream is = Files.newInputStream(file)) {
+            int n = 0;
+            while (n < 4) {
+                int r = is.read(mg, n, 4 - n);
+                if (r < 0)
+                    return false;
+                n += r;
+            }
+        }
+        return eq4(mg, MAGIC);
+    }
+
     private static boolean eq4(byte[] a, byte[] b) {
         if (a == b)
             return true;
@@ -311,6 +807,11 @@ public final class DogBytecodeIO {
         return a[0] == b[0] && a[1] == b[1] && a[2] == b[2] && a[3] == b[3];
     }
 
+    private static String shared(Map<String, String> lines, String s) {
+        String seen = lines.putIfAbsent(s, s);
+        return seen != null ? seen : s;
+    }
+
     private static void writeUtf(DataOutputStream out, String s) throws IOException {
         if (s == null)
             s = "";
@@ -330,6 +831,112 @@ public final class DogBytecodeIO {
         return new String(b, StandardCharsets.UTF_8);
     }
 
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // Unsigned LEB128; negative ints take five bytes and round-trip unchanged.
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IOException("Corrupt DOGC: varint too long");
+    }
+
+    private static void writeVarlong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarlong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IOException("Corrupt DOGC: varint too long");
+    }
+
+    private static void writeUtfV4(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readUtfV4(DataInputStream in) throws IOException {
+        int n = readVarint(in);
+        if (n < 0)
+            throw new IOException("Corrupt DOGC: negative string length");
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // An InputStream over a mapped file, positioned anywhere without copying.
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInput(ByteBuffer file, int pos) throws IOException {
+            if (pos < 0 || pos > file.limit())
+                throw new IOException("Corrupt DOGC: offset out of range: " + pos);
+            this.buf = file.duplicate();
+            this.buf.position(pos);
+        }
+
+        int position() {
+            return buf.position();
+        }
+
+        void seek(int pos) {
+            buf.position(pos);
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+
     private static final class Payload {
         int i;
         long l;
@@ -340,17 +947,22 @@ public final class DogBytecodeIO {
     }
 
     public static void writeChunk(Chunk chunk, Path out) throws IOException {
-        try (DataOutputStream dos = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(out)))) {
+        writeAtomically(out, os -> {
+            DataOutputStream dos = new DataOutputStream(os);
             writeChunk(dos, chunk);
             dos.flush();
-        }
+        });
     }
 
+    // Also reads files that carry the DOGC header, such as those written by `-c` or DogBuild.
     public static Chunk readChunk(Path in) throws IOException {
+        if (hasMagic(in))
+            return mapFromFile(in);
         try (DataInputStream dis = new DataInputStream(
                 new BufferedInputStream(Files.newInputStream(in)))) {
-            return readChunk(dis);
+            Chunk chunk = readChunk(dis, new HashMap<String, String>());
+            DogVerifier.verifyAll(chunk);
+            return chunk;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// On-disk cache of compiled .dog sources, kept in __dogcache__ next to the source like Python's __pycache__.
+// An entry is named <stem>.<key>.dogc, where key is a SHA-256 over the compiler version and the source bytes, and
+// holds the full key, a CRC32 of the payload and the chunk in DogBytecodeIO format. Entries that fail any check
+// are recompiled and replaced; failing to write one never fails the run.
+public final class DogCompileCache {
+
+    static final String DIR_NAME = "__dogcache__";
+    private static final int KEY_LENGTH = 32;
+
+    private DogCompileCache() {
+    }
+
+    // The source is streamed twice on a miss, to hash it and then to compile it, and never held in memory whole.
+    public static Chunk compile(Path source) throws IOException {
+        MessageDigest sha = digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source), sha)) {
+            byte[] skip = new byte[8192];
+            while (in.read(skip) >= 0) {
+            }
+        }
+        byte[] key = sha.digest();
+        Path entry = entryFor(source, key);
+        Chunk cached = load(entry, key);
+        if (cached != null) {
+            DogLog.debug("CACHE", "Hit: " + entry);
+            return cached;
+        }
+        // Hashed again while compiling, so the entry matches the text that was actually compiled.
+        sha = digest();
+        Chunk chunk;
+        try (Reader r = sourceReader(new DigestInputStream(Files.newInputStream(source), sha))) {
+            chunk = new BytecodeCompiler().compile(r);
+        }
+        byte[] compiled = sha.digest();
+        store(Arrays.equals(compiled, key) ? entry : entryFor(source, compiled), compiled, chunk);
+        return chunk;
+    }
+
+    // Every compile of a .dog file decodes it through here, so malformed UTF-8 fails the same way with or without
+    // the cache instead of turning into U+FFFD on one path only.
+    static Reader sourceReader(InputStream in) {
+        return new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT));
+    }
+
+    static byte[] key(byte[] source) {
+        MessageDigest sha = digest();
+        sha.update(source);
+        return sha.digest();
+    }
+
+    // A SHA-256 already fed with the compiler version; the source bytes follow.
+    private static MessageDigest digest() {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(BytecodeCompiler.COMPILER_VERSION.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            return sha;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    static Path entryFor(Path source, byte[] key) {
+        Path abs = source.toAbsolutePath().normalize();
+        return abs.resolveSibling(DIR_NAME).resolve(stem(abs) + "." + hex(key, 8) + ".dogc");
+    }
+
+    private static Chunk load(Path entry, byte[] key) {
+        if (!Files.isRegularFile(entry))
+            return null;
+        try {
+            byte[] data = Files.readAllBytes(entry);
+            if (data.length < KEY_LENGTH + 8)
+                throw new IOException("truncated");
+            if (!Arrays.equals(Arrays.copyOfRange(data, 0, KEY_LENGTH), key))
+                throw new IOException("key mismatch");
+            long crc = ByteBuffer.wrap(data, KEY_LENGTH, 8).getLong();
+            CRC32 check = new CRC32();
+            check.update(data, KEY_LENGTH + 8, data.length - KEY_LENGTH - 8);
+            if (check.getValue() != crc)
+                throw new IOException("checksum mismatch");
+            return DogBytecodeIO.readFromStream(
+                    new ByteArrayInputStream(data, KEY_LENGTH + 8, data.length - KEY_LENGTH - 8));
+        } catch (IOException | RuntimeException e) {
+            DogLog.warn("CACHE", "Discarding " + entry + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void store(Path entry, byte[] key, Chunk chunk) {
+        Path dir = entry.getParent();
+        Path tmp = null;
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DogBytecodeIO.writeToStream(chunk, payload);
+            byte[] body = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            ByteBuffer header = ByteBuffer.allocate(KEY_LENGTH + 8);
+            header.put(key).putLong(crc.getValue());
+
+            Files.createDirectories(dir);
+            byte[] data = new byte[header.capacity() + body.length];
+            System.arraycopy(header.array(), 0, data, 0, header.capacity());
+            System.arraycopy(body, 0, data, header.capacity(), body.length);
+            tmp = dir.resolve(entry.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+            Files.write(tmp, data, StandardOpenOption.CREATE_NEW);
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            pruneStale(entry);
+        } catch (IOException | RuntimeException e) {
+            DogLog.warn("CACHE", "Could not write " + entry + ": " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Older entries for the same source are unreachable once its content or the compiler changes.
+    private static void pruneStale(Path entry) throws IOException {
+        String prefix = stemOf(entry) + ".";
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(entry.getParent(), prefix + "*.dogc")) {
+            for (Path p : ds) {
+                String rest = p.getFileName().toString().substring(prefix.length());
+                if (!p.equals(entry) && rest.indexOf('.') == rest.length() - ".dogc".length())
+                    Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static String stem(Path source) {
+        String name = source.getFileName().toString();
+        return name.toLowerCase().endsWith(".dog") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    private static String stemOf(Path entry) {
+        String name = entry.getFileName().toString();
+        int keyDot = name.lastIndexOf('.', name.length() - ".dogc".length() - 1);
+        return name.substring(0, keyDot);
+    }
+
+    private static String hex(byte[] b, int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++)
+            sb.append(String.format("%02x", b[i] & 0xff));
+        return sb.toString();
+    }
+}
@@ -9,7 +9,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DogConsole {
 
@@ -22,7 +24,8 @@ public class DogConsole {
     private final List<String> history = new ArrayList<String>();
     private final List<String> taskHistory = new ArrayList<String>();
     private final DogContext ctx = Code.newContext();
-    private final DogVM vm = new DogVM();
+    private DogEngine vm = Code.newEngine();
+    private String vmName = "stack";
     private final BytecodeCompiler compiler = new BytecodeCompiler();
     private Path cwd = Paths.get(System.getProperty("user.dir")).toAbsolutePath().normalize();
     private Path clipboardPath = null;
@@ -215,6 +218,24 @@ public class DogConsole {
             printInfo();
             return false;
         }
+        if (cmd.equals(":vm")) {
+            if (args.size() < 2) {
+                System.out.println("Usage: :vm stack | :vm reg");
+                System.out.println("Current: " + vmName);
+                return false;
+            }
+            String m = args.get(1).toLowerCase();
+            DogEngine next = DogEngine.named(m);
+            if (next == null) {
+                errln("Usage: :vm stack | :vm reg");
+                return false;
+            }
+            next.globals().putAll(vm.globals());
+            vm = next;
+            vmName = m;
+            System.out.println("VM: " + m);
+            return false;
+        }
         if (cmd.equals(":time")) {
             if (args.size() < 2) {
                 System.out.println("Usage: :time on | :time off");
@@ -390,6 +411,23 @@ public class DogConsole {
             compileDogToDogc(in, out);
             return false;
         }
+        if (cmd.equals(":build")) {
+            Path dir;
+            if (args.size() >= 2) {
+                dir = resolveSmart(args.get(1));
+            } else if (currentProject != null) {
+                dir = projectsRoot.resolve(currentProject);
+            } else {
+                errln("Usage: :build [dir]   (defaults to the active project)");
+                return false;
+            }
+            logTask("BUILD " + dir);
+            DogBuild.Result r = DogBuild.build(dir);
+            for (String f : r.failures)
+                errln(f);
+            System.out.println(r.summary());
+            return false;
+        }
         if (cmd.equals(":runc")) {
             if (args.size() < 2) {
                 errln("Usage: :runc <file.dogc>");
@@ -411,7 +449,9 @@ public class DogConsole {
             return false;
         }
         if (cmd.equals(":vars")) {
-            System.out.println(vm.globals());
+            Map<String, Value> vars = new HashMap<String, Value>(vm.globals());
+            vars.keySet().removeIf(DogEnv::isTemp);
+            System.out.println(vars);
             return false;
         }
         if (cmd.equals(":rm") || cmd.equals(":del")) {
@@ -507,6 +547,7 @@ public class DogConsole {
         System.out.println("  :clearall                  - clear ALL history (dog + tasks)");
         System.out.println("  :logclear / :clearlog      - delete all files in ./log (asks confirmation)");
         System.out.println("  :time on|off                - measure execution time of Dog code");
+        System.out.println("  :vm stack|reg              - switch interpreter (variables are kept)");
         System.out.println();
         System.out.println("Filesystem:");
         System.out.println("  :pwd                       - print current directory");
@@ -531,6 +572,7 @@ public class DogConsole {
         System.out.println("  :run / :r <file.dog|file.dogc> - run .dog source or .dogc bytecode (same session)");
         System.out.println("  :compile <file.dog> [out]  - compile .dog -> .dogc (no run)");
         System.out.println("  :runc <file.dogc>          - run compiled bytecode");
+        System.out.println("  :build [dir]               - compile changed .dog files of the project to out/ in parallel");
         System.out.println("  :save <file.dog>           - save dog session history to file");
         System.out.println("  :vars                      - show variables in current session");
         System.out.println();
@@ -559,6 +601,7 @@ public class DogConsole {
         System.out.println("Arch:      " + System.getProperty("os.arch"));
         System.out.println("ANSI:      " + (ansiEnabled ? "enabled" : "disabled"));
         System.out.println("Timing:    " + (timingEnabled ? "on" : "off"));
+        System.out.println("VM:        " + vmName);
         System.out.println("Projects:  " + projectsRoot);
         System.out.println("Project:   " + (currentProject == null ? "(none)" : currentProject));
         System.out.println("CWD:       " + cwd);
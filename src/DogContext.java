@@ -1,9 +1,19 @@
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public final class DogContext {
     private final ModuleRegistry registry;
     private final Set<String> imported = new HashSet<String>();
+    private boolean[] importedIds = new boolean[0];
+    private Invoker invoker;
+
+    // How the running engine calls a script function on behalf of a module member that takes a callback.
+    public interface Invoker {
+        Value call(Value fn, List<Value> args);
+    }
 
     public DogContext(ModuleRegistry registry) {
         this.registry = registry;
@@ -16,9 +26,33 @@ public final class DogContext {
     public void importModule(String name, int line, int col, String fullLine) {
         if (!registry.exists(name)) {
             throw DogException.at(line, col, fullLine,
-                    "Unknown module '" + name + "'. Available: io, math, time, string, rand, sys, json");
+                    "Unknown module '" + name + "'. Available: " + registry.available());
         }
         imported.add(name);
+        int id = registry.idOf(name);
+        if (id >= importedIds.length)
+            importedIds = Arrays.copyOf(importedIds, registry.size());
+        importedIds[id] = true;
+    }
+
+    public boolean isImported(int moduleId) {
+        return moduleId < importedIds.length && importedIds[moduleId];
+    }
+
+    public Set<String> imported() {
+        return Collections.unmodifiableSet(imported);
+    }
+
+    void bindInvoker(Invoker invoker) {
+        this.invoker = invoker;
+    }
+
+    public Value callFunction(Value fn, List<Value> args, int line, int col, String fullLine) {
+        if (fn == null || !fn.isFunction())
+            throw DogException.at(line, col, fullLine, "Expected a function argument");
+        if (invoker == null)
+            throw DogException.at(line, col, fullLine, "No running program to call the function");
+        return invoker.call(fn, args);
     }
 
     public void requireImported(String name, int line, int col, String fullLine) {
@@ -0,0 +1,23 @@
+import java.util.Map;
+
+// An interpreter for compiled chunks. The CLI selects one with --vm and the console with :vm.
+public interface DogEngine {
+
+    void execute(Chunk chunk, DogContext ctx);
+
+    Map<String, Value> globals();
+
+    // Instructions dispatched so far, for comparing engines.
+    long dispatchCount();
+
+    static DogEngine named(String name) {
+        switch (name) {
+            case "stack":
+                return new DogVM();
+            case "reg":
+                return new DogRegisterVM();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Variable scopes shared by both interpreters: globals plus call frames searched innermost first.
+public final class DogEnv {
+
+    private static final class Frame {
+        final Map<String, Value> locals = new HashMap<>();
+        final Map<String, Value> closure;
+
+        Frame(Map<String, Value> closure) {
+            this.closure = (closure == null) ? new HashMap<>() : closure;
+        }
+    }
+
+    private final Map<String, Value> globals = new HashMap<String, Value>();
+    private final ArrayList<Frame> frames = new ArrayList<>();
+
+    // Compiler temporaries ($licmN from LoopInvariantMotion, $f.param from CallInliner) share the variable namespace
+    // but are not user variables; :vars and .dogi snapshots leave them out.
+    public static boolean isTemp(String name) {
+        return name.startsWith("$");
+    }
+
+    public Map<String, Value> globals() {
+        return globals;
+    }
+
+    public void enter(Map<String, Value> closure, List<String> params, List<Value> args) {
+        Frame frame = new Frame(new HashMap<>(closure));
+        frames.add(frame);
+        for (int i = 0; i < params.size(); i++) {
+            Value v = (i < args.size()) ? args.get(i) : Value.nil();
+            frame.locals.put(params.get(i), v);
+        }
+    }
+
+    public void leave() {
+        frames.remove(frames.size() - 1);
+    }
+
+    public Map<String, Value> snapshot() {
+        HashMap<String, Value> env = new HashMap<>();
+        env.putAll(globals);
+        for (int i = 0; i < frames.size(); i++) {
+            Frame f = frames.get(i);
+            env.putAll(f.closure);
+            env.putAll(f.locals);
+        }
+        return env;
+    }
+
+    public Value load(String name) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame f = frames.get(i);
+            if (f.locals.containsKey(name))
+                return f.locals.get(name);
+            if (f.closure.containsKey(name))
+                return f.closure.get(name);
+        }
+        return globals.get(name);
+    }
+
+    public Value require(String name, Instruction ins) {
+        Value v = load(name);
+        if (v == null) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Undefined variable '" + name + "'");
+        }
+        return v;
+    }
+
+    public void store(String name, Value v) {
+        if (frames.isEmpty()) {
+            globals.put(name, v);
+            return;
+        }
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame f = frames.get(i);
+            if (f.locals.containsKey(name)) {
+                f.locals.put(name, v);
+                return;
+            }
+            if (f.closure.containsKey(name)) {
+                f.closure.put(name, v);
+                return;
+            }
+        }
+        frames.get(frames.size() - 1).locals.put(name, v);
+    }
+
+    // Same lookup order as load, but hands back the owning map so an update costs one search.
+    public Map<String, Value> scopeOf(String name, Instruction ins) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame f = frames.get(i);
+            if (f.locals.containsKey(name))
+                return f.locals;
+            if (f.closure.containsKey(name))
+                return f.closure;
+        }
+        if (globals.containsKey(name))
+            return globals;
+        throw DogException.at(ins.line, ins.col, ins.sourceLine, "Undefined variable '" + name + "'");
+    }
+
+    public void writeScope(Map<String, Value> scope, String name, Value v) {
+        if (scope == globals && !frames.isEmpty()) {
+            frames.get(frames.size() - 1).locals.put(name, v);
+            return;
+        }
+        scope.put(name, v);
+    }
+}
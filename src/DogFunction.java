@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A module member resolved once through DogModule.resolve. Engines pass calls with up to three arguments to the
+// fixed-arity entry points; by default those box the arguments for callN, while members built with the nullary to
+// ternary factories take them directly and check the argument count only on the callN path.
+@FunctionalInterface
+public interface DogFunction {
+
+    Value callN(List<Value> args, DogContext ctx, int line, int col, String fullLine);
+
+    default Value call0(DogContext ctx, int line, int col, String fullLine) {
+        return callN(Collections.<Value>emptyList(), ctx, line, col, fullLine);
+    }
+
+    default Value call1(Value a, DogContext ctx, int line, int col, String fullLine) {
+        return callN(Collections.singletonList(a), ctx, line, col, fullLine);
+    }
+
+    default Value call2(Value a, Value b, DogContext ctx, int line, int col, String fullLine) {
+        return callN(Arrays.asList(a, b), ctx, line, col, fullLine);
+    }
+
+    default Value call3(Value a, Value b, Value c, DogContext ctx, int line, int col, String fullLine) {
+        return callN(Arrays.asList(a, b, c), ctx, line, col, fullLine);
+    }
+
+    interface Nullary {
+        Value apply(DogContext ctx, int line, int col, String fullLine);
+    }
+
+    interface Unary {
+        Value apply(Value a, DogContext ctx, int line, int col, String fullLine);
+    }
+
+    interface Binary {
+        Value apply(Value a, Value b, DogContext ctx, int line, int col, String fullLine);
+    }
+
+    interface Ternary {
+        Value apply(Value a, Value b, Value c, DogContext ctx, int line, int col, String fullLine);
+    }
+
+    // name is the qualified member, e.g. "math.sqrt", as it appears in the argument-count error.
+    static DogFunction nullary(String name, Nullary body) {
+        return new DogFunction() {
+            @Override
+            public Value callN(List<Value> args, DogContext ctx, int line, int col, String fullLine) {
+                requireCount(args, 0, name, line, col, fullLine);
+                return body.apply(ctx, line, col, fullLine);
+            }
+
+            @Override
+            public Value call0(DogContext ctx, int line, int col, String fullLine) {
+                return body.apply(ctx, line, col, fullLine);
+            }
+        };
+    }
+
+    static DogFunction unary(String name, Unary body) {
+        return new DogFunction() {
+            @Override
+            public Value callN(List<Value> args, DogContext ctx, int line, int col, String fullLine) {
+                requireCount(args, 1, name, line, col, fullLine);
+                return body.apply(args.get(0), ctx, line, col, fullLine);
+            }
+
+            @Override
+            public Value call1(Value a, DogContext ctx, int line, int col, String fullLine) {
+                return body.apply(a, ctx, line, col, fullLine);
+            }
+        };
+    }
+
+    static DogFunction binary(String name, Binary body) {
+        return new DogFunction() {
+            @Override
+            public Value callN(List<Value> args, DogContext ctx, int line, int col, String fullLine) {
+                requireCount(args, 2, name, line, col, fullLine);
+                return body.apply(args.get(0), args.get(1), ctx, line, col, fullLine);
+            }
+
+            @Override
+            public Value call2(Value a, Value b, DogContext ctx, int line, int col, String fullLine) {
+                return body.apply(a, b, ctx, line, col, fullLine);
+            }
+        };
+    }
+
+    static DogFunction ternary(String name, Ternary body) {
+        return new DogFunction() {
+            @Override
+            public Value callN(List<Value> args, DogContext ctx, int line, int col, String fullLine) {
+                requireCount(args, 3, name, line, col, fullLine);
+                return body.apply(args.get(0), args.get(1), args.get(2), ctx, line, col, fullLine);
+            }
+
+            @Override
+            public Value call3(Value a, Value b, Value c, DogContext ctx, int line, int col, String fullLine) {
+                return body.apply(a, b, c, ctx, line, col, fullLine);
+            }
+        };
+    }
+
+    static void requireCount(List<Value> args, int n, String name, int line, int col, String fullLine) {
+        if (args.size() != n) {
+            throw DogException.at(line, col, fullLine, name + "(...) expects " + n + " argument(s)");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+public final class DogIterator {
+
+    private enum Source {
+        RANGE, ARRAY, TYPED_ARRAY, STRING
+    }
+
+    private final Source source;
+    private final Value seq;
+    private int pos;
+
+    private long cur;
+    long remaining;
+    private final long step;
+
+    private DogIterator(Source source, Value seq, long cur, long remaining, long step) {
+        this.source = source;
+        this.seq = seq;
+        this.cur = cur;
+        this.remaining = remaining;
+        this.step = step;
+    }
+
+    // Returns null when v cannot be iterated.
+    public static DogIterator over(Value v) {
+        if (v == null)
+            return null;
+        switch (v.kind) {
+            case RANGE: {
+                DogRange r = v.rangeVal;
+                return new DogIterator(Source.RANGE, v, r.start, r.countUnsigned(), r.step);
+            }
+            case ARRAY:
+                return new DogIterator(Source.ARRAY, v, 0L, 0L, 1L);
+            case TYPED_ARRAY:
+                return new DogIterator(Source.TYPED_ARRAY, v, 0L, 0L, 1L);
+            case STRING:
+                return new DogIterator(Source.STRING, v, 0L, 0L, 1L);
+            default:
+                return null;
+        }
+    }
+
+    public boolean isRange() {
+        return source == Source.RANGE;
+    }
+
+    public boolean hasNext() {
+        switch (source) {
+            case RANGE:
+                return remaining != 0L;
+            case ARRAY:
+                return pos < seq.arrayVal.size();
+            case TYPED_ARRAY:
+                return pos < seq.typedVal.size();
+            default:
+                return pos < seq.stringVal.length();
+        }
+    }
+
+    public Value next() {
+        switch (source) {
+            case RANGE:
+                return nextInRange();
+            case ARRAY:
+                return seq.arrayVal.get(pos++);
+            case TYPED_ARRAY:
+                return seq.typedVal.get(pos++);
+            default: {
+                String s = seq.stringVal;
+                int cp = s.codePointAt(pos);
+                pos += Character.charCount(cp);
+                return Value.str(new String(Character.toChars(cp)));
+            }
+        }
+    }
+
+    // Caller checks remaining != 0 first; remaining is an unsigned counter.
+    Value nextInRange() {
+        long c = cur;
+        remaining--;
+        cur = c + step;
+        if (c >= Integer.MIN_VALUE && c <= Integer.MAX_VALUE)
+            return Value.ofInt((int) c);
+        return Value.ofLong(c);
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Pull-based: each source line is scanned exactly once, tokens are buffered only for lookahead. Reading from a
+// BufferedReader keeps only the current line, never the whole source.
+public final class DogLexer {
+
+    private static final String[] TWO_CHAR_OPS = {
+            "==", "!=", "<>", ">=", "<=", "=>", "->", "&&", "||", "+=", "-=", "*="
+    };
+    private static final String ONE_CHAR_OPS = "+-*/!<>=()[]{},.";
+
+    private final List<String> lines;
+    private final BufferedReader reader;
+    private int nextLine = 0;
+    private String cur;
+    private int curLine;
+    private int pos;
+    private int nesting;
+    private boolean lastWasNewline = true;
+
+    private final ArrayList<DogToken> buf = new ArrayList<DogToken>();
+    private int head = 0;
+
+    public DogLexer(List<String> lines) {
+        this.lines = lines;
+        this.reader = null;
+    }
+
+    // Read errors surface as UncheckedIOException.
+    public DogLexer(BufferedReader reader) {
+        this.lines = null;
+        this.reader = reader;
+    }
+
+    public DogToken peek() {
+        return peek(0);
+    }
+
+    public DogToken peek(int k) {
+        while (buf.size() - head <= k)
+            buf.add(scan());
+        return buf.get(head + k);
+    }
+
+    public DogToken next() {
+        DogToken t = peek(0);
+        head++;
+        if (head == buf.size()) {
+            buf.clear();
+            head = 0;
+        }
+        return t;
+    }
+
+    private DogToken scan() {
+        while (true) {
+            if (cur == null) {
+                String line = readLine();
+                if (line == null) {
+                    if (!lastWasNewline) {
+                        lastWasNewline = true;
+                        return new DogToken(DogToken.Type.NEWLINE, "", curLine, 1, null);
+                    }
+                    return new DogToken(DogToken.Type.EOF, "", curLine, 1, null);
+                }
+                cur = line;
+                curLine = ++nextLine;
+                pos = 0;
+            }
+            int n = cur.length();
+            while (pos < n && Character.isWhitespace(cur.charAt(pos)))
+                pos++;
+            if (pos >= n || cur.charAt(pos) == '#') {
+                String src = cur;
+                int col = n + 1;
+                cur = null;
+                // Newlines inside () and [] only continue the statement.
+                if (nesting == 0 && !lastWasNewline) {
+                    lastWasNewline = true;
+                    return new DogToken(DogToken.Type.NEWLINE, "", curLine, col, src);
+                }
+                continue;
+            }
+            lastWasNewline = false;
+            return scanToken();
+        }
+    }
+
+    private String readLine() {
+        if (reader == null)
+            return nextLine < lines.size() ? lines.get(nextLine) : null;
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DogToken scanToken() {
+        char c = cur.charAt(pos);
+        int start = pos;
+        if (Character.isLetter(c) || c == '_') {
+            pos++;
+            while (pos < cur.length() && (Character.isLetterOrDigit(cur.charAt(pos)) || cur.charAt(pos) == '_'))
+                pos++;
+            return token(DogToken.Type.IDENT, cur.substring(start, pos), start);
+        }
+        if (Character.isDigit(c) || (c == '.' && pos + 1 < cur.length() && Character.isDigit(cur.charAt(pos + 1)))) {
+            return token(DogToken.Type.NUMBER, scanNumber(), start);
+        }
+        if (c == '"') {
+            int line = curLine;
+            String src = cur;
+            String text = scanString();
+            return new DogToken(DogToken.Type.STRING, text, line, start + 1, src);
+        }
+        if (pos + 1 < cur.length()) {
+            for (String op : TWO_CHAR_OPS) {
+                if (cur.charAt(pos) == op.charAt(0) && cur.charAt(pos + 1) == op.charAt(1)) {
+                    pos += 2;
+                    return token(DogToken.Type.OP, op, start);
+                }
+            }
+        }
+        if (ONE_CHAR_OPS.indexOf(c) >= 0) {
+            pos++;
+            if (c == '(' || c == '[')
+                nesting++;
+            else if ((c == ')' || c == ']') && nesting > 0)
+                nesting--;
+            return token(DogToken.Type.OP, String.valueOf(c), start);
+        }
+        throw DogException.at(curLine, start + 1, cur, "Unexpected character: " + c);
+    }
+
+    private String scanNumber() {
+        int start = pos;
+        boolean dot = false;
+        boolean exp = false;
+        while (pos < cur.length()) {
+            char c = cur.charAt(pos);
+            if (Character.isDigit(c)) {
+                pos++;
+                continue;
+            }
+            if (c == '.' && !dot && !exp) {
+                dot = true;
+                pos++;
+                continue;
+            }
+            if ((c == 'e' || c == 'E') && !exp) {
+                exp = true;
+                pos++;
+                if (pos < cur.length() && (cur.charAt(pos) == '+' || cur.charAt(pos) == '-'))
+                    pos++;
+                continue;
+            }
+            break;
+        }
+        return cur.substring(start, pos);
+    }
+
+    // A literal may run over several lines; each line break becomes a '\n' in its value.
+    private String scanString() {
+        int start = pos;
+        int startLine = curLine;
+        String startSrc = cur;
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= cur.length()) {
+                String next = readLine();
+                if (next == null)
+                    throw DogException.at(startLine, start + 1, startSrc, "Unterminated string literal");
+                sb.append('\n');
+                cur = next;
+                curLine = ++nextLine;
+                pos = 0;
+                continue;
+            }
+            char c = cur.charAt(pos++);
+            if (c == '"')
+                return sb.toString();
+            if (c == '\\' && pos < cur.length()) {
+                char e = cur.charAt(pos++);
+                if (e == 'n')
+                    sb.append('\n');
+                else if (e == 't')
+                    sb.append('\t');
+                else
+                    sb.append(e);
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private DogToken token(DogToken.Type type, String text, int start) {
+        return new DogToken(type, text, curLine, start + 1, cur);
+    }
+}
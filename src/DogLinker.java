@@ -0,0 +1,45 @@
+import java.util.List;
+
+// Static module linking. check() runs at compile time and rejects imports of unknown modules and references to
+// members a module does not declare. link() resolves each CALL to indices in the ModuleRegistry an engine runs with,
+// so DogOps.callModule dispatches through the registry's module array instead of looking names up.
+public final class DogLinker {
+
+    private DogLinker() {
+    }
+
+    // Throws on the first unknown module or member in chunk or its function bodies.
+    public static void check(Chunk chunk, ModuleRegistry modules) {
+        for (Instruction ins : chunk.code()) {
+            if (ins.op != OpCode.IMPORT && ins.op != OpCode.CALL)
+                continue;
+            DogModule m = modules.get(ins.module);
+            if (m == null) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                        "Unknown module '" + ins.module + "'. Available: " + modules.available());
+            }
+            List<String> members = (ins.op == OpCode.CALL) ? m.members() : null;
+            if (members != null && !members.contains(ins.member)) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Unknown " + ins.module + " member '"
+                        + ins.member + "'. Available: " + String.join(", ", members));
+            }
+        }
+        for (FunctionProto fp : chunk.functions())
+            check(fp.body, modules);
+    }
+
+    // Resolves the CALLs of chunk itself; engines link each function body when they first run it. Names that do not
+    // resolve stay unlinked and fail by name when executed.
+    static void link(Chunk chunk, ModuleRegistry modules) {
+        if (chunk.linkedTo() == modules)
+            return;
+        for (Instruction ins : chunk.code()) {
+            if (ins.op != OpCode.CALL)
+                continue;
+            int id = modules.idOf(ins.module);
+            ins.function = (id < 0 || ins.isConst) ? null : modules.get(id).resolve(ins.member);
+            ins.moduleId = id;
+        }
+        chunk.markLinked(modules);
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// LRU result cache behind a memo.wrap function. Arguments match the way == compares them (DogOps.isEqual): numbers
+// by value across INT/LONG/DOUBLE/BIGINT, strings by content, arrays and functions by identity. Engines consult it
+// on each call of the wrapped function, so it only suits functions whose result depends on their arguments alone.
+// Array results are stored and handed out as deep copies, so no caller can change a cached result.
+public final class DogMemo {
+
+    static final class Key {
+        private final Value[] args;
+        private final int hash;
+
+        Key(List<Value> args) {
+            this.args = args.toArray(new Value[0]);
+            int h = 1;
+            for (Value v : this.args)
+                h = 31 * h + hash(v);
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            if (k.hash != hash || k.args.length != args.length)
+                return false;
+            for (int i = 0; i < args.length; i++) {
+                if (!DogOps.isEqual(args[i], k.args[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        // Equal values under isEqual hash alike: every number hashes through its double value, which is what
+        // isEqual compares whenever one side is a DOUBLE.
+        private static int hash(Value v) {
+            if (v == null)
+                return 0;
+            switch (v.kind) {
+                case INT:
+                case LONG:
+                case DOUBLE:
+                case BIGINT:
+                    return Double.hashCode(v.toDouble());
+                case STRING:
+                    return v.stringVal.hashCode();
+                case BOOL:
+                    return Boolean.hashCode(v.boolVal);
+                case ARRAY:
+                    return System.identityHashCode(v.arrayVal);
+                case TYPED_ARRAY:
+                    return System.identityHashCode(v.typedVal);
+                case RANGE:
+                    return v.rangeVal.hashCode();
+                case FUNCTION:
+                    return System.identityHashCode(v.funcProto);
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Value> entries;
+    private long hits;
+    private long misses;
+
+    public DogMemo(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+                return size() > DogMemo.this.maxEntries;
+            }
+        };
+    }
+
+    // Counts a hit or a miss; after a miss the engine runs the function and stores its result.
+    Value lookup(Key key) {
+        Value v = entries.get(key);
+        if (v == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return detach(v, new IdentityHashMap<Value, Value>());
+    }
+
+    void store(Key key, Value result) {
+        entries.put(key, detach(result, new IdentityHashMap<Value, Value>()));
+    }
+
+    // Deep copy of the arrays reachable from v; copies keeps shared and cyclic arrays shaped the same way.
+    private static Value detach(Value v, IdentityHashMap<Value, Value> copies) {
+        if (v == null || (v.kind != Value.Kind.ARRAY && v.kind != Value.Kind.TYPED_ARRAY))
+            return v;
+        Value done = copies.get(v);
+        if (done != null)
+            return done;
+        if (v.kind == Value.Kind.TYPED_ARRAY) {
+            Value c = Value.typedArray(v.typedVal.copy());
+            copies.put(v, c);
+            return c;
+        }
+        ArrayList<Value> items = new ArrayList<Value>(v.arrayVal.size());
+        Value c = Value.arrayOwned(items);
+        copies.put(v, c);
+        for (Value item : v.arrayVal)
+            items.add(detach(item, copies));
+        return c;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
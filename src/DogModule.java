@@ -3,7 +3,39 @@ import java.util.List;
 public interface DogModule {
     String name();
 
-    Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine);
+    // Name-based entry point for callers without a handle. Modules that resolve every member get it from resolve.
+    default Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
+        DogFunction fn = resolve(member);
+        if (fn == null) {
+            List<String> members = members();
+            throw DogException.at(line, col, fullLine, "Unknown " + name() + " function: " + member
+                    + (members == null ? "" : ". Available: " + String.join(", ", members)));
+        }
+        return fn.callN(args, ctx, line, col, fullLine);
+    }
 
     Value getConstant(String member, DogContext ctx, int line, int col, String fullLine);
+
+    // Every function and constant name; DogLinker rejects CALLs to any other member. Null leaves them unchecked.
+    default List<String> members() {
+        return null;
+    }
+
+    // Handle for a function member, or null when the module dispatches member by name only. DogLinker stores the
+    // handle on each CALL so engines skip the lookup.
+    default DogFunction resolve(String member) {
+        return null;
+    }
+
+    // Pure members have no side effects and their result depends only on their arguments. Members that build a new
+    // array are not pure: evaluating them once outside a loop would share that array between iterations.
+    default boolean isPure(String member) {
+        return false;
+    }
+
+    // Members that may run a script function passed to them (through DogContext.callFunction), which can write any
+    // variable or array.
+    default boolean callsBack(String member) {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+import java.math.BigInteger;
+import java.util.List;
+
+// Value semantics shared by the interpreters and compile-time folding.
+public final class DogOps {
+
+    private DogOps() {
+    }
+
+    public static boolean isTruthy(Value v) {
+        if (v == null)
+            return false;
+        if (v.isNil())
+            return false;
+        if (v.isBool())
+            return v.boolVal;
+        if (v.isString())
+            return v.stringVal != null && !v.stringVal.isEmpty();
+        if (v.isArray() || v.isTypedArray() || v.isRange())
+            return true;
+        if (v.isFunction())
+            return true;
+        if (v.isNumber()) {
+            if (v.kind == Value.Kind.DOUBLE)
+                return v.doubleVal != 0.0;
+            if (v.kind == Value.Kind.INT)
+                return v.intVal != 0;
+            if (v.kind == Value.Kind.LONG)
+                return v.longVal != 0L;
+            if (v.kind == Value.Kind.BIGINT)
+                return !v.bigIntVal.equals(BigInteger.ZERO);
+        }
+        return true;
+    }
+
+    public static boolean isEqual(Value a, Value b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null || b == null)
+            return false;
+        if (a.isNil() && b.isNil())
+            return true;
+        if (a.isNumber() && b.isNumber()) {
+            if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
+                return Double.compare(a.toDouble(), b.toDouble()) == 0;
+            }
+            return a.toBigInteger().equals(b.toBigInteger());
+        }
+        if (a.kind != b.kind)
+            return false;
+        if (a.isString())
+            return a.stringVal.equals(b.stringVal);
+        if (a.isBool())
+            return a.boolVal == b.boolVal;
+        if (a.isArray())
+            return a.arrayVal == b.arrayVal;
+        if (a.isTypedArray())
+            return a.typedVal == b.typedVal;
+        if (a.isRange())
+            return a.rangeVal.equals(b.rangeVal);
+        if (a.isFunction())
+            return a.funcProto == b.funcProto;
+        return false;
+    }
+
+    public static int numCompare(Value a, Value b) {
+        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
+            return Double.compare(a.toDouble(), b.toDouble());
+        }
+        return a.toBigInteger().compareTo(b.toBigInteger());
+    }
+
+    public static Value numAdd(Value a, Value b) {
+        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
+            return Value.ofDouble(a.toDouble() + b.toDouble());
+        }
+        return Value.fromBigInteger(a.toBigInteger().add(b.toBigInteger()));
+    }
+
+    public static Value numSub(Value a, Value b) {
+        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
+            return Value.ofDouble(a.toDouble() - b.toDouble());
+        }
+        return Value.fromBigInteger(a.toBigInteger().subtract(b.toBigInteger()));
+    }
+
+    public static Value numMul(Value a, Value b) {
+        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
+            return Value.ofDouble(a.toDouble() * b.toDouble());
+        }
+        return Value.fromBigInteger(a.toBigInteger().multiply(b.toBigInteger()));
+    }
+
+    public static Value div(Value a, Value b) {
+        return Value.ofDouble(a.toDouble() / b.toDouble());
+    }
+
+    // ADD..GE with the operand checks both interpreters report.
+    public static Value binary(OpCode op, Value a, Value b, Instruction ins) {
+        switch (op) {
+            case ADD:
+                if (a.isString() || b.isString())
+                    return Value.str(a.printable() + b.printable());
+                requireNumber(a, ins);
+                requireNumber(b, ins);
+                return numAdd(a, b);
+            case EQ:
+                return Value.bool(isEqual(a, b));
+            case NEQ:
+                return Value.bool(!isEqual(a, b));
+            default:
+                break;
+        }
+        requireNumber(a, ins);
+        requireNumber(b, ins);
+        switch (op) {
+            case SUB:
+                return numSub(a, b);
+            case MUL:
+                return numMul(a, b);
+            case DIV:
+                return div(a, b);
+            case LT:
+                return Value.bool(numCompare(a, b) < 0);
+            case GT:
+                return Value.bool(numCompare(a, b) > 0);
+            case LE:
+                return Value.bool(numCompare(a, b) <= 0);
+            case GE:
+                return Value.bool(numCompare(a, b) >= 0);
+            default:
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Not a binary opcode: " + op);
+        }
+    }
+
+    // Shared by ADD_VAR/SUB_VAR/MUL_VAR/INC_VAR and the ARRAY_* updates: stays in int/long until it overflows.
+    public static Value combine(OpCode op, Value a, Value b, Instruction ins) {
+        boolean add = op == OpCode.ADD_VAR || op == OpCode.ARRAY_ADD;
+        boolean sub = op == OpCode.SUB_VAR || op == OpCode.ARRAY_SUB;
+        if (add && (a.isString() || b.isString()))
+            return Value.str(a.printable() + b.printable());
+        requireNumber(a, ins);
+        requireNumber(b, ins);
+        if (isIntegral(a) && isIntegral(b)) {
+            long x = a.toLong();
+            long y = b.toLong();
+            try {
+                long r = add ? Math.addExact(x, y) : sub ? Math.subtractExact(x, y) : Math.multiplyExact(x, y);
+                return (r == (int) r) ? Value.ofInt((int) r) : Value.ofLong(r);
+            } catch (ArithmeticException overflow) {
+                // fall through to BigInteger
+            }
+        }
+        if (add)
+            return numAdd(a, b);
+        if (sub)
+            return numSub(a, b);
+        return numMul(a, b);
+    }
+
+    public static Value increment(Value cur, int delta, Instruction ins) {
+        if (cur != null && cur.kind == Value.Kind.INT) {
+            long r = (long) cur.intVal + delta;
+            return (r == (int) r) ? Value.ofInt((int) r) : Value.ofLong(r);
+        }
+        return combine(OpCode.ADD_VAR, cur, Value.ofInt(delta), ins);
+    }
+
+    private static boolean isIntegral(Value v) {
+        return v.kind == Value.Kind.INT || v.kind == Value.Kind.LONG;
+    }
+
+    public static Value arrayGet(Value arrV, Value idxV, Instruction ins) {
+        if (arrV.isTypedArray()) {
+            int idx = requireIndexInt(idxV, ins);
+            if (idx < 0 || idx >= arrV.typedVal.size()) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+            }
+            return arrV.typedVal.get(idx);
+        }
+        if (!arrV.isArray()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Indexing works only for arrays");
+        }
+        int idx = requireIndexInt(idxV, ins);
+        if (idx < 0 || idx >= arrV.arrayVal.size()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+        }
+        return arrV.arrayVal.get(idx);
+    }
+
+    public static void arraySet(Value arrV, Value idxV, Value value, Instruction ins) {
+        if (arrV.isTypedArray()) {
+            int idx = requireIndexInt(idxV, ins);
+            if (idx < 0) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+            }
+            requireTypedElement(arrV.typedVal, value, ins);
+            arrV.typedVal.set(idx, value);
+            return;
+        }
+        if (!arrV.isArray()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Indexing works only for arrays");
+        }
+        int idx = requireIndexInt(idxV, ins);
+        if (idx < 0) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+        }
+        while (idx >= arrV.arrayVal.size())
+            arrV.arrayVal.add(Value.nil());
+        arrV.arrayVal.set(idx, value);
+    }
+
+    public static void arrayUpdate(Value arrV, Value idxV, Value rhs, Instruction ins) {
+        int idx = requireIndexInt(idxV, ins);
+        if (arrV.isTypedArray()) {
+            TypedArray t = arrV.typedVal;
+            if (idx < 0 || idx >= t.size()) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+            }
+            Value r = combine(ins.op, t.get(idx), rhs, ins);
+            requireTypedElement(t, r, ins);
+            t.set(idx, r);
+            return;
+        }
+        if (!arrV.isArray()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Indexing works only for arrays");
+        }
+        if (idx < 0 || idx >= arrV.arrayVal.size()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index out of range: " + idx);
+        }
+        arrV.arrayVal.set(idx, combine(ins.op, arrV.arrayVal.get(idx), rhs, ins));
+    }
+
+    public static Value range(List<Value> args, Instruction ins) {
+        int n = args.size();
+        if (n < 1 || n > 3)
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad RANGE argCount");
+        long a = n == 1 ? 0L : requireRangeBound(args.get(0), ins);
+        long b = requireRangeBound(args.get(n == 1 ? 0 : 1), ins);
+        long step = n == 3 ? requireRangeBound(args.get(2), ins) : 1L;
+        if (step == 0) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "range step cannot be 0");
+        }
+        return Value.range(new DogRange(a, b, step));
+    }
+
+    public static Value iterate(Value seq, Instruction ins) {
+        DogIterator it = DogIterator.over(seq);
+        if (it == null) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                    "Cannot iterate over " + (seq == null ? "nil" : seq.kind));
+        }
+        return Value.iterator(it);
+    }
+
+    // The linked handle of a CALL once its module import is checked; null when the CALL goes through callModule.
+    public static DogFunction linkedFunction(DogContext ctx, Instruction ins) {
+        DogFunction fn = ins.function;
+        if (fn != null && !ctx.isImported(ins.moduleId))
+            ctx.requireImported(ins.module, ins.line, ins.col, ins.sourceLine);
+        return fn;
+    }
+
+    public static Value callModule(DogContext ctx, Instruction ins, List<Value> args) {
+        if (ins.moduleId >= 0) {
+            if (!ctx.isImported(ins.moduleId))
+                ctx.requireImported(ins.module, ins.line, ins.col, ins.sourceLine);
+            if (ins.function != null)
+                return ins.function.callN(args, ctx, ins.line, ins.col, ins.sourceLine);
+            DogModule m = ctx.registry().get(ins.moduleId);
+            if (ins.isConst)
+                return m.getConstant(ins.member, ctx, ins.line, ins.col, ins.sourceLine);
+            return m.call(ins.member, args, ctx, ins.line, ins.col, ins.sourceLine);
+        }
+        ctx.requireImported(ins.module, ins.line, ins.col, ins.sourceLine);
+        DogModule m = ctx.registry().get(ins.module);
+        if (m == null) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Unknown module: " + ins.module);
+        }
+        if (ins.isConst)
+            return m.getConstant(ins.member, ctx, ins.line, ins.col, ins.sourceLine);
+        return m.call(ins.member, args, ctx, ins.line, ins.col, ins.sourceLine);
+    }
+
+    private static long requireRangeBound(Value v, Instruction ins) {
+        if (v == null || !v.isNumber() || v.kind == Value.Kind.DOUBLE || v.kind == Value.Kind.BIGINT) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                    "range(...) expects INT or LONG arguments");
+        }
+        return v.toLong();
+    }
+
+    public static void requireNumber(Value v, Instruction ins) {
+        if (v == null || !v.isNumber()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Expected number");
+        }
+    }
+
+    private static int requireIndexInt(Value v, Instruction ins) {
+        if (v == null || !v.isNumber()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index must be a number");
+        }
+        double d = v.toDouble();
+        if (d != Math.rint(d)) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index must be an integer");
+        }
+        long L = (long) d;
+        if (L < Integer.MIN_VALUE || L > Integer.MAX_VALUE) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index is too large");
+        }
+        return (int) L;
+    }
+
+    private static void requireTypedElement(TypedArray arr, Value v, Instruction ins) {
+        if (!arr.accepts(v)) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                    "Cannot store " + (v == null ? "nil" : v.printable()) + " in " + arr.elemName() + " array");
+        }
+    }
+}
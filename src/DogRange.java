@@ -0,0 +1,44 @@
+public final class DogRange {
+    public final long start;
+    public final long end;
+    public final long step;
+
+    public DogRange(long start, long end, long step) {
+        if (step == 0)
+            throw new IllegalArgumentException("range step cannot be 0");
+        this.start = start;
+        this.end = end;
+        this.step = step;
+    }
+
+    // Element count as an unsigned long: range(MIN, MAX) has more elements than fit in a signed long.
+    public long countUnsigned() {
+        if (step > 0) {
+            if (start >= end)
+                return 0L;
+            return Long.divideUnsigned(end - start - 1, step) + 1;
+        }
+        if (start <= end)
+            return 0L;
+        return Long.divideUnsigned(start - end - 1, -step) + 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DogRange))
+            return false;
+        DogRange r = (DogRange) o;
+        return start == r.start && end == r.end && step == r.step;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(start) * 31 * 31 + Long.hashCode(end) * 31 + Long.hashCode(step);
+    }
+
+    public String printable() {
+        if (step == 1)
+            return "range(" + start + ", " + end + ")";
+        return "range(" + start + ", " + end + ", " + step + ")";
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Runs the register IR from RegisterCompiler. Chunks are lowered on first use; every call gets its own register file
+// and shares variable scoping and value semantics with DogVM through DogEnv and DogOps.
+public final class DogRegisterVM implements DogEngine {
+
+    private final DogEnv env = new DogEnv();
+    private final Map<Chunk, RegChunk> lowered = new WeakHashMap<Chunk, RegChunk>();
+    private long dispatched = 0;
+
+    @Override
+    public Map<String, Value> globals() {
+        return env.globals();
+    }
+
+    @Override
+    public long dispatchCount() {
+        return dispatched;
+    }
+
+    @Override
+    public void execute(Chunk chunk, DogContext ctx) {
+        DogLinker.link(chunk, ctx.registry());
+        ctx.bindInvoker((fn, args) -> callUserFunction(fn, args, ctx));
+        run(lower(chunk), ctx, false);
+    }
+
+    public RegChunk lower(Chunk chunk) {
+        RegChunk rc = lowered.get(chunk);
+        if (rc == null) {
+            rc = RegisterCompiler.lower(chunk);
+            lowered.put(chunk, rc);
+        }
+        return rc;
+    }
+
+    private Value run(RegChunk chunk, DogContext ctx, boolean isFunction) {
+        RegInstruction[] code = chunk.code;
+        Value[] regs = new Value[chunk.registers];
+        for (int ip = 0; ip < code.length; ip++) {
+            RegInstruction r = code[ip];
+            Instruction ins = r.origin;
+            dispatched++;
+            Value result;
+            try {
+                switch (r.op) {
+                    case MOVE:
+                        result = operand(chunk, regs, r.a);
+                        break;
+                    case FUNC: {
+                        if (ins.funcIndex < 0 || ins.funcIndex >= chunk.functions.size()) {
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                                    "Bad function index: " + ins.funcIndex);
+                        }
+                        result = Value.function(chunk.functions.get(ins.funcIndex), env.snapshot());
+                        break;
+                    }
+                    case CALL_VALUE: {
+                        Value callee = regs[RegChunk.index(r.a)];
+                        if (callee == null || !callee.isFunction()) {
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                                    "Trying to call non-function: " + (callee == null ? "null" : callee.kind));
+                        }
+                        result = callUserFunction(callee, window(regs, RegChunk.index(r.a) + 1, ins.argCount), ctx);
+                        break;
+                    }
+                    case RETURN:
+                        if (!isFunction) {
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "RETURN outside of function");
+                        }
+                        return r.a < 0 ? Value.nil() : operand(chunk, regs, r.a);
+                    case ARRAY_NEW:
+                        result = Value.arrayOwned(window(regs, RegChunk.index(r.a), ins.argCount));
+                        break;
+                    case ARRAY_GET: {
+                        Value arrV = operand(chunk, regs, r.a);
+                        result = DogOps.arrayGet(arrV, operand(chunk, regs, r.b), ins);
+                        break;
+                    }
+                    case ARRAY_SET: {
+                        Value arrV = operand(chunk, regs, r.a);
+                        Value idxV = operand(chunk, regs, r.b);
+                        result = operand(chunk, regs, r.c);
+                        DogOps.arraySet(arrV, idxV, result, ins);
+                        break;
+                    }
+                    case ADD:
+                    case SUB:
+                    case MUL:
+                    case DIV:
+                    case EQ:
+                    case NEQ:
+                    case LT:
+                    case GT:
+                    case LE:
+                    case GE: {
+                        Value a = operand(chunk, regs, r.a);
+                        result = DogOps.binary(ins.op, a, operand(chunk, regs, r.b), ins);
+                        break;
+                    }
+                    case NOT:
+                        result = Value.bool(!DogOps.isTruthy(operand(chunk, regs, r.a)));
+                        break;
+                    case IMPORT:
+                        ctx.importModule(ins.module, ins.line, ins.col, ins.sourceLine);
+                        continue;
+                    case CALL: {
+                        DogFunction fn = DogOps.linkedFunction(ctx, ins);
+                        int base = RegChunk.index(r.a);
+                        switch (fn == null ? -1 : ins.argCount) {
+                            case 0:
+                                result = fn.call0(ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            case 1:
+                                result = fn.call1(regs[base], ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            case 2:
+                                result = fn.call2(regs[base], regs[base + 1], ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            case 3:
+                                result = fn.call3(regs[base], regs[base + 1], regs[base + 2], ctx, ins.line, ins.col,
+                                        ins.sourceLine);
+                                break;
+                            default:
+                                result = DogOps.callModule(ctx, ins,
+                                        ins.isConst ? null : window(regs, base, ins.argCount));
+                        }
+                        break;
+                    }
+                    case PRINT:
+                        System.out.println(operand(chunk, regs, r.a).printable());
+                        continue;
+                    case JUMP:
+                        ip = r.target - 1;
+                        continue;
+                    case JUMP_IF_FALSE:
+                        if (!DogOps.isTruthy(operand(chunk, regs, r.a)))
+                            ip = r.target - 1;
+                        continue;
+                    case JUMP_IF_TRUE:
+                        if (DogOps.isTruthy(operand(chunk, regs, r.a)))
+                            ip = r.target - 1;
+                        continue;
+                    case RANGE: {
+                        int n = ins.argCount;
+                        if (n < 1 || n > 3)
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad RANGE argCount");
+                        result = DogOps.range(window(regs, RegChunk.index(r.a), n), ins);
+                        break;
+                    }
+                    case ITER_INIT:
+                        result = DogOps.iterate(operand(chunk, regs, r.a), ins);
+                        break;
+                    case ITER_NEXT: {
+                        DogIterator it = iterator(regs[RegChunk.index(r.a)], ins);
+                        if (it.hasNext())
+                            env.store(ins.name, it.next());
+                        else
+                            ip = r.target - 1;
+                        continue;
+                    }
+                    case RANGE_NEXT: {
+                        DogIterator it = iterator(regs[RegChunk.index(r.a)], ins);
+                        if (it.remaining != 0L)
+                            env.store(ins.name, it.nextInRange());
+                        else
+                            ip = r.target - 1;
+                        continue;
+                    }
+                    case UPDATE_VAR: {
+                        Value rhs = operand(chunk, regs, r.a);
+                        Map<String, Value> scope = env.scopeOf(ins.name, ins);
+                        env.writeScope(scope, ins.name, DogOps.combine(ins.op, scope.get(ins.name), rhs, ins));
+                        continue;
+                    }
+                    case INC_VAR: {
+                        Map<String, Value> scope = env.scopeOf(ins.name, ins);
+                        int delta = ins.intVal != null ? ins.intVal.intValue() : 1;
+                        env.writeScope(scope, ins.name, DogOps.increment(scope.get(ins.name), delta, ins));
+                        continue;
+                    }
+                    case ARRAY_UPDATE: {
+                        Value arrV = operand(chunk, regs, r.a);
+                        Value idxV = operand(chunk, regs, r.b);
+                        DogOps.arrayUpdate(arrV, idxV, operand(chunk, regs, r.c), ins);
+                        continue;
+                    }
+                    default:
+                        throw DogException.at(ins.line, ins.col, ins.sourceLine, "Unknown register op: " + r.op);
+                }
+                if (r.dstVar != null)
+                    env.store(r.dstVar, result);
+                else
+                    regs[r.dst] = result;
+            } catch (DogException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Runtime error: " + e.getMessage());
+            }
+        }
+        return Value.nil();
+    }
+
+    private Value operand(RegChunk chunk, Value[] regs, int o) {
+        switch (RegChunk.kind(o)) {
+            case RegChunk.REG:
+                return regs[RegChunk.index(o)];
+            case RegChunk.CONST:
+                return chunk.consts[RegChunk.index(o)];
+            default: {
+                Instruction load = chunk.loads[RegChunk.index(o)];
+                return env.require(load.name, load);
+            }
+        }
+    }
+
+    private static ArrayList<Value> window(Value[] regs, int from, int count) {
+        ArrayList<Value> out = new ArrayList<Value>(count);
+        for (int i = 0; i < count; i++)
+            out.add(regs[from + i]);
+        return out;
+    }
+
+    private Value callUserFunction(Value callee, List<Value> args, DogContext ctx) {
+        FunctionProto proto = callee.funcProto;
+        DogMemo.Key key = null;
+        if (proto.memo != null) {
+            key = new DogMemo.Key(args);
+            Value hit = proto.memo.lookup(key);
+            if (hit != null)
+                return hit;
+        }
+        env.enter(callee.closure, proto.params, args);
+        try {
+            DogLinker.link(proto.body, ctx.registry());
+            Value r = run(lower(proto.body), ctx, true);
+            if (key != null)
+                proto.memo.store(key, r);
+            return r;
+        } finally {
+            env.leave();
+        }
+    }
+
+    private static DogIterator iterator(Value v, Instruction ins) {
+        if (v == null || v.kind != Value.Kind.ITERATOR) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Expected iterator on stack");
+        }
+        return v.iterVal;
+    }
+}
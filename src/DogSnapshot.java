@@ -0,0 +1,405 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// .dogi: a program paused at a top-level sys.checkpoint() together with its globals, so later runs skip the init
+// code in front of it.
+//   "DOGI", int version, int imageLength, the program as a DOGC image, int resumeIp, the imported modules, then the
+//   globals. Arrays, typed arrays and functions are written once and referenced by id afterwards, which keeps sharing
+//   and cycles intact; a function is stored as the path of its proto in the chunk, its memo.wrap cache if any, and
+//   its closure. A cache is restored with its size limit but empty.
+public final class DogSnapshot {
+    private static final byte[] MAGIC = new byte[] { 'D', 'O', 'G', 'I' };
+    private static final int VERSION = 2;
+    private static final int REF = 0x7F;
+
+    public final Chunk chunk;
+    public final int resumeIp;
+    public final Set<String> modules;
+    public final Map<String, Value> globals;
+
+    private DogSnapshot(Chunk chunk, int resumeIp, Set<String> modules, Map<String, Value> globals) {
+        this.chunk = chunk;
+        this.resumeIp = resumeIp;
+        this.modules = modules;
+        this.globals = globals;
+    }
+
+    static boolean isCheckpoint(Instruction ins) {
+        return ins.op == OpCode.CALL && "sys".equals(ins.module) && "checkpoint".equals(ins.member);
+    }
+
+    // Runs chunk up to its checkpoint and writes the image. Returns false, writing nothing, if the program finishes
+    // without reaching one.
+    public static boolean capture(Chunk chunk, Path out) throws IOException {
+        DogContext ctx = Code.newContext();
+        DogVM vm = new DogVM();
+        int ip = vm.executeToCheckpoint(chunk, ctx);
+        if (ip < 0)
+            return false;
+        write(out, chunk, ip, ctx.imported(), vm.globals());
+        return true;
+    }
+
+    public void resume(DogContext ctx) {
+        for (String m : modules)
+            ctx.importModule(m, 0, 0, "");
+        DogVM vm = new DogVM();
+        vm.globals().putAll(globals);
+        vm.resume(chunk, ctx, resumeIp);
+    }
+
+    public static void write(Path out, Chunk chunk, int resumeIp, Set<String> modules, Map<String, Value> globals)
+            throws IOException {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        DogBytecodeIO.writeToStream(chunk, image);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.write(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(image.size());
+        image.writeTo(data);
+        data.writeInt(resumeIp);
+        List<String> sorted = new ArrayList<String>(modules);
+        Collections.sort(sorted);
+        data.writeInt(sorted.size());
+        for (String m : sorted)
+            writeString(data, m);
+
+        Writer w = new Writer(data, protoPaths(chunk));
+        Map<String, Value> ordered = new TreeMap<String, Value>(globals);
+        ordered.keySet().removeIf(DogEnv::isTemp);
+        data.writeInt(ordered.size());
+        for (Map.Entry<String, Value> e : ordered.entrySet()) {
+            writeString(data, e.getKey());
+            w.value(e.getValue(), e.getKey());
+        }
+        data.flush();
+        Files.write(out, bytes.toByteArray());
+    }
+
+    public static DogSnapshot load(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            byte[] mg = new byte[4];
+            in.readFully(mg);
+            if (!Arrays.equals(mg, MAGIC))
+                throw new IOException("Not a DOGI file (bad magic)");
+            int ver = in.readInt();
+            if (ver != VERSION)
+                throw new IOException("Unsupported DOGI version: " + ver + " (expected " + VERSION + ")");
+            int length = in.readInt();
+            if (length < 0 || length > bytes.length - 12)
+                throw new IOException("Corrupt DOGI: bad image length");
+            Chunk chunk = DogBytecodeIO.readFromBuffer(ByteBuffer.wrap(bytes, 12, length).slice());
+            in.skipBytes(length);
+
+            int ip = in.readInt();
+            if (ip < 1 || ip > chunk.size() || !isCheckpoint(chunk.code().get(ip - 1)))
+                throw new IOException("Corrupt DOGI: resume point " + ip + " does not follow a checkpoint");
+            int count = in.readInt();
+            Set<String> modules = new LinkedHashSet<String>();
+            for (int i = 0; i < count; i++)
+                modules.add(readString(in));
+
+            Reader r = new Reader(in, chunk);
+            count = in.readInt();
+            Map<String, Value> globals = new HashMap<String, Value>();
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                globals.put(name, r.value());
+            }
+            return new DogSnapshot(chunk, ip, modules, globals);
+        } catch (EOFException e) {
+            throw new IOException("Corrupt DOGI: truncated");
+        }
+    }
+
+    // Path of every function proto reachable from chunk, as the function indices leading to it.
+    private static Map<FunctionProto, int[]> protoPaths(Chunk chunk) {
+        Map<FunctionProto, int[]> paths = new IdentityHashMap<FunctionProto, int[]>();
+        collect(chunk, new int[0], paths);
+        return paths;
+    }
+
+    private static void collect(Chunk chunk, int[] prefix, Map<FunctionProto, int[]> paths) {
+        List<FunctionProto> fs = chunk.functions();
+        for (int i = 0; i < fs.size(); i++) {
+            int[] path = Arrays.copyOf(prefix, prefix.length + 1);
+            path[prefix.length] = i;
+            paths.put(fs.get(i), path);
+            collect(fs.get(i).body, path, paths);
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<FunctionProto, int[]> protos;
+        private final Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+        private final Map<DogMemo, Integer> memos = new IdentityHashMap<DogMemo, Integer>();
+
+        Writer(DataOutputStream out, Map<FunctionProto, int[]> protos) {
+            this.out = out;
+            this.protos = protos;
+        }
+
+        void value(Value v, String global) throws IOException {
+            Integer id = ids.get(v);
+            if (id != null) {
+                out.writeByte(REF);
+                out.writeInt(id);
+                return;
+            }
+            out.writeByte(v.kind.ordinal());
+            switch (v.kind) {
+                case INT:
+                    out.writeInt(v.intVal);
+                    break;
+                case LONG:
+                    out.writeLong(v.longVal);
+                    break;
+                case DOUBLE:
+                    out.writeDouble(v.doubleVal);
+                    break;
+                case BIGINT: {
+                    byte[] b = v.bigIntVal.toByteArray();
+                    out.writeInt(b.length);
+                    out.write(b);
+                    break;
+                }
+                case STRING:
+                    writeString(out, v.stringVal);
+                    break;
+                case BOOL:
+                    out.writeBoolean(v.boolVal);
+                    break;
+                case NIL:
+                    break;
+                case RANGE:
+                    out.writeLong(v.rangeVal.start);
+                    out.writeLong(v.rangeVal.end);
+                    out.writeLong(v.rangeVal.step);
+                    break;
+                case ARRAY:
+                    ids.put(v, ids.size());
+                    out.writeInt(v.arrayVal.size());
+                    for (Value item : v.arrayVal)
+                        value(item, global);
+                    break;
+                case TYPED_ARRAY: {
+                    ids.put(v, ids.size());
+                    TypedArray a = v.typedVal;
+                    out.writeByte(a.elem.ordinal());
+                    out.writeInt(a.size());
+                    for (int i = 0; i < a.size(); i++) {
+                        if (a.elem == TypedArray.Elem.DOUBLE)
+                            out.writeDouble(a.getDouble(i));
+                        else
+                            out.writeLong(a.getLong(i));
+                    }
+                    break;
+                }
+                case FUNCTION: {
+                    DogMemo memo = v.funcProto.memo;
+                    int[] path = protos.get(memo != null ? v.funcProto.wrapped : v.funcProto);
+                    if (path == null)
+                        throw new IOException("Cannot snapshot '" + global + "': function is not part of the program");
+                    ids.put(v, ids.size());
+                    out.writeInt(path.length);
+                    for (int i : path)
+                        out.writeInt(i);
+                    // -1 for no cache, a memo id seen before, or memos.size() followed by maxEntries for a new one.
+                    Integer memoId = (memo != null) ? memos.get(memo) : Integer.valueOf(-1);
+                    if (memoId != null) {
+                        out.writeInt(memoId);
+                    } else {
+                        memos.put(memo, memos.size());
+                        out.writeInt(memos.size() - 1);
+                        out.writeInt(memo.maxEntries());
+                    }
+                    Map<String, Value> closure = new TreeMap<String, Value>(v.closure);
+                    closure.keySet().removeIf(DogEnv::isTemp);
+                    out.writeInt(closure.size());
+                    for (Map.Entry<String, Value> e : closure.entrySet()) {
+                        writeString(out, e.getKey());
+                        value(e.getValue(), global);
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Cannot snapshot '" + global + "': " + v.kind + " values are not supported");
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final Chunk chunk;
+        private final ArrayList<Value> ids = new ArrayList<Value>();
+        private final ArrayList<DogMemo> memos = new ArrayList<DogMemo>();
+
+        Reader(DataInputStream in, Chunk chunk) {
+            this.in = in;
+            this.chunk = chunk;
+        }
+
+        Value value() throws IOException {
+            int tag = in.readUnsignedByte();
+            if (tag == REF) {
+                int id = in.readInt();
+                if (id < 0 || id >= ids.size())
+                    throw new IOException("Corrupt DOGI: bad reference " + id);
+                return ids.get(id);
+            }
+            if (tag >= Value.Kind.values().length)
+                throw new IOException("Corrupt DOGI: bad value tag " + tag);
+            switch (Value.Kind.values()[tag]) {
+                case INT:
+                    return Value.ofInt(in.readInt());
+                case LONG:
+                    return Value.ofLong(in.readLong());
+                case DOUBLE:
+                    return Value.ofDouble(in.readDouble());
+                case BIGINT: {
+                    byte[] b = new byte[length()];
+                    in.readFully(b);
+                    return Value.ofBigInt(new BigInteger(b));
+                }
+                case STRING:
+                    return Value.str(readString(in));
+                case BOOL:
+                    return Value.bool(in.readBoolean());
+                case NIL:
+                    return Value.nil();
+                case RANGE: {
+                    long start = in.readLong();
+                    long end = in.readLong();
+                    long step = in.readLong();
+                    if (step == 0)
+                        throw new IOException("Corrupt DOGI: zero range step");
+                    return Value.range(new DogRange(start, end, step));
+                }
+                case ARRAY: {
+                    int n = length();
+                    ArrayList<Value> items = new ArrayList<Value>(n);
+                    Value v = Value.arrayOwned(items);
+                    ids.add(v);
+                    for (int i = 0; i < n; i++)
+                        items.add(value());
+                    return v;
+                }
+                case TYPED_ARRAY: {
+                    int elem = in.readUnsignedByte();
+                    if (elem >= TypedArray.Elem.values().length)
+                        throw new IOException("Corrupt DOGI: bad typed array element " + elem);
+                    int n = length();
+                    TypedArray a;
+                    switch (TypedArray.Elem.values()[elem]) {
+                        case INT: {
+                            int[] d = new int[n];
+                            for (int i = 0; i < n; i++)
+                                d[i] = (int) in.readLong();
+                            a = TypedArray.ofInts(d);
+                            break;
+                        }
+                        case LONG: {
+                            long[] d = new long[n];
+                            for (int i = 0; i < n; i++)
+                                d[i] = in.readLong();
+                            a = TypedArray.ofLongs(d);
+                            break;
+                        }
+                        default: {
+                            double[] d = new double[n];
+                            for (int i = 0; i < n; i++)
+                                d[i] = in.readDouble();
+                            a = TypedArray.ofDoubles(d);
+                            break;
+                        }
+                    }
+                    Value v = Value.typedArray(a);
+                    ids.add(v);
+                    return v;
+                }
+                case FUNCTION: {
+                    int depth = length();
+                    Chunk at = chunk;
+                    FunctionProto proto = null;
+                    for (int i = 0; i < depth; i++) {
+                        int index = in.readInt();
+                        if (index < 0 || index >= at.functions().size())
+                            throw new IOException("Corrupt DOGI: bad function path");
+                        proto = at.getFunction(index);
+                        at = proto.body;
+                    }
+                    if (proto == null)
+                        throw new IOException("Corrupt DOGI: empty function path");
+                    int memoId = in.readInt();
+                    if (memoId == memos.size()) {
+                        int max = in.readInt();
+                        if (max < 1)
+                            throw new IOException("Corrupt DOGI: bad memo size " + max);
+                        memos.add(new DogMemo(max));
+                    } else if (memoId < -1 || memoId > memos.size()) {
+                        throw new IOException("Corrupt DOGI: bad memo reference " + memoId);
+                    }
+                    if (memoId >= 0)
+                        proto = FunctionProto.memoized(proto, memos.get(memoId));
+                    Map<String, Value> closure = new HashMap<String, Value>();
+                    Value v = Value.function(proto, closure);
+                    ids.add(v);
+                    int n = length();
+                    for (int i = 0; i < n; i++) {
+                        String name = readString(in);
+                        closure.put(name, value());
+                    }
+                    return v;
+                }
+                default:
+                    throw new IOException("Corrupt DOGI: unexpected " + Value.Kind.values()[tag] + " value");
+            }
+        }
+
+        private int length() throws IOException {
+            int n = in.readInt();
+            if (n < 0 || n > in.available())
+                throw new IOException("Corrupt DOGI: bad length " + n);
+            return n;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > in.available())
+            throw new IOException("Corrupt DOGI: bad string length " + n);
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
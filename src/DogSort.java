@@ -0,0 +1,195 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Ascending in-place sorts behind io.sort and io.sortBy. Elements, or sortBy keys, must be all numbers or all strings.
+// When they share one primitive kind they are sorted as an int[], long[] or double[]; anything else goes through
+// TimSort with a Value comparator, so equal elements keep their order. From PARALLEL_MIN elements on, both paths use
+// Arrays.parallelSort.
+final class DogSort {
+
+    static final int PARALLEL_MIN = 1 << 13;
+    // Longs up to this magnitude convert to double exactly.
+    private static final long EXACT_DOUBLE = 1L << 53;
+
+    private static final Comparator<Value> NUMBERS = DogSort::compareNumbers;
+    private static final Comparator<Value> STRINGS = (a, b) -> a.stringVal.compareTo(b.stringVal);
+
+    private DogSort() {
+    }
+
+    static void sort(Value arr, int line, int col, String fullLine) {
+        if (arr.isTypedArray()) {
+            arr.typedVal.sort();
+            return;
+        }
+        ArrayList<Value> list = arr.arrayVal;
+        int n = list.size();
+        if (n < 2)
+            return;
+        switch (primitiveKind(list)) {
+            case INT: {
+                int[] a = new int[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = list.get(i).intVal;
+                if (n >= PARALLEL_MIN)
+                    Arrays.parallelSort(a);
+                else
+                    Arrays.sort(a);
+                for (int i = 0; i < n; i++)
+                    list.set(i, Value.ofInt(a[i]));
+                return;
+            }
+            case LONG: {
+                long[] a = new long[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = list.get(i).longVal;
+                if (n >= PARALLEL_MIN)
+                    Arrays.parallelSort(a);
+                else
+                    Arrays.sort(a);
+                for (int i = 0; i < n; i++)
+                    list.set(i, Value.ofLong(a[i]));
+                return;
+            }
+            case DOUBLE: {
+                double[] a = new double[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = list.get(i).doubleVal;
+                if (n >= PARALLEL_MIN)
+                    Arrays.parallelSort(a);
+                else
+                    Arrays.sort(a);
+                for (int i = 0; i < n; i++)
+                    list.set(i, Value.ofDouble(a[i]));
+                return;
+            }
+            default: {
+                Value[] a = list.toArray(new Value[n]);
+                sortObjects(a, comparator(a, "io.sort(arr): elements", line, col, fullLine));
+                for (int i = 0; i < n; i++)
+                    list.set(i, a[i]);
+            }
+        }
+    }
+
+    // Orders arr by key(element), calling key once per element.
+    static void sortBy(Value arr, Value key, DogContext ctx, int line, int col, String fullLine) {
+        int n = arr.isTypedArray() ? arr.typedVal.size() : arr.arrayVal.size();
+        if (n < 2)
+            return;
+        Value[] elems = new Value[n];
+        Value[] keys = new Value[n];
+        for (int i = 0; i < n; i++) {
+            elems[i] = arr.isTypedArray() ? arr.typedVal.get(i) : arr.arrayVal.get(i);
+            keys[i] = ctx.callFunction(key, Collections.singletonList(elems[i]), line, col, fullLine);
+        }
+
+        int[] order = new int[n];
+        if (primitiveKind(Arrays.asList(keys)) == Value.Kind.INT) {
+            // Signed int key in the high half, index in the low half: the index breaks ties, which keeps the sort
+            // stable. Both halves are exact only for 32-bit keys and 0 <= i < 2^32, so other keys take the boxed
+            // path below and the index is masked rather than sign-extended.
+            long[] packed = new long[n];
+            for (int i = 0; i < n; i++)
+                packed[i] = ((long) keys[i].intVal << 32) | (i & 0xFFFFFFFFL);
+            if (n >= PARALLEL_MIN)
+                Arrays.parallelSort(packed);
+            else
+                Arrays.sort(packed);
+            for (int i = 0; i < n; i++)
+                order[i] = (int) packed[i];
+        } else {
+            Comparator<Value> cmp = comparator(keys, "io.sortBy(arr, key): keys", line, col, fullLine);
+            Integer[] boxed = new Integer[n];
+            for (int i = 0; i < n; i++)
+                boxed[i] = i;
+            sortObjects(boxed, (i, j) -> cmp.compare(keys[i], keys[j]));
+            for (int i = 0; i < n; i++)
+                order[i] = boxed[i];
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (arr.isTypedArray())
+                arr.typedVal.set(i, elems[order[i]]);
+            else
+                arr.arrayVal.set(i, elems[order[i]]);
+        }
+    }
+
+    // The kind every value shares if it is INT, LONG or DOUBLE; NIL otherwise.
+    private static Value.Kind primitiveKind(List<Value> values) {
+        Value first = values.get(0);
+        if (first == null || (first.kind != Value.Kind.INT && first.kind != Value.Kind.LONG
+                && first.kind != Value.Kind.DOUBLE))
+            return Value.Kind.NIL;
+        for (Value v : values) {
+            if (v == null || v.kind != first.kind)
+                return Value.Kind.NIL;
+        }
+        return first.kind;
+    }
+
+    private static Comparator<Value> comparator(Value[] values, String what, int line, int col, String fullLine) {
+        boolean numbers = true;
+        boolean strings = true;
+        for (Value v : values) {
+            numbers &= v != null && v.isNumber();
+            strings &= v != null && v.isString();
+        }
+        if (numbers)
+            return NUMBERS;
+        if (strings)
+            return STRINGS;
+        throw DogException.at(line, col, fullLine, what + " must be all numbers or all strings");
+    }
+
+    // Exact for every pair, which keeps the order transitive: comparing a long above 2^53 with a double through
+    // doubles can call two different longs both equal to it. INT and LONG compare as longs, pairs without a DOUBLE go
+    // through DogOps.numCompare (BigInteger), and a DOUBLE against an integer compares as BigDecimal unless the
+    // integer is a long that a double holds exactly. NaN sorts last; -0.0 equals 0.
+    private static int compareNumbers(Value a, Value b) {
+        boolean da = a.kind == Value.Kind.DOUBLE;
+        boolean db = b.kind == Value.Kind.DOUBLE;
+        if (!da && !db) {
+            if (fitsLong(a) && fitsLong(b))
+                return Long.compare(a.toLong(), b.toLong());
+            return DogOps.numCompare(a, b);
+        }
+        if (da && db)
+            return compareDoubles(a.doubleVal, b.doubleVal);
+        return da ? -compareToDouble(b, a.doubleVal) : compareToDouble(a, b.doubleVal);
+    }
+
+    private static int compareDoubles(double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y))
+            return Boolean.compare(Double.isNaN(x), Double.isNaN(y));
+        return x < y ? -1 : (x > y ? 1 : 0);
+    }
+
+    // v is an INT, LONG or BIGINT.
+    private static int compareToDouble(Value v, double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            return d > 0 || Double.isNaN(d) ? -1 : 1;
+        if (fitsLong(v)) {
+            long l = v.toLong();
+            if (Math.abs(l) <= EXACT_DOUBLE)
+                return compareDoubles(l, d);
+        }
+        return new BigDecimal(v.toBigInteger()).compareTo(new BigDecimal(d));
+    }
+
+    private static boolean fitsLong(Value v) {
+        return v.kind == Value.Kind.INT || v.kind == Value.Kind.LONG;
+    }
+
+    private static <T> void sortObjects(T[] a, Comparator<? super T> cmp) {
+        if (a.length >= PARALLEL_MIN)
+            Arrays.parallelSort(a, cmp);
+        else
+            Arrays.sort(a, cmp);
+    }
+}
@@ -0,0 +1,45 @@
+public final class DogToken {
+
+    public enum Type {
+        IDENT, NUMBER, STRING, OP, NEWLINE, EOF
+    }
+
+    public final Type type;
+    public final String text;
+    public final int line;
+    public final int col;
+    public final String sourceLine;
+
+    public DogToken(Type type, String text, int line, int col, String sourceLine) {
+        this.type = type;
+        this.text = text;
+        this.line = line;
+        this.col = col;
+        this.sourceLine = sourceLine;
+    }
+
+    public boolean is(String op) {
+        return type == Type.OP && text.equals(op);
+    }
+
+    public boolean isWord(String word) {
+        return type == Type.IDENT && text.equals(word);
+    }
+
+    public boolean isEnd() {
+        return type == Type.NEWLINE || type == Type.EOF;
+    }
+
+    public String describe() {
+        switch (type) {
+            case NEWLINE:
+                return "end of line";
+            case EOF:
+                return "end of file";
+            case STRING:
+                return "\"" + text + "\"";
+            default:
+                return text;
+        }
+    }
+}
@@ -1,39 +1,59 @@
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public final class DogVM {
+public final class DogVM implements DogEngine {
 
     private final ArrayList<Value> stack = new ArrayList<Value>();
-    private final Map<String, Value> globals = new HashMap<String, Value>();
+    private final DogEnv env = new DogEnv();
+    private long dispatched = 0;
+    private boolean stopAtCheckpoint = false;
+    private int checkpointIp = -1;
 
-    private static final class Frame {
-        final Map<String, Value> locals = new HashMap<>();
-        final Map<String, Value> closure;
-        final int stackBase;
+    @Override
+    public Map<String, Value> globals() {
+        return env.globals();
+    }
 
-        Frame(Map<String, Value> closure, int stackBase) {
-            this.closure = (closure == null) ? new HashMap<>() : closure;
-            this.stackBase = stackBase;
-        }
+    @Override
+    public long dispatchCount() {
+        return dispatched;
     }
 
-    private final ArrayList<Frame> frames = new ArrayList<>();
+    @Override
+    public void execute(Chunk chunk, DogContext ctx) {
+        executeChunk(chunk, ctx, false, 0, 0);
+    }
 
-    public Map<String, Value> globals() {
-        return globals;
+    // Runs the top level of chunk until a sys.checkpoint() call and returns the index to resume at, or -1 if the
+    // program finished without reaching one.
+    public int executeToCheckpoint(Chunk chunk, DogContext ctx) {
+        stopAtCheckpoint = true;
+        try {
+            executeChunk(chunk, ctx, false, 0, 0);
+        } finally {
+            stopAtCheckpoint = false;
+        }
+        return checkpointIp;
     }
 
-    public void execute(Chunk chunk, DogContext ctx) {
-        executeChunk(chunk, ctx, false, null);
+    // Continues the top level of chunk at ip, with the checkpoint's nil result on the stack; see DogSnapshot.
+    public void resume(Chunk chunk, DogContext ctx, int ip) {
+        stack.add(Value.nil());
+        executeChunk(chunk, ctx, false, 0, ip);
     }
 
-    private Value executeChunk(Chunk chunk, DogContext ctx, boolean isFunction, Frame frame) {
+    private Value executeChunk(Chunk chunk, DogContext ctx, boolean isFunction, int stackBase, int startIp) {
+        DogLinker.link(chunk, ctx.registry());
+        if (!isFunction)
+            ctx.bindInvoker((fn, args) -> callUserFunction(fn.funcProto, fn.closure, args, ctx, null));
         List<Instruction> code = chunk.code();
-        for (int ip = 0; ip < code.size(); ip++) {
+        // DogVerifier has already proven jumps, stack depth, function indices and counts for a verified chunk.
+        boolean checked = !chunk.isVerified();
+        for (int ip = startIp; ip < code.size(); ip++) {
             Instruction ins = code.get(ip);
+            dispatched++;
             try {
                 switch (ins.op) {
                     case CONST_INT:
@@ -60,23 +80,21 @@ public final class DogVM {
                         stack.add(Value.nil());
                         break;
                     case CONST_FUNC: {
-                        if (ins.funcIndex < 0 || ins.funcIndex >= chunk.functions().size()) {
+                        if (checked && (ins.funcIndex < 0 || ins.funcIndex >= chunk.functions().size())) {
                             throw DogException.at(ins.line, ins.col, ins.sourceLine,
                                     "Bad function index: " + ins.funcIndex);
                         }
                         FunctionProto proto = chunk.getFunction(ins.funcIndex);
-                        Map<String, Value> cap = captureEnvSnapshot();
+                        Map<String, Value> cap = env.snapshot();
                         stack.add(Value.function(proto, cap));
                         break;
                     }
                     case CALL_VALUE: {
                         int n = ins.argCount;
-                        if (n < 0)
+                        if (checked && n < 0)
                             throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad CALL_VALUE argCount");
-                        ArrayList<Value> args = new ArrayList<>(n);
-                        for (int i = 0; i < n; i++)
-                            args.add(0, pop(ins));
-                        Value callee = pop(ins);
+                        ArrayList<Value> args = popN(n, ins, checked);
+                        Value callee = pop(ins, checked);
                         if (callee == null || !callee.isFunction()) {
                             throw DogException.at(ins.line, ins.col, ins.sourceLine,
                                     "Trying to call non-function: " + (callee == null ? "null" : callee.kind));
@@ -89,198 +107,190 @@ public final class DogVM {
                         if (!isFunction) {
                             throw DogException.at(ins.line, ins.col, ins.sourceLine, "RETURN outside of function");
                         }
-                        Value r = (stack.size() > frame.stackBase) ? pop(ins) : Value.nil();
-                        while (stack.size() > frame.stackBase)
+                        Value r = (stack.size() > stackBase) ? pop(ins, checked) : Value.nil();
+                        while (stack.size() > stackBase)
                             stack.remove(stack.size() - 1);
                         return r;
                     }
                     case ARRAY_NEW: {
                         int n = ins.argCount;
-                        if (n < 0)
+                        if (checked && n < 0)
                             throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad ARRAY_NEW count");
-                        ArrayList<Value> items = new ArrayList<Value>(n);
-                        for (int i = 0; i < n; i++)
-                            items.add(0, pop(ins));
-                        stack.add(Value.array(items));
+                        stack.add(Value.arrayOwned(popN(n, ins, checked)));
                         break;
                     }
                     case ARRAY_GET: {
-                        Value idxV = pop(ins);
-                        Value arrV = pop(ins);
-                        if (!arrV.isArray()) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Indexing works only for arrays");
-                        }
-                        int idx = requireIndexInt(idxV, ins);
-                        if (idx < 0 || idx >= arrV.arrayVal.size()) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
-                                    "Array index out of range: " + idx);
-                        }
-                        stack.add(arrV.arrayVal.get(idx));
+                        Value idxV = pop(ins, checked);
+                        Value arrV = pop(ins, checked);
+                        stack.add(DogOps.arrayGet(arrV, idxV, ins));
                         break;
                     }
                     case ARRAY_SET: {
-                        Value value = pop(ins);
-                        Value idxV = pop(ins);
-                        Value arrV = pop(ins);
-                        if (!arrV.isArray()) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Indexing works only for arrays");
-                        }
-                        int idx = requireIndexInt(idxV, ins);
-                        if (idx < 0) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
-                                    "Array index out of range: " + idx);
-                        }
-                        while (idx >= arrV.arrayVal.size())
-                            arrV.arrayVal.add(Value.nil());
-                        arrV.arrayVal.set(idx, value);
+                        Value value = pop(ins, checked);
+                        Value idxV = pop(ins, checked);
+                        Value arrV = pop(ins, checked);
+                        DogOps.arraySet(arrV, idxV, value, ins);
                         stack.add(value);
                         break;
                     }
-                    case ADD: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        if (a.isString() || b.isString()) {
-                            stack.add(Value.str(a.printable() + b.printable()));
-                            break;
-                        }
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(numAdd(a, b));
+                    case ADD:
+                    case SUB:
+                    case MUL:
+                    case DIV:
+                    case EQ:
+                    case NEQ:
+                    case LT:
+                    case GT:
+                    case LE:
+                    case GE: {
+                        Value b = pop(ins, checked);
+                        Value a = pop(ins, checked);
+                        stack.add(DogOps.binary(ins.op, a, b, ins));
                         break;
                     }
-                    case SUB: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(numSub(a, b));
+                    case NOT: {
+                        Value a = pop(ins, checked);
+                        stack.add(Value.bool(!DogOps.isTruthy(a)));
                         break;
                     }
-                    case MUL: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(numMul(a, b));
+                    case LOAD:
+                        stack.add(env.require(ins.name, ins));
                         break;
-                    }
-                    case DIV: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(Value.ofDouble(a.toDouble() / b.toDouble()));
+                    case STORE:
+                        env.store(ins.name, pop(ins, checked));
                         break;
-                    }
-                    case NOT: {
-                        Value a = pop(ins);
-                        stack.add(Value.bool(!isTruthy(a)));
+                    case STORE_KEEP:
+                        env.store(ins.name, peek(ins, checked));
                         break;
-                    }
-                    case EQ: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        stack.add(Value.bool(isEqual(a, b)));
+                    case IMPORT: {
+                        ctx.importModule(ins.module, ins.line, ins.col, ins.sourceLine);
                         break;
                     }
-                    case NEQ: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        stack.add(Value.bool(!isEqual(a, b)));
+                    case CALL: {
+                        if (checked && ins.argCount < 0) {
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad CALL argCount");
+                        }
+                        if (stopAtCheckpoint && DogSnapshot.isCheckpoint(ins)) {
+                            if (isFunction || !stack.isEmpty()) {
+                                throw DogException.at(ins.line, ins.col, ins.sourceLine,
+                                        "sys.checkpoint() must be called at the top level, outside for loops");
+                            }
+                            checkpointIp = ip + 1;
+                            return Value.nil();
+                        }
+                        DogFunction fn = DogOps.linkedFunction(ctx, ins);
+                        Value r;
+                        switch (fn == null ? -1 : ins.argCount) {
+                            case 0:
+                                r = fn.call0(ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            case 1:
+                                r = fn.call1(pop(ins, checked), ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            case 2: {
+                                Value b = pop(ins, checked);
+                                r = fn.call2(pop(ins, checked), b, ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            }
+                            case 3: {
+                                Value c = pop(ins, checked);
+                                Value b = pop(ins, checked);
+                                r = fn.call3(pop(ins, checked), b, c, ctx, ins.line, ins.col, ins.sourceLine);
+                                break;
+                            }
+                            default:
+                                r = DogOps.callModule(ctx, ins, ins.isConst ? null : popN(ins.argCount, ins, checked));
+                        }
+                        stack.add(r);
                         break;
                     }
-                    case LT: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(Value.bool(numCompare(a, b) < 0));
+                    case JUMP:
+                        if (checked)
+                            checkJump(ins.jumpTarget, code.size(), ins);
+                        ip = ins.jumpTarget - 1;
                         break;
-                    }
-                    case GT: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(Value.bool(numCompare(a, b) > 0));
+                    case JUMP_IF_FALSE: {
+                        Value cond = pop(ins, checked);
+                        if (!DogOps.isTruthy(cond)) {
+                            if (checked)
+                                checkJump(ins.jumpTarget, code.size(), ins);
+                            ip = ins.jumpTarget - 1;
+                        }
                         break;
                     }
-                    case LE: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(Value.bool(numCompare(a, b) <= 0));
+                    case RANGE: {
+                        int n = ins.argCount;
+                        if (checked && (n < 1 || n > 3))
+                            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad RANGE argCount");
+                        stack.add(DogOps.range(popN(n, ins, checked), ins));
                         break;
                     }
-                    case GE: {
-                        Value b = pop(ins);
-                        Value a = pop(ins);
-                        requireNumber(a, ins);
-                        requireNumber(b, ins);
-                        stack.add(Value.bool(numCompare(a, b) >= 0));
+                    case ITER_INIT:
+                        stack.add(DogOps.iterate(pop(ins, checked), ins));
                         break;
-                    }
-                    case LOAD: {
-                        Value v = loadVar(ins.name);
-                        if (v == null) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
-                                    "Undefined variable '" + ins.name + "'");
+                    case ITER_NEXT: {
+                        DogIterator it = peekIterator(ins);
+                        if (it.hasNext()) {
+                            env.store(ins.name, it.next());
+                        } else {
+                            pop(ins, checked);
+                            if (checked)
+                                checkJump(ins.jumpTarget, code.size(), ins);
+                            ip = ins.jumpTarget - 1;
                         }
-                        stack.add(v);
                         break;
                     }
-                    case STORE: {
-                        Value v = pop(ins);
-                        storeVar(ins.name, v);
+                    case RANGE_NEXT: {
+                        DogIterator it = peekIterator(ins);
+                        if (it.remaining != 0L) {
+                            env.store(ins.name, it.nextInRange());
+                        } else {
+                            pop(ins, checked);
+                            if (checked)
+                                checkJump(ins.jumpTarget, code.size(), ins);
+                            ip = ins.jumpTarget - 1;
+                        }
                         break;
                     }
-                    case IMPORT: {
-                        ctx.importModule(ins.module, ins.line, ins.col, ins.sourceLine);
+                    case ADD_VAR:
+                    case SUB_VAR:
+                    case MUL_VAR: {
+                        Value rhs = pop(ins, checked);
+                        Map<String, Value> scope = env.scopeOf(ins.name, ins);
+                        env.writeScope(scope, ins.name, DogOps.combine(ins.op, scope.get(ins.name), rhs, ins));
                         break;
                     }
-                    case CALL: {
-                        ctx.requireImported(ins.module, ins.line, ins.col, ins.sourceLine);
-                        DogModule m = ctx.registry().get(ins.module);
-                        if (m == null) {
-                            throw DogException.at(ins.line, ins.col, ins.sourceLine,
-                                    "Unknown module: " + ins.module);
-                        }
-                        if (ins.isConst) {
-                            Value v = m.getConstant(ins.member, ctx, ins.line, ins.col, ins.sourceLine);
-                            stack.add(v);
-                        } else {
-                            int n = ins.argCount;
-                            if (n < 0) {
-                                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Bad CALL argCount");
-                            }
-                            ArrayList<Value> args = new ArrayList<Value>(n);
-                            for (int i = 0; i < n; i++)
-                                args.add(0, pop(ins));
-                            Value ret = m.call(ins.member, args, ctx, ins.line, ins.col, ins.sourceLine);
-                            stack.add(ret);
-                        }
+                    case INC_VAR: {
+                        Map<String, Value> scope = env.scopeOf(ins.name, ins);
+                        int delta = ins.intVal != null ? ins.intVal.intValue() : 1;
+                        env.writeScope(scope, ins.name, DogOps.increment(scope.get(ins.name), delta, ins));
                         break;
                     }
-                    case JUMP:
-                        checkJump(ins.jumpTarget, code.size(), ins);
-                        ip = ins.jumpTarget - 1;
+                    case ARRAY_ADD:
+                    case ARRAY_SUB:
+                    case ARRAY_MUL: {
+                        Value rhs = pop(ins, checked);
+                        Value idxV = pop(ins, checked);
+                        Value arrV = pop(ins, checked);
+                        DogOps.arrayUpdate(arrV, idxV, rhs, ins);
                         break;
-                    case JUMP_IF_FALSE: {
-                        Value cond = pop(ins);
-                        if (!isTruthy(cond)) {
-                            checkJump(ins.jumpTarget, code.size(), ins);
+                    }
+                    case JUMP_IF_TRUE: {
+                        Value cond = pop(ins, checked);
+                        if (DogOps.isTruthy(cond)) {
+                            if (checked)
+                                checkJump(ins.jumpTarget, code.size(), ins);
                             ip = ins.jumpTarget - 1;
                         }
                         break;
                     }
                     case PRINT: {
-                        Value v = pop(ins);
+                        Value v = pop(ins, checked);
                         System.out.println(v.printable());
                         break;
                     }
                     case POP:
-                        pop(ins);
+                        pop(ins, checked);
                         break;
                     default:
                         throw DogException.at(ins.line, ins.col, ins.sourceLine,
@@ -301,90 +311,59 @@ public final class DogVM {
             List<Value> args,
             DogContext ctx,
             Instruction callIns) {
-        int base = stack.size();
-        Frame frame = new Frame(new HashMap<>(closure), base);
-        frames.add(frame);
-        for (int i = 0; i < proto.params.size(); i++) {
-            String p = proto.params.get(i);
-            Value v = (i < args.size()) ? args.get(i) : Value.nil();
-            frame.locals.put(p, v);
+        DogMemo.Key key = null;
+        if (proto.memo != null) {
+            key = new DogMemo.Key(args);
+            Value hit = proto.memo.lookup(key);
+            if (hit != null)
+                return hit;
         }
+        int base = stack.size();
+        env.enter(closure, proto.params, args);
         try {
-            return executeChunk(proto.body, ctx, true, frame);
+            Value r = executeChunk(proto.body, ctx, true, base, 0);
+            if (key != null)
+                proto.memo.store(key, r);
+            return r;
         } finally {
             while (stack.size() > base)
                 stack.remove(stack.size() - 1);
-            frames.remove(frames.size() - 1);
-        }
-    }
-
-    private Map<String, Value> captureEnvSnapshot() {
-        HashMap<String, Value> env = new HashMap<>();
-        env.putAll(globals);
-        for (int i = 0; i < frames.size(); i++) {
-            Frame f = frames.get(i);
-            env.putAll(f.closure);
-            env.putAll(f.locals);
-        }
-        return env;
-    }
-
-    private Value loadVar(String name) {
-        for (int i = frames.size() - 1; i >= 0; i--) {
-            Frame f = frames.get(i);
-            if (f.locals.containsKey(name))
-                return f.locals.get(name);
-            if (f.closure.containsKey(name))
-                return f.closure.get(name);
+            env.leave();
         }
-        return globals.get(name);
     }
 
-    private void storeVar(String name, Value v) {
-        if (frames.isEmpty()) {
-            globals.put(name, v);
-            return;
-        }
-        for (int i = frames.size() - 1; i >= 0; i--) {
-            Frame f = frames.get(i);
-            if (f.locals.containsKey(name)) {
-                f.locals.put(name, v);
-                return;
-            }
-            if (f.closure.containsKey(name)) {
-                f.closure.put(name, v);
-                return;
-            }
+    private Value pop(Instruction ins, boolean checked) {
+        if (checked && stack.isEmpty()) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Stack underflow");
         }
-        frames.get(frames.size() - 1).locals.put(name, v);
+        return stack.remove(stack.size() - 1);
     }
 
-    private Value pop(Instruction ins) {
-        if (stack.isEmpty()) {
+    private Value peek(Instruction ins, boolean checked) {
+        if (checked && stack.isEmpty()) {
             throw DogException.at(ins.line, ins.col, ins.sourceLine, "Stack underflow");
         }
-        return stack.remove(stack.size() - 1);
+        return stack.get(stack.size() - 1);
     }
 
-    private void requireNumber(Value v, Instruction ins) {
-        if (v == null || !v.isNumber()) {
-            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Expected number");
+    private ArrayList<Value> popN(int n, Instruction ins, boolean checked) {
+        int size = stack.size();
+        if (checked && n > size) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Stack underflow");
         }
+        int base = size - n;
+        List<Value> window = stack.subList(base, size);
+        ArrayList<Value> out = new ArrayList<Value>(window);
+        window.clear();
+        return out;
     }
 
-    private int requireIndexInt(Value v, Instruction ins) {
-        if (v == null || !v.isNumber()) {
-            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index must be a number");
+    private DogIterator peekIterator(Instruction ins) {
+        Value top = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+        if (top == null || top.kind != Value.Kind.ITERATOR) {
+            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Expected iterator on stack");
         }
-        double d = v.toDouble();
-        if (d != Math.rint(d)) {
-            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index must be an integer");
-        }
-        long L = (long) d;
-        if (L < Integer.MIN_VALUE || L > Integer.MAX_VALUE) {
-            throw DogException.at(ins.line, ins.col, ins.sourceLine, "Array index is too large");
-        }
-        return (int) L;
+        return top.iterVal;
     }
 
     private void checkJump(int target, int size, Instruction ins) {
@@ -393,84 +372,4 @@ public final class DogVM {
                     "Bad jump target: " + target + " (code size=" + size + ")");
         }
     }
-
-    private boolean isTruthy(Value v) {
-        if (v == null)
-            return false;
-        if (v.isNil())
-            return false;
-        if (v.isBool())
-            return v.boolVal;
-        if (v.isString())
-            return v.stringVal != null && !v.stringVal.isEmpty();
-        if (v.isArray())
-            return true;
-        if (v.isFunction())
-            return true;
-        if (v.isNumber()) {
-            if (v.kind == Value.Kind.DOUBLE)
-                return v.doubleVal != 0.0;
-            if (v.kind == Value.Kind.INT)
-                return v.intVal != 0;
-            if (v.kind == Value.Kind.LONG)
-                return v.longVal != 0L;
-            if (v.kind == Value.Kind.BIGINT)
-                return !v.bigIntVal.equals(BigInteger.ZERO);
-        }
-        return true;
-    }
-
-    private boolean isEqual(Value a, Value b) {
-        if (a == null && b == null)
-            return true;
-        if (a == null || b == null)
-            return false;
-        if (a.isNil() && b.isNil())
-            return true;
-        if (a.isNumber() && b.isNumber()) {
-            if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
-                return Double.compare(a.toDouble(), b.toDouble()) == 0;
-            }
-            return a.toBigInteger().equals(b.toBigInteger());
-        }
-        if (a.kind != b.kind)
-            return false;
-        if (a.isString())
-            return a.stringVal.equals(b.stringVal);
-        if (a.isBool())
-            return a.boolVal == b.boolVal;
-        if (a.isArray())
-            return a.arrayVal == b.arrayVal;
-        if (a.isFunction())
-            return a.funcProto == b.funcProto;
-        return false;
-    }
-
-    private int numCompare(Value a, Value b) {
-        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
-            return Double.compare(a.toDouble(), b.toDouble());
-        }
-        return a.toBigInteger().compareTo(b.toBigInteger());
-    }
-
-    private Value numAdd(Value a, Value b) {
-        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
-            return Value.ofDouble(a.toDouble() + b.toDouble());
-        }
-        return Value.fromBigInteger(a.toBigInteger().add(b.toBigInteger()));
-    }
-
-    private Value numSub(Value a, Value b) {
-        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
-            return Value.ofDouble(a.toDouble() - b.toDouble());
-        }
-        return Value.fromBigInteger(a.toBigInteger().subtract(b.toBigInteger()));
-    }
-
-    private Value numMul(Value a, Value b) {
-        if (a.kind == Value.Kind.DOUBLE || b.kind == Value.Kind.DOUBLE) {
-            return Value.ofDouble(a.toDouble() * b.toDouble());
-        }
-        return Value.fromBigInteger(a.toBigInteger().multiply(b.toBigInteger()));
-    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Load-time bytecode verification. A chunk passes when every jump lands inside it, every path reaches each
+// instruction with the same stack depth and never pops below its own frame, function indices resolve, and counts and
+// names carried by instructions are well formed. DogVM runs verified chunks without re-checking those per instruction.
+public final class DogVerifier {
+
+    private DogVerifier() {
+    }
+
+    // Verifies chunk and every loaded function body below it, marking each one that passes. Bodies that are still
+    // deferred are verified by their loader.
+    public static void verifyAll(Chunk chunk) {
+        if (!chunk.isLoaded())
+            return;
+        verify(chunk);
+        for (FunctionProto fp : chunk.functions())
+            verifyAll(fp.body);
+    }
+
+    // Returns null and marks the chunk verified, or describes the first problem; the chunk then keeps running with
+    // full runtime checks.
+    public static String verify(Chunk chunk) {
+        String problem = check(chunk);
+        if (problem == null)
+            chunk.markVerified();
+        else
+            DogLog.debug("VERIFY", problem);
+        return problem;
+    }
+
+    private static String check(Chunk chunk) {
+        List<Instruction> code = chunk.code();
+        int n = code.size();
+        int functions = chunk.functions().size();
+        int[] depth = new int[n + 1];
+        Arrays.fill(depth, -1);
+        ArrayList<Integer> work = new ArrayList<Integer>();
+        depth[0] = 0;
+        work.add(0);
+        while (!work.isEmpty()) {
+            int i = work.remove(work.size() - 1);
+            if (i == n)
+                continue;
+            Instruction ins = code.get(i);
+            String bad = operands(ins, functions);
+            if (bad != null)
+                return at(i, ins, bad);
+            if (depth[i] < ins.pops())
+                return at(i, ins, "stack underflow (depth " + depth[i] + ")");
+            int d = depth[i] - ins.pops() + ins.pushes();
+            if (ins.isJump()) {
+                if (ins.jumpTarget < 0 || ins.jumpTarget > n)
+                    return at(i, ins, "jump target " + ins.jumpTarget + " outside 0.." + n);
+                boolean exits = ins.op == OpCode.ITER_NEXT || ins.op == OpCode.RANGE_NEXT;
+                if (exits && depth[i] < 1)
+                    return at(i, ins, "no iterator on stack");
+                if (!merge(depth, work, ins.jumpTarget, exits ? d - 1 : d))
+                    return at(i, ins, "inconsistent stack depth at " + ins.jumpTarget);
+            }
+            if (ins.op == OpCode.JUMP || ins.op == OpCode.RETURN)
+                continue;
+            if (!merge(depth, work, i + 1, d))
+                return at(i, ins, "inconsistent stack depth at " + (i + 1));
+        }
+        return null;
+    }
+
+    private static String operands(Instruction ins, int functions) {
+        switch (ins.op) {
+            case CONST_FUNC:
+                return ins.funcIndex >= 0 && ins.funcIndex < functions ? null : "bad function index " + ins.funcIndex;
+            case CALL_VALUE:
+            case ARRAY_NEW:
+                return ins.argCount >= 0 ? null : "negative argument count";
+            case RANGE:
+                return ins.argCount >= 1 && ins.argCount <= 3 ? null : "RANGE takes 1 to 3 arguments";
+            case CALL:
+                if (ins.module == null || ins.member == null)
+                    return "missing module member";
+                return ins.isConst || ins.argCount >= 0 ? null : "negative argument count";
+            case IMPORT:
+                return ins.module != null ? null : "missing module";
+            case LOAD:
+            case STORE:
+            case STORE_KEEP:
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+            case INC_VAR:
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                return ins.name != null ? null : "missing variable name";
+            default:
+                return null;
+        }
+    }
+
+    private static boolean merge(int[] depth, ArrayList<Integer> work, int to, int d) {
+        if (depth[to] == -1) {
+            depth[to] = d;
+            work.add(to);
+            return true;
+        }
+        return depth[to] == d;
+    }
+
+    private static String at(int index, Instruction ins, String problem) {
+        return "Unverified chunk: " + ins.op + " at " + index + " (line " + ins.line + "): " + problem;
+    }
+}
@@ -4,11 +4,27 @@ import java.util.List;
 public final class FunctionProto {
     public final ArrayList<String> params;
     public final Chunk body;
+    // Result cache of a memo.wrap function; null for ordinary functions.
+    public final DogMemo memo;
+    // The program's own proto behind a memo.wrap function, which is what snapshots record; null otherwise.
+    public final FunctionProto wrapped;
 
     public FunctionProto(List<String> params, Chunk body) {
+        this(params, body, null, null);
+    }
+
+    private FunctionProto(List<String> params, Chunk body, DogMemo memo, FunctionProto wrapped) {
         this.params = new ArrayList<>();
         if (params != null)
             this.params.addAll(params);
         this.body = (body == null) ? new Chunk() : body;
+        this.memo = memo;
+        this.wrapped = wrapped;
+    }
+
+    // f with calls going through memo; wrapping a memo.wrap function again replaces its cache.
+    public static FunctionProto memoized(FunctionProto f, DogMemo memo) {
+        FunctionProto base = (f.wrapped != null) ? f.wrapped : f;
+        return new FunctionProto(base.params, base.body, memo, base);
     }
-}
\ No newline at end of file
+}
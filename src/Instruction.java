@@ -12,6 +12,9 @@ public final class Instruction {
     public final boolean isConst;
     public final int funcIndex;
     public int jumpTarget;
+    // Set by DogLinker on CALL: the module's id in the linked ModuleRegistry and the member's resolved handle.
+    public int moduleId = -1;
+    public DogFunction function;
     public final int line;
     public final int col;
     public final String sourceLine;
@@ -51,6 +54,105 @@ public final class Instruction {
         this.sourceLine = sourceLine;
     }
 
+    public boolean isJump() {
+        switch (op) {
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Stack effect on fall-through; ITER_NEXT and RANGE_NEXT drop their iterator only when they jump out.
+    public int pops() {
+        switch (op) {
+            case CALL_VALUE:
+                return argCount + 1;
+            case ARRAY_NEW:
+            case RANGE:
+                return argCount;
+            case CALL:
+                return isConst ? 0 : argCount;
+            case ARRAY_SET:
+            case ARRAY_ADD:
+            case ARRAY_SUB:
+            case ARRAY_MUL:
+                return 3;
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case EQ:
+            case NEQ:
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+            case ARRAY_GET:
+                return 2;
+            case RETURN:
+            case NOT:
+            case STORE:
+            case STORE_KEEP:
+            case PRINT:
+            case POP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+            case ITER_INIT:
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    public int pushes() {
+        switch (op) {
+            case CONST_INT:
+            case CONST_LONG:
+            case CONST_DOUBLE:
+            case CONST_BIGINT:
+            case CONST_STR:
+            case CONST_BOOL:
+            case CONST_NIL:
+            case CONST_FUNC:
+            case CALL_VALUE:
+            case ARRAY_NEW:
+            case ARRAY_GET:
+            case ARRAY_SET:
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case NOT:
+            case EQ:
+            case NEQ:
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+            case LOAD:
+            case STORE_KEEP:
+            case CALL:
+            case RANGE:
+            case ITER_INIT:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    public Instruction withTarget(int target) {
+        return new Instruction(op, intVal, longVal, doubleVal, text, boolVal, name, module, member, argCount, isConst,
+                funcIndex, target, line, col, sourceLine);
+    }
+
     public static Instruction constInt(int n, int line, int col, String src) {
         return new Instruction(OpCode.CONST_INT, n, null, null, null, null, null, null, null, 0, false, -1, -1, line,
                 col, src);
@@ -130,6 +232,11 @@ public final class Instruction {
                 src);
     }
 
+    public static Instruction storeKeep(String var, int line, int col, String src) {
+        return new Instruction(OpCode.STORE_KEEP, null, null, null, null, null, var, null, null, 0, false, -1, -1, line,
+                col, src);
+    }
+
     public static Instruction importMod(String module, int line, int col, String src) {
         return new Instruction(OpCode.IMPORT, null, null, null, null, null, null, module, null, 0, false, -1, -1, line,
                 col, src);
@@ -150,4 +257,28 @@ public final class Instruction {
         return new Instruction(OpCode.JUMP_IF_FALSE, null, null, null, null, null, null, null, null, 0, false, -1,
                 target, line, col, src);
     }
+
+    public static Instruction jumpIfTrue(int target, int line, int col, String src) {
+        return new Instruction(OpCode.JUMP_IF_TRUE, null, null, null, null, null, null, null, null, 0, false, -1,
+                target, line, col, src);
+    }
+
+    public static Instruction range(int argCount, int line, int col, String src) {
+        return new Instruction(OpCode.RANGE, null, null, null, null, null, null, null, null, argCount, false, -1, -1,
+                line, col, src);
+    }
+
+    public static Instruction iterNext(OpCode op, String var, int target, int line, int col, String src) {
+        return new Instruction(op, null, null, null, null, null, var, null, null, 0, false, -1, target, line, col,
+                src);
+    }
+
+    public static Instruction updateVar(OpCode op, String var, int line, int col, String src) {
+        return new Instruction(op, null, null, null, null, null, var, null, null, 0, false, -1, -1, line, col, src);
+    }
+
+    public static Instruction incVar(String var, int delta, int line, int col, String src) {
+        return new Instruction(OpCode.INC_VAR, delta, null, null, null, null, var, null, null, 0, false, -1, -1, line,
+                col, src);
+    }
 }
\ No newline at end of file
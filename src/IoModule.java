@@ -1,109 +1,127 @@
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public final class IoModule implements DogModule {
 
-    private interface Fn {
-        Value run(List<Value> args, DogContext ctx, int line, int col, String fullLine);
-    }
+    private static final Set<String> PURE = new HashSet<String>(Arrays.asList("typeOf", "len", "join", "get"));
 
-    private final Map<String, Fn> fns = new HashMap<String, Fn>();
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
 
     public IoModule() {
-        fns.put("print", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "print", line, col, fullLine);
-            System.out.print(args.get(0).printable());
+        fns.put("print", DogFunction.unary("io.print", (v0, ctx, line, col, fullLine) -> {
+            System.out.print(v0.printable());
             return Value.nil();
-        });
-        fns.put("println", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "println", line, col, fullLine);
-            System.out.println(args.get(0).printable());
+        }));
+        fns.put("println", DogFunction.unary("io.println", (v0, ctx, line, col, fullLine) -> {
+            System.out.println(v0.printable());
             return Value.nil();
-        });
-        fns.put("typeOf", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "typeOf", line, col, fullLine);
-            return Value.str(typeName(args.get(0)));
-        });
-        fns.put("len", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "len", line, col, fullLine);
-            Value v = args.get(0);
+        }));
+        fns.put("typeOf", DogFunction.unary("io.typeOf", (v0, ctx, line, col, fullLine) -> {
+            return Value.str(typeName(v0));
+        }));
+        fns.put("len", DogFunction.unary("io.len", (v, ctx, line, col, fullLine) -> {
             if (v.isString())
                 return Value.ofInt(v.stringVal.length());
             if (v.isArray())
                 return Value.ofInt(v.arrayVal.size());
+            if (v.isTypedArray())
+                return Value.ofInt(v.typedVal.size());
             throw DogException.at(line, col, fullLine, "io.len(x): x must be STRING or ARRAY");
-        });
-        fns.put("split", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "split", line, col, fullLine);
-            String text = requireString(args.get(0), line, col, fullLine);
-            String sep = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("split", DogFunction.binary("io.split", (v0, v1, ctx, line, col, fullLine) -> {
+            String text = requireString(v0, line, col, fullLine);
+            String sep = requireString(v1, line, col, fullLine);
             String[] parts = sep.isEmpty() ? new String[] { text } : text.split(java.util.regex.Pattern.quote(sep), -1);
-            ArrayList<Value> out = new ArrayList<Value>();
+            ArrayList<Value> out = new ArrayList<Value>(parts.length);
             for (String p : parts)
                 out.add(Value.str(p));
-            return Value.array(out);
-        });
-        fns.put("join", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "join", line, col, fullLine);
-            Value arr = requireArray(args.get(0), line, col, fullLine);
-            String sep = requireString(args.get(1), line, col, fullLine);
+            return Value.arrayOwned(out);
+        }));
+        fns.put("join", DogFunction.binary("io.join", (v0, v1, ctx, line, col, fullLine) -> {
+            Value arr = requireAnyArray(v0, line, col, fullLine);
+            String sep = requireString(v1, line, col, fullLine);
             StringBuilder sb = new StringBuilder();
+            if (arr.isTypedArray()) {
+                for (int i = 0; i < arr.typedVal.size(); i++) {
+                    if (i > 0)
+                        sb.append(sep);
+                    sb.append(arr.typedVal.get(i).printable());
+                }
+                return Value.str(sb.toString());
+            }
             for (int i = 0; i < arr.arrayVal.size(); i++) {
                 if (i > 0)
                     sb.append(sep);
                 sb.append(arr.arrayVal.get(i).printable());
             }
             return Value.str(sb.toString());
-        });
-        fns.put("push", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "push", line, col, fullLine);
-            Value arr = requireArray(args.get(0), line, col, fullLine);
-            arr.arrayVal.add(args.get(1));
+        }));
+        fns.put("push", DogFunction.binary("io.push", (v0, v1, ctx, line, col, fullLine) -> {
+            Value arr = requireAnyArray(v0, line, col, fullLine);
+            if (arr.isTypedArray()) {
+                requireElement(arr.typedVal, v1, line, col, fullLine);
+                arr.typedVal.add(v1);
+                return arr;
+            }
+            arr.arrayVal.add(v1);
             return arr;
-        });
-        fns.put("pop", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "pop", line, col, fullLine);
-            Value arr = requireArray(args.get(0), line, col, fullLine);
+        }));
+        fns.put("pop", DogFunction.unary("io.pop", (v0, ctx, line, col, fullLine) -> {
+            Value arr = requireAnyArray(v0, line, col, fullLine);
+            if (arr.isTypedArray())
+                return arr.typedVal.removeLast();
             if (arr.arrayVal.isEmpty())
                 return Value.nil();
             return arr.arrayVal.remove(arr.arrayVal.size() - 1);
-        });
-        fns.put("get", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "get", line, col, fullLine);
-            Value arr = requireArray(args.get(0), line, col, fullLine);
-            int idx = requireIntIndex(args.get(1), line, col, fullLine);
+        }));
+        fns.put("get", DogFunction.binary("io.get", (v0, v1, ctx, line, col, fullLine) -> {
+            Value arr = requireAnyArray(v0, line, col, fullLine);
+            int idx = requireIntIndex(v1, line, col, fullLine);
+            if (arr.isTypedArray())
+                return (idx < 0 || idx >= arr.typedVal.size()) ? Value.nil() : arr.typedVal.get(idx);
             if (idx < 0 || idx >= arr.arrayVal.size())
                 return Value.nil();
             return arr.arrayVal.get(idx);
-        });
-        fns.put("set", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 3, "set", line, col, fullLine);
-            Value arr = requireArray(args.get(0), line, col, fullLine);
-            int idx = requireIntIndex(args.get(1), line, col, fullLine);
+        }));
+        fns.put("set", DogFunction.ternary("io.set", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            Value arr = requireAnyArray(v0, line, col, fullLine);
+            int idx = requireIntIndex(v1, line, col, fullLine);
+            if (arr.isTypedArray()) {
+                if (idx < 0 || idx >= arr.typedVal.size()) {
+                    throw DogException.at(line, col, fullLine, "io.set(arr, idx, v): idx out of bounds");
+                }
+                requireElement(arr.typedVal, v2, line, col, fullLine);
+                arr.typedVal.set(idx, v2);
+                return arr;
+            }
             if (idx < 0 || idx >= arr.arrayVal.size()) {
                 throw DogException.at(line, col, fullLine, "io.set(arr, idx, v): idx out of bounds");
             }
-            arr.arrayVal.set(idx, args.get(2));
+            arr.arrayVal.set(idx, v2);
             return arr;
-        });
-        fns.put("readFile", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "readFile", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("readFile", DogFunction.unary("io.readFile", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             try {
                 byte[] bytes = Files.readAllBytes(Paths.get(path));
                 return Value.str(new String(bytes, StandardCharsets.UTF_8));
             } catch (Exception e) {
                 throw DogException.at(line, col, fullLine, "io.readFile(path) failed: " + e.getMessage());
             }
-        });
-        fns.put("writeFile", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "writeFile", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
-            String text = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("writeFile", DogFunction.binary("io.writeFile", (v0, v1, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
+            String text = requireString(v1, line, col, fullLine);
             try {
                 Path p = Paths.get(path);
                 Path parent = p.toAbsolutePath().normalize().getParent();
@@ -115,11 +133,10 @@ public final class IoModule implements DogModule {
             } catch (Exception e) {
                 throw DogException.at(line, col, fullLine, "io.writeFile(path,text) failed: " + e.getMessage());
             }
-        });
-        fns.put("appendFile", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "appendFile", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
-            String text = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("appendFile", DogFunction.binary("io.appendFile", (v0, v1, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
+            String text = requireString(v1, line, col, fullLine);
             try {
                 Path p = Paths.get(path);
                 Path parent = p.toAbsolutePath().normalize().getParent();
@@ -131,24 +148,36 @@ public final class IoModule implements DogModule {
             } catch (Exception e) {
                 throw DogException.at(line, col, fullLine, "io.appendFile(path,text) failed: " + e.getMessage());
             }
-        });
-        fns.put("exists", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "exists", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("exists", DogFunction.unary("io.exists", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             return Value.bool(Files.exists(Paths.get(path)));
-        });
-        fns.put("listDir", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "listDir", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("listDir", DogFunction.unary("io.listDir", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(path))) {
                 ArrayList<Value> out = new ArrayList<Value>();
                 for (Path p : ds)
                     out.add(Value.str(p.getFileName().toString()));
-                return Value.array(out);
+                return Value.arrayOwned(out);
             } catch (Exception e) {
                 throw DogException.at(line, col, fullLine, "io.listDir(path) failed: " + e.getMessage());
             }
-        });
+        }));
+        fns.put("sort", DogFunction.unary("io.sort", (arr, ctx, line, col, fullLine) -> {
+            DogSort.sort(requireAnyArray(arr, line, col, fullLine), line, col, fullLine);
+            return arr;
+        }));
+        fns.put("sortBy", DogFunction.binary("io.sortBy", (arr, key, ctx, line, col, fullLine) -> {
+            requireAnyArray(arr, line, col, fullLine);
+            if (key == null || !key.isFunction()) {
+                throw DogException.at(line, col, fullLine, "io.sortBy(arr, key): key must be a function");
+            }
+            DogSort.sortBy(arr, key, ctx, line, col, fullLine);
+            return arr;
+        }));
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
     }
 
     @Override
@@ -157,13 +186,13 @@ public final class IoModule implements DogModule {
     }
 
     @Override
-    public Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
-        Fn fn = fns.get(member);
-        if (fn == null) {
-            throw DogException.at(line, col, fullLine,
-                    "Unknown io function: " + member + ". Available: " + String.join(", ", fns.keySet()));
-        }
-        return fn.run(args, ctx, line, col, fullLine);
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
     }
 
     @Override
@@ -171,11 +200,14 @@ public final class IoModule implements DogModule {
         throw DogException.at(line, col, fullLine, "Module 'io' has no constants");
     }
 
-    private static void requireCount(List<Value> args, int n, String fn, int line, int col, String fullLine) {
-        if (args.size() != n) {
-            throw DogException.at(line, col, fullLine,
-                    "io." + fn + "(...) expects " + n + " argument(s)");
-        }
+    @Override
+    public boolean isPure(String member) {
+        return PURE.contains(member);
+    }
+
+    @Override
+    public boolean callsBack(String member) {
+        return member.equals("sortBy");
     }
 
     private static String requireString(Value v, int line, int col, String fullLine) {
@@ -192,6 +224,20 @@ public final class IoModule implements DogModule {
         return v;
     }
 
+    private static Value requireAnyArray(Value v, int line, int col, String fullLine) {
+        if (v == null || !(v.isArray() || v.isTypedArray())) {
+            throw DogException.at(line, col, fullLine, "Expected ARRAY argument");
+        }
+        return v;
+    }
+
+    private static void requireElement(TypedArray arr, Value v, int line, int col, String fullLine) {
+        if (!arr.accepts(v)) {
+            throw DogException.at(line, col, fullLine,
+                    "Cannot store " + (v == null ? "nil" : v.printable()) + " in " + arr.elemName() + " array");
+        }
+    }
+
     private static int requireIntIndex(Value v, int line, int col, String fullLine) {
         if (v == null || !v.isNumber()) {
             throw DogException.at(line, col, fullLine, "Expected numeric index");
@@ -219,6 +265,10 @@ public final class IoModule implements DogModule {
                 return "nil";
             case ARRAY:
                 return "array";
+            case TYPED_ARRAY:
+                return v.typedVal.elemName() + "[]";
+            case RANGE:
+                return "range";
         }
         return "unknown";
     }
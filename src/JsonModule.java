@@ -3,35 +3,37 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public final class JsonModule implements DogModule {
 
-    private interface Fn {
-        Value run(List<Value> args, DogContext ctx, int line, int col, String fullLine);
-    }
+    private static final Set<String> PURE = new HashSet<String>(Arrays.asList("minify", "pretty", "escape"));
 
-    private final Map<String, Fn> fns = new HashMap<String, Fn>();
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
 
     public JsonModule() {
-        fns.put("minify", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "minify", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
+        fns.put("minify", DogFunction.unary("json.minify", (v0, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
             return Value.str(minifyJsonLike(s));
-        });
-        fns.put("pretty", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "pretty", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
-            int indent = requireInt(args.get(1), line, col, fullLine);
+        }));
+        fns.put("pretty", DogFunction.binary("json.pretty", (v0, v1, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
+            int indent = requireInt(v1, line, col, fullLine);
             if (indent < 0)
                 indent = 0;
             return Value.str(prettyJsonLike(s, indent));
-        });
-        fns.put("read", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "read", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("read", DogFunction.unary("json.read", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             try {
                 Path p = Paths.get(path);
                 if (!Files.exists(p)) {
@@ -46,11 +48,10 @@ public final class JsonModule implements DogModule {
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.read error: " + e.getMessage());
             }
-        });
-        fns.put("write", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "write", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
-            String text = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("write", DogFunction.binary("json.write", (v0, v1, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
+            String text = requireString(v1, line, col, fullLine);
             try {
                 Path p = Paths.get(path);
                 Path parent = p.toAbsolutePath().normalize().getParent();
@@ -65,19 +66,17 @@ public final class JsonModule implements DogModule {
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.write error: " + e.getMessage());
             }
-        });
-        fns.put("exists", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "exists", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("exists", DogFunction.unary("json.exists", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             try {
                 return Value.bool(Files.exists(Paths.get(path)));
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.exists error: " + e.getMessage());
             }
-        });
-        fns.put("size", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "size", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("size", DogFunction.unary("json.size", (v0, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
             try {
                 Path p = Paths.get(path);
                 if (!Files.exists(p))
@@ -88,11 +87,10 @@ public final class JsonModule implements DogModule {
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.size error: " + e.getMessage());
             }
-        });
-        fns.put("readPretty", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "readPretty", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
-            int indent = requireInt(args.get(1), line, col, fullLine);
+        }));
+        fns.put("readPretty", DogFunction.binary("json.readPretty", (v0, v1, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
+            int indent = requireInt(v1, line, col, fullLine);
             if (indent < 0)
                 indent = 0;
             try {
@@ -109,12 +107,11 @@ public final class JsonModule implements DogModule {
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.readPretty error: " + e.getMessage());
             }
-        });
-        fns.put("writePretty", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 3, "writePretty", line, col, fullLine);
-            String path = requireString(args.get(0), line, col, fullLine);
-            String text = requireString(args.get(1), line, col, fullLine);
-            int indent = requireInt(args.get(2), line, col, fullLine);
+        }));
+        fns.put("writePretty", DogFunction.ternary("json.writePretty", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            String path = requireString(v0, line, col, fullLine);
+            String text = requireString(v1, line, col, fullLine);
+            int indent = requireInt(v2, line, col, fullLine);
             if (indent < 0)
                 indent = 0;
             try {
@@ -132,12 +129,11 @@ public final class JsonModule implements DogModule {
             } catch (RuntimeException e) {
                 throw DogException.at(line, col, fullLine, "json.writePretty error: " + e.getMessage());
             }
-        });
-        fns.put("escape", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "escape", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
+        }));
+        fns.put("escape", DogFunction.unary("json.escape", (v0, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
             return Value.str(escapeJsonString(s));
-        });
+        }));
         fns.put("arr", (args, ctx, line, col, fullLine) -> {
             StringBuilder sb = new StringBuilder();
             sb.append('[');
@@ -176,6 +172,8 @@ public final class JsonModule implements DogModule {
             sb.append('}');
             return Value.str(sb.toString());
         });
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
     }
 
     @Override
@@ -184,13 +182,13 @@ public final class JsonModule implements DogModule {
     }
 
     @Override
-    public Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
-        Fn fn = fns.get(member);
-        if (fn == null) {
-            throw DogException.at(line, col, fullLine,
-                    "Unknown json function: " + member + ". Available: " + String.join(", ", fns.keySet()));
-        }
-        return fn.run(args, ctx, line, col, fullLine);
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
     }
 
     @Override
@@ -198,10 +196,9 @@ public final class JsonModule implements DogModule {
         throw DogException.at(line, col, fullLine, "json has no constants. Use functions like json.obj/json.arr");
     }
 
-    private static void requireCount(List<Value> args, int n, String fn, int line, int col, String fullLine) {
-        if (args.size() != n) {
-            throw DogException.at(line, col, fullLine, "json." + fn + "(...) expects " + n + " argument(s)");
-        }
+    @Override
+    public boolean isPure(String member) {
+        return PURE.contains(member);
     }
 
     private static String requireString(Value v, int line, int col, String fullLine) {
@@ -382,6 +379,17 @@ public final class JsonModule implements DogModule {
             sb.append(']');
             return sb.toString();
         }
+        if (v.isTypedArray()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append('[');
+            for (int i = 0; i < v.typedVal.size(); i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append(toJsonValue(v.typedVal.get(i), line, col, fullLine));
+            }
+            sb.append(']');
+            return sb.toString();
+        }
         return "\"" + escapeJsonString(v.printable()) + "\"";
     }
 }
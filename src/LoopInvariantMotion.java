@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Hoists loop-invariant expressions out of while loops. A loop with something to hoist is rotated:
+//   L: cond; JUMP_IF_FALSE end; body; JUMP L; end:
+// becomes
+//   L: cond; JUMP_IF_FALSE end; $t = expr ...; B: body'; cond'; JUMP_IF_TRUE B; end:
+// so hoisted code runs once, only after the loop has been entered, and the condition is still tested every round.
+public final class LoopInvariantMotion {
+
+    private final ModuleRegistry modules;
+    private int nextTemp = 0;
+
+    public LoopInvariantMotion(ModuleRegistry modules) {
+        this.modules = modules;
+    }
+
+    public List<Instruction> apply(List<Instruction> code) {
+        int limit = code.size();
+        while (true) {
+            int[] loop = findLoop(code, limit);
+            if (loop == null)
+                return code;
+            limit = loop[0];
+            if (loop[1] < 0)
+                continue;
+            List<Instruction> hoisted = hoist(code, loop[0], loop[1], loop[2]);
+            if (hoisted != null)
+                code = hoisted;
+        }
+    }
+
+    // Innermost-last order: the loop with the greatest head below limit, as {head, exit, backEdge}; exit is -1 when
+    // the condition was folded away.
+    private static int[] findLoop(List<Instruction> code, int limit) {
+        int head = -1;
+        int back = -1;
+        for (int j = 0; j < code.size(); j++) {
+            Instruction ins = code.get(j);
+            if (ins.op == OpCode.JUMP && ins.jumpTarget <= j && ins.jumpTarget < limit && ins.jumpTarget > head) {
+                head = ins.jumpTarget;
+                back = j;
+            }
+        }
+        if (head < 0)
+            return null;
+        for (int k = head; k < back; k++) {
+            Instruction ins = code.get(k);
+            if (ins.op == OpCode.JUMP_IF_FALSE && ins.jumpTarget == back + 1)
+                return new int[] { head, k, back };
+        }
+        return new int[] { head, -1, back };
+    }
+
+    private List<Instruction> hoist(List<Instruction> code, int head, int exit, int back) {
+        int n = code.size();
+        int end = back + 1;
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            if (!ins.isJump() || i == back || i == exit)
+                continue;
+            int t = ins.jumpTarget;
+            boolean ok;
+            if (i < head || i > back)
+                ok = t <= head || t > back;
+            else if (i < exit)
+                ok = (t > head && t <= exit) || t == end;
+            else
+                ok = (t > exit && t <= back) || t == head || t == end;
+            if (!ok)
+                return null;
+        }
+
+        Set<String> written = new HashSet<String>();
+        boolean callsUser = false;
+        boolean mutates = false;
+        for (int i = head; i <= back; i++) {
+            Instruction ins = code.get(i);
+            switch (ins.op) {
+                case STORE:
+                case STORE_KEEP:
+                case ADD_VAR:
+                case SUB_VAR:
+                case MUL_VAR:
+                case INC_VAR:
+                case ITER_NEXT:
+                case RANGE_NEXT:
+                    written.add(ins.name);
+                    break;
+                case CALL_VALUE:
+                    callsUser = true;
+                    mutates = true;
+                    break;
+                case ARRAY_SET:
+                case ARRAY_ADD:
+                case ARRAY_SUB:
+                case ARRAY_MUL:
+                    mutates = true;
+                    break;
+                case CALL:
+                    // Snapshots drop compiler temporaries, so none may be live at a checkpoint.
+                    if (DogSnapshot.isCheckpoint(ins))
+                        return null;
+                    if (modules.callsBack(ins.module, ins.member))
+                        callsUser = true;
+                    if (!modules.isPure(ins.module, ins.member))
+                        mutates = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        boolean[] isTarget = BytecodeOptimizer.jumpTargets(code);
+        Scan scan = new Scan(code, isTarget, written, callsUser, mutates);
+        List<int[]> condSpans = scan.run(head, exit, false);
+        List<int[]> bodySpans = scan.run(exit + 1, back, true);
+        if (condSpans.isEmpty() && bodySpans.isEmpty())
+            return null;
+
+        String[] condTemps = temps(condSpans.size());
+        String[] bodyTemps = temps(bodySpans.size());
+
+        ArrayList<Instruction> out = new ArrayList<Instruction>(n + 2 * (exit - head) + 8);
+        int[] map = new int[n + 1];
+        int[] condMap = new int[n + 1];
+        for (int i = 0; i <= exit; i++) {
+            map[i] = out.size();
+            out.add(code.get(i));
+        }
+        emitHoisted(code, condSpans, condTemps, out);
+        emitHoisted(code, bodySpans, bodyTemps, out);
+        int bodyStart = out.size();
+        copyWithTemps(code, exit + 1, back, bodySpans, bodyTemps, out, map);
+        int condStart = out.size();
+        copyWithTemps(code, head, exit, condSpans, condTemps, out, condMap);
+        Instruction exitJump = code.get(exit);
+        condMap[exit] = out.size();
+        int rotated = out.size();
+        out.add(Instruction.jumpIfTrue(bodyStart, exitJump.line, exitJump.col, exitJump.sourceLine));
+        int newEnd = out.size();
+        for (int i = end; i < n; i++) {
+            map[i] = out.size();
+            out.add(code.get(i));
+        }
+        map[n] = out.size();
+        map[back] = condStart;
+
+        for (int k = 0; k < out.size(); k++) {
+            Instruction ins = out.get(k);
+            if (!ins.isJump() || k == rotated)
+                continue;
+            int t = ins.jumpTarget;
+            int nt;
+            if (t == end)
+                nt = newEnd;
+            else if (k >= condStart && k < rotated)
+                nt = condMap[t];
+            else if (k >= bodyStart && k < condStart && t == head)
+                nt = condStart;
+            else if (t < 0 || t > n)
+                continue;
+            else
+                nt = map[t];
+            if (nt != t)
+                out.set(k, ins.withTarget(nt));
+        }
+        return out;
+    }
+
+    private String[] temps(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+            names[i] = "$licm" + (nextTemp++);
+        return names;
+    }
+
+    private static void emitHoisted(List<Instruction> code, List<int[]> spans, String[] temps,
+            ArrayList<Instruction> out) {
+        for (int s = 0; s < spans.size(); s++) {
+            int[] span = spans.get(s);
+            for (int i = span[0]; i < span[1]; i++)
+                out.add(code.get(i));
+            Instruction last = code.get(span[1] - 1);
+            out.add(Instruction.store(temps[s], last.line, last.col, last.sourceLine));
+        }
+    }
+
+    // Copies code[from, to) and replaces each span with a LOAD of its temp; map receives the new indices.
+    private static void copyWithTemps(List<Instruction> code, int from, int to, List<int[]> spans, String[] temps,
+            ArrayList<Instruction> out, int[] map) {
+        int s = 0;
+        for (int i = from; i < to; i++) {
+            if (s < spans.size() && spans.get(s)[0] == i) {
+                int[] span = spans.get(s);
+                Instruction last = code.get(span[1] - 1);
+                for (int k = span[0]; k < span[1]; k++)
+                    map[k] = out.size();
+                out.add(Instruction.load(temps[s], last.line, last.col, last.sourceLine));
+                i = span[1] - 1;
+                s++;
+                continue;
+            }
+            map[i] = out.size();
+            out.add(code.get(i));
+        }
+    }
+
+    // Symbolic evaluation of a straight-line stretch: each stack slot remembers the instructions that produced it
+    // and whether they are invariant. Maximal invariant slots worth a temp come back as [start, end) spans.
+    private final class Scan {
+        private final List<Instruction> code;
+        private final boolean[] isTarget;
+        private final Set<String> written;
+        private final boolean callsUser;
+        private final boolean mutates;
+
+        private final ArrayList<int[]> stack = new ArrayList<int[]>();
+        private final ArrayList<int[]> spans = new ArrayList<int[]>();
+
+        Scan(List<Instruction> code, boolean[] isTarget, Set<String> written, boolean callsUser, boolean mutates) {
+            this.code = code;
+            this.isTarget = isTarget;
+            this.written = written;
+            this.callsUser = callsUser;
+            this.mutates = mutates;
+        }
+
+        // With effectsStop, the scan ends at the first observable instruction, so a hoisted expression that fails
+        // cannot hide output the loop body would have produced first.
+        List<int[]> run(int from, int to, boolean effectsStop) {
+            stack.clear();
+            spans.clear();
+            scan:
+            for (int i = from; i < to; i++) {
+                if (i > from && isTarget[i])
+                    break;
+                Instruction ins = code.get(i);
+                switch (ins.op) {
+                    case CONST_INT:
+                    case CONST_LONG:
+                    case CONST_DOUBLE:
+                    case CONST_BIGINT:
+                    case CONST_STR:
+                    case CONST_BOOL:
+                    case CONST_NIL:
+                        push(i, i + 1, true);
+                        break;
+                    case LOAD:
+                        push(i, i + 1, !callsUser && !written.contains(ins.name));
+                        break;
+                    case ADD:
+                    case SUB:
+                    case MUL:
+                    case DIV:
+                    case EQ:
+                    case NEQ:
+                    case LT:
+                    case GT:
+                    case LE:
+                    case GE:
+                        if (!combine(2, i, true))
+                            break scan;
+                        break;
+                    case NOT:
+                        if (!combine(1, i, true))
+                            break scan;
+                        break;
+                    case ARRAY_GET:
+                        if (!combine(2, i, !mutates))
+                            break scan;
+                        break;
+                    case ARRAY_NEW:
+                        if (!combine(ins.argCount, i, false))
+                            break scan;
+                        break;
+                    case CALL: {
+                        boolean pure = modules.isPure(ins.module, ins.member);
+                        if (!pure && effectsStop)
+                            break scan;
+                        if (ins.isConst)
+                            push(i, i + 1, pure);
+                        else if (!combine(ins.argCount, i, pure && !mutates))
+                            break scan;
+                        break;
+                    }
+                    case PRINT:
+                        if (effectsStop || !consume(1))
+                            break scan;
+                        break;
+                    case STORE:
+                    case POP:
+                    case ADD_VAR:
+                    case SUB_VAR:
+                    case MUL_VAR:
+                        if (!consume(1))
+                            break scan;
+                        break;
+                    case INC_VAR:
+                        break;
+                    default:
+                        break scan;
+                }
+            }
+            for (int[] slot : stack)
+                keep(slot);
+            spans.sort((a, b) -> Integer.compare(a[0], b[0]));
+            return new ArrayList<int[]>(spans);
+        }
+
+        private void push(int start, int end, boolean invariant) {
+            stack.add(new int[] { start, end, invariant ? 1 : 0 });
+        }
+
+        // Pops argc slots; the result stays invariant only if every operand is and they are adjacent to op.
+        private boolean combine(int argc, int op, boolean invariantOp) {
+            if (stack.size() < argc)
+                return false;
+            List<int[]> args = stack.subList(stack.size() - argc, stack.size());
+            boolean invariant = invariantOp;
+            int expect = argc == 0 ? op : args.get(0)[0];
+            int start = expect;
+            for (int[] a : args) {
+                invariant &= a[2] == 1 && a[0] == expect;
+                expect = a[1];
+            }
+            invariant &= expect == op;
+            if (!invariant) {
+                for (int[] a : args)
+                    keep(a);
+            }
+            args.clear();
+            push(start, op + 1, invariant);
+            return true;
+        }
+
+        private boolean consume(int count) {
+            if (stack.size() < count)
+                return false;
+            for (int k = 0; k < count; k++)
+                keep(stack.remove(stack.size() - 1));
+            return true;
+        }
+
+        // A lone CONST or LOAD is already as cheap as the LOAD that would replace it.
+        private void keep(int[] slot) {
+            if (slot[2] != 1)
+                return;
+            if (slot[1] - slot[0] >= 2 || code.get(slot[0]).op == OpCode.CALL)
+                spans.add(new int[] { slot[0], slot[1] });
+        }
+    }
+}
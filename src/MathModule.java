@@ -1,69 +1,67 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 public final class MathModule implements DogModule {
 
     private static final Random RNG = new Random();
 
-    private interface Fn {
-        Value run(List<Value> args, DogContext ctx, int line, int col, String fullLine);
-    }
+    private static final Set<String> PURE = new HashSet<String>(Arrays.asList(
+            "sqrt", "pow", "abs", "floor", "ceil", "round", "min", "max", "clamp", "sign", "mod", "toInt", "toLong",
+            "toDouble", "PI", "E", "TAU"));
 
-    private final Map<String, Fn> fns = new HashMap<String, Fn>();
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
 
     public MathModule() {
-        fns.put("sqrt", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "sqrt", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        fns.put("sqrt", DogFunction.unary("math.sqrt", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             if (x < 0)
                 throw DogException.at(line, col, fullLine, "math.sqrt(x): x must be >= 0");
             return Value.ofDouble(Math.sqrt(x));
-        });
-        fns.put("pow", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "pow", line, col, fullLine);
-            double a = requireNumber(args.get(0), line, col, fullLine);
-            double b = requireNumber(args.get(1), line, col, fullLine);
+        }));
+        fns.put("pow", DogFunction.binary("math.pow", (v0, v1, ctx, line, col, fullLine) -> {
+            double a = requireNumber(v0, line, col, fullLine);
+            double b = requireNumber(v1, line, col, fullLine);
             return Value.ofDouble(Math.pow(a, b));
-        });
-        fns.put("abs", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "abs", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("abs", DogFunction.unary("math.abs", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofDouble(Math.abs(x));
-        });
-        fns.put("floor", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "floor", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("floor", DogFunction.unary("math.floor", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofDouble(Math.floor(x));
-        });
-        fns.put("ceil", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "ceil", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("ceil", DogFunction.unary("math.ceil", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofDouble(Math.ceil(x));
-        });
-        fns.put("round", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "round", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("round", DogFunction.unary("math.round", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofLong(Math.round(x));
-        });
-        fns.put("min", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "min", line, col, fullLine);
+        }));
+        fns.put("min", DogFunction.binary("math.min", (v0, v1, ctx, line, col, fullLine) -> {
             return Value.ofDouble(Math.min(
-                    requireNumber(args.get(0), line, col, fullLine),
-                    requireNumber(args.get(1), line, col, fullLine)));
-        });
-        fns.put("max", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "max", line, col, fullLine);
+                    requireNumber(v0, line, col, fullLine),
+                    requireNumber(v1, line, col, fullLine)));
+        }));
+        fns.put("max", DogFunction.binary("math.max", (v0, v1, ctx, line, col, fullLine) -> {
             return Value.ofDouble(Math.max(
-                    requireNumber(args.get(0), line, col, fullLine),
-                    requireNumber(args.get(1), line, col, fullLine)));
-        });
-        fns.put("clamp", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 3, "clamp", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
-            double a = requireNumber(args.get(1), line, col, fullLine);
-            double b = requireNumber(args.get(2), line, col, fullLine);
+                    requireNumber(v0, line, col, fullLine),
+                    requireNumber(v1, line, col, fullLine)));
+        }));
+        fns.put("clamp", DogFunction.ternary("math.clamp", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
+            double a = requireNumber(v1, line, col, fullLine);
+            double b = requireNumber(v2, line, col, fullLine);
             double lo = Math.min(a, b);
             double hi = Math.max(a, b);
             if (x < lo)
@@ -71,33 +69,29 @@ public final class MathModule implements DogModule {
             if (x > hi)
                 x = hi;
             return Value.ofDouble(x);
-        });
-        fns.put("sign", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "sign", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("sign", DogFunction.unary("math.sign", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             if (x > 0)
                 return Value.ofInt(1);
             if (x < 0)
                 return Value.ofInt(-1);
             return Value.ofInt(0);
-        });
-        fns.put("mod", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "mod", line, col, fullLine);
-            double a = requireNumber(args.get(0), line, col, fullLine);
-            double b = requireNumber(args.get(1), line, col, fullLine);
+        }));
+        fns.put("mod", DogFunction.binary("math.mod", (v0, v1, ctx, line, col, fullLine) -> {
+            double a = requireNumber(v0, line, col, fullLine);
+            double b = requireNumber(v1, line, col, fullLine);
             if (b == 0.0)
                 throw DogException.at(line, col, fullLine, "math.mod(a,b): b must be != 0");
             double r = a % b;
             return Value.ofDouble(r);
-        });
-        fns.put("rand", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 0, "rand", line, col, fullLine);
+        }));
+        fns.put("rand", DogFunction.nullary("math.rand", (ctx, line, col, fullLine) -> {
             return Value.ofDouble(RNG.nextDouble());
-        });
-        fns.put("randInt", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "randInt", line, col, fullLine);
-            long a = (long) requireNumber(args.get(0), line, col, fullLine);
-            long b = (long) requireNumber(args.get(1), line, col, fullLine);
+        }));
+        fns.put("randInt", DogFunction.binary("math.randInt", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = (long) requireNumber(v0, line, col, fullLine);
+            long b = (long) requireNumber(v1, line, col, fullLine);
             long lo = Math.min(a, b);
             long hi = Math.max(a, b);
             long bound = (hi - lo) + 1;
@@ -108,22 +102,22 @@ public final class MathModule implements DogModule {
             if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE)
                 return Value.ofInt((int) v);
             return Value.ofLong(v);
-        });
-        fns.put("toInt", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "toInt", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("toInt", DogFunction.unary("math.toInt", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofInt((int) x);
-        });
-        fns.put("toLong", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "toLong", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("toLong", DogFunction.unary("math.toLong", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofLong((long) x);
-        });
-        fns.put("toDouble", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "toDouble", line, col, fullLine);
-            double x = requireNumber(args.get(0), line, col, fullLine);
+        }));
+        fns.put("toDouble", DogFunction.unary("math.toDouble", (v0, ctx, line, col, fullLine) -> {
+            double x = requireNumber(v0, line, col, fullLine);
             return Value.ofDouble(x);
-        });
+        }));
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        names.addAll(Arrays.asList("E", "PI", "TAU"));
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
     }
 
     @Override
@@ -132,13 +126,13 @@ public final class MathModule implements DogModule {
     }
 
     @Override
-    public Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
-        Fn fn = fns.get(member);
-        if (fn == null) {
-            throw DogException.at(line, col, fullLine,
-                    "Unknown math function: " + member + ". Available: " + String.join(", ", fns.keySet()));
-        }
-        return fn.run(args, ctx, line, col, fullLine);
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
     }
 
     @Override
@@ -153,11 +147,9 @@ public final class MathModule implements DogModule {
                 "Unknown math constant: " + member + ". Available: PI, E, TAU");
     }
 
-    private static void requireCount(List<Value> args, int n, String fn, int line, int col, String fullLine) {
-        if (args.size() != n) {
-            throw DogException.at(line, col, fullLine,
-                    "math." + fn + "(...) expects " + n + " argument(s)");
-        }
+    @Override
+    public boolean isPure(String member) {
+        return PURE.contains(member);
     }
 
     private static double requireNumber(Value v, int line, int col, String fullLine) {
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// memo.wrap(f, maxEntries) returns a function that behaves like f but keeps up to maxEntries results, evicting the
+// least recently used. Rebinding a recursive function to its wrapper (`fib = memo.wrap(fib, 1000)`) routes the
+// recursive calls through the cache as well. Returned arrays are fresh copies; array arguments match by identity,
+// so a call with the same array after changing it in place gets the result cached before the change.
+public final class MemoModule implements DogModule {
+
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
+
+    public MemoModule() {
+        fns.put("wrap", DogFunction.binary("memo.wrap", (fn, max, ctx, line, col, fullLine) -> {
+            if (fn == null || !fn.isFunction()) {
+                throw DogException.at(line, col, fullLine, "memo.wrap(f, maxEntries): f must be a function");
+            }
+            if (max == null || !max.isNumber() || max.kind == Value.Kind.DOUBLE || max.toDouble() < 1
+                    || max.toDouble() > Integer.MAX_VALUE) {
+                throw DogException.at(line, col, fullLine,
+                        "memo.wrap(f, maxEntries): maxEntries must be an integer >= 1");
+            }
+            DogMemo memo = new DogMemo((int) max.toLong());
+            return Value.function(FunctionProto.memoized(fn.funcProto, memo), fn.closure);
+        }));
+        fns.put("hits", DogFunction.unary("memo.hits", (fn, ctx, line, col, fullLine) -> {
+            return Value.ofLong(requireMemo(fn, "hits", line, col, fullLine).hits());
+        }));
+        fns.put("misses", DogFunction.unary("memo.misses", (fn, ctx, line, col, fullLine) -> {
+            return Value.ofLong(requireMemo(fn, "misses", line, col, fullLine).misses());
+        }));
+        fns.put("size", DogFunction.unary("memo.size", (fn, ctx, line, col, fullLine) -> {
+            return Value.ofInt(requireMemo(fn, "size", line, col, fullLine).size());
+        }));
+        fns.put("clear", DogFunction.unary("memo.clear", (fn, ctx, line, col, fullLine) -> {
+            requireMemo(fn, "clear", line, col, fullLine).clear();
+            return Value.nil();
+        }));
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
+    }
+
+    @Override
+    public String name() {
+        return "memo";
+    }
+
+    @Override
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
+    }
+
+    @Override
+    public Value getConstant(String member, DogContext ctx, int line, int col, String fullLine) {
+        throw DogException.at(line, col, fullLine, "memo has no constants. Use functions like memo.wrap(f, n)");
+    }
+
+    private static DogMemo requireMemo(Value v, String fn, int line, int col, String fullLine) {
+        if (v == null || !v.isFunction() || v.funcProto.memo == null) {
+            throw DogException.at(line, col, fullLine, "memo." + fn + "(f): f must come from memo.wrap");
+        }
+        return v.funcProto.memo;
+    }
+}
@@ -6,9 +6,46 @@ import java.util.Map;
 
 public final class ModuleRegistry {
     private final Map<String, DogModule> modules = new HashMap<String, DogModule>();
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final ArrayList<DogModule> byId = new ArrayList<DogModule>();
 
+    public static ModuleRegistry standard() {
+        ModuleRegistry reg = new ModuleRegistry();
+        reg.register(new IoModule());
+        reg.register(new MathModule());
+        reg.register(new TimeModule());
+        reg.register(new StringModule());
+        reg.register(new RandomModule());
+        reg.register(new SystemModule());
+        reg.register(new JsonModule());
+        reg.register(new ArrayModule());
+        reg.register(new MemoModule());
+        return reg;
+    }
+
+    // A module's id is its registration order; registering a name again replaces the module under the same id.
     public void register(DogModule m) {
         modules.put(m.name(), m);
+        Integer id = ids.get(m.name());
+        if (id != null) {
+            byId.set(id, m);
+        } else {
+            ids.put(m.name(), byId.size());
+            byId.add(m);
+        }
+    }
+
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public DogModule get(int id) {
+        return byId.get(id);
+    }
+
+    public int size() {
+        return byId.size();
     }
 
     public boolean exists(String name) {
@@ -19,6 +56,17 @@ public final class ModuleRegistry {
         return modules.get(name);
     }
 
+    public boolean isPure(String module, String member) {
+        DogModule m = modules.get(module);
+        return m != null && m.isPure(member);
+    }
+
+    // Unknown modules count as calling back, since nothing is known about them.
+    public boolean callsBack(String module, String member) {
+        DogModule m = modules.get(module);
+        return m == null || m.callsBack(member);
+    }
+
     public String available() {
         List<String> names = new ArrayList<String>(modules.keySet());
         Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
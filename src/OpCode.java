@@ -20,5 +20,14 @@ public enum OpCode {
     IMPORT, CALL,
     PRINT, POP,
     JUMP,
-    JUMP_IF_FALSE
+    JUMP_IF_FALSE,
+    RANGE,
+    ITER_INIT,
+    ITER_NEXT,
+    RANGE_NEXT,
+    ADD_VAR, SUB_VAR, MUL_VAR,
+    INC_VAR,
+    ARRAY_ADD, ARRAY_SUB, ARRAY_MUL,
+    JUMP_IF_TRUE,
+    STORE_KEEP
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 public final class RandomModule implements DogModule {
+    private static final List<String> MEMBERS = Collections.unmodifiableList(Arrays.asList(
+            "int", "double", "bool"));
     private static final Random rng = new Random();
 
     @Override
@@ -28,6 +32,11 @@ public final class RandomModule implements DogModule {
         throw DogException.at(line, col, src, "Unknown rand function: " + member);
     }
 
+    @Override
+    public List<String> members() {
+        return MEMBERS;
+    }
+
     @Override
     public Value getConstant(String member, DogContext ctx, int line, int col, String src) {
         return Value.nil();
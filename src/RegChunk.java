@@ -0,0 +1,69 @@
+import java.util.List;
+
+// A Chunk lowered to register IR. An operand packs its kind into the low two bits: a register of the current call, an
+// entry of consts, or a variable read whose LOAD instruction is kept in loads for error positions. Negative means
+// unused.
+public final class RegChunk {
+    static final int REG = 0;
+    static final int CONST = 1;
+    static final int VAR = 2;
+
+    public final RegInstruction[] code;
+    public final Value[] consts;
+    public final Instruction[] loads;
+    public final int registers;
+    public final List<FunctionProto> functions;
+
+    RegChunk(RegInstruction[] code, Value[] consts, Instruction[] loads, int registers, List<FunctionProto> functions) {
+        this.code = code;
+        this.consts = consts;
+        this.loads = loads;
+        this.registers = registers;
+        this.functions = functions;
+    }
+
+    static int operand(int kind, int index) {
+        return (index << 2) | kind;
+    }
+
+    static int kind(int operand) {
+        return operand & 3;
+    }
+
+    static int index(int operand) {
+        return operand >> 2;
+    }
+
+    private String describe(int operand) {
+        switch (kind(operand)) {
+            case REG:
+                return "r" + index(operand);
+            case CONST:
+                return consts[index(operand)].printable();
+            default:
+                return loads[index(operand)].name;
+        }
+    }
+
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < code.length; i++) {
+            RegInstruction ins = code[i];
+            sb.append(i).append(": ").append(ins.op);
+            if (ins.dstVar != null)
+                sb.append(' ').append(ins.dstVar).append(" <-");
+            else if (ins.dst >= 0)
+                sb.append(" r").append(ins.dst).append(" <-");
+            for (int o : new int[] { ins.a, ins.b, ins.c }) {
+                if (o >= 0)
+                    sb.append(' ').append(describe(o));
+            }
+            if (ins.origin.name != null && ins.dstVar == null)
+                sb.append(' ').append(ins.origin.name);
+            if (ins.isJump())
+                sb.append(" -> ").append(ins.target);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,36 @@
+// One register-IR instruction. Operands a, b and c are encoded by RegChunk; the result goes to register dst, or to
+// variable dstVar when a following STORE was fused in. origin is the stack instruction it came from and carries the
+// source position and payload (module, member, argCount, funcIndex, delta).
+public final class RegInstruction {
+    public final RegOp op;
+    public int dst;
+    public String dstVar;
+    public final int a;
+    public final int b;
+    public final int c;
+    public int target;
+    public final Instruction origin;
+
+    RegInstruction(RegOp op, int dst, int a, int b, int c, Instruction origin) {
+        this.op = op;
+        this.dst = dst;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.target = -1;
+        this.origin = origin;
+    }
+
+    public boolean isJump() {
+        switch (op) {
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE:
+            case ITER_NEXT:
+            case RANGE_NEXT:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
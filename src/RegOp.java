@@ -0,0 +1,26 @@
+// Three-address operations of the register IR; see RegisterCompiler for how they are produced from a Chunk.
+public enum RegOp {
+    MOVE,
+    FUNC,
+    CALL_VALUE,
+    RETURN,
+    ARRAY_NEW,
+    ARRAY_GET,
+    ARRAY_SET,
+    ADD, SUB, MUL, DIV,
+    NOT,
+    EQ, NEQ,
+    LT, GT, LE, GE,
+    IMPORT, CALL,
+    PRINT,
+    JUMP,
+    JUMP_IF_FALSE,
+    JUMP_IF_TRUE,
+    RANGE,
+    ITER_INIT,
+    ITER_NEXT,
+    RANGE_NEXT,
+    UPDATE_VAR,
+    INC_VAR,
+    ARRAY_UPDATE
+}
@@ -0,0 +1,332 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Lowers a Chunk to three-address register IR by interpreting its stack abstractly: stack slot d lives in register d.
+// Constants and variable reads stay pending on the abstract stack and are used directly as operands, and a STORE
+// right after an instruction redirects that instruction's result into the variable, so `a = b + c` is one ADD.
+// A pending read is forced into its register before any instruction that consumes a slot above it, so variables are
+// still read before anything can write them and undefined names are reported in source order. At branches and jump
+// targets every slot is in its register.
+public final class RegisterCompiler {
+
+    private final List<Instruction> code;
+    private final ArrayList<RegInstruction> out = new ArrayList<RegInstruction>();
+    private final ArrayList<Value> consts = new ArrayList<Value>();
+    private final ArrayList<Instruction> loads = new ArrayList<Instruction>();
+    private final ArrayList<Integer> slots = new ArrayList<Integer>();
+    private int registers = 0;
+    private int barrier = 0;
+
+    private RegisterCompiler(Chunk chunk) {
+        this.code = chunk.code();
+    }
+
+    public static RegChunk lower(Chunk chunk) {
+        RegisterCompiler rc = new RegisterCompiler(chunk);
+        rc.run();
+        return new RegChunk(rc.out.toArray(new RegInstruction[0]), rc.consts.toArray(new Value[0]),
+                rc.loads.toArray(new Instruction[0]), rc.registers, chunk.functions());
+    }
+
+    private void run() {
+        int n = code.size();
+        int[] depth = depths();
+        boolean[] isTarget = BytecodeOptimizer.jumpTargets(code);
+        int[] map = new int[n + 1];
+        boolean live = true;
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(i);
+            if (depth[i] < 0) {
+                map[i] = out.size();
+                live = false;
+                continue;
+            }
+            if (isTarget[i] || !live) {
+                if (live)
+                    materializeAll();
+                slots.clear();
+                for (int d = 0; d < depth[i]; d++)
+                    slots.add(RegChunk.operand(RegChunk.REG, d));
+                barrier = out.size();
+            }
+            map[i] = out.size();
+            live = lowerOne(ins);
+        }
+        map[n] = out.size();
+        for (RegInstruction r : out) {
+            if (r.isJump())
+                r.target = map[r.origin.jumpTarget];
+        }
+    }
+
+    // Stack depth before each instruction, -1 where unreachable.
+    private int[] depths() {
+        int n = code.size();
+        int[] depth = new int[n + 1];
+        Arrays.fill(depth, -1);
+        ArrayList<Integer> work = new ArrayList<Integer>();
+        depth[0] = 0;
+        work.add(0);
+        while (!work.isEmpty()) {
+            int i = work.remove(work.size() - 1);
+            if (i >= n)
+                continue;
+            Instruction ins = code.get(i);
+            if (depth[i] < ins.pops())
+                throw inconsistent(ins);
+            int d = depth[i] - ins.pops() + ins.pushes();
+            if (ins.op != OpCode.JUMP && ins.op != OpCode.RETURN)
+                flow(depth, work, i + 1, d, ins);
+            if (ins.isJump()) {
+                boolean exits = ins.op == OpCode.ITER_NEXT || ins.op == OpCode.RANGE_NEXT;
+                flow(depth, work, ins.jumpTarget, exits ? d - 1 : d, ins);
+            }
+        }
+        return depth;
+    }
+
+    private static void flow(int[] depth, ArrayList<Integer> work, int to, int d, Instruction from) {
+        if (to < 0 || to >= depth.length)
+            throw inconsistent(from);
+        if (depth[to] == -1) {
+            depth[to] = d;
+            work.add(to);
+        } else if (depth[to] != d) {
+            throw inconsistent(from);
+        }
+    }
+
+    private static DogException inconsistent(Instruction ins) {
+        return DogException.at(ins.line, ins.col, ins.sourceLine, "Cannot lower " + ins.op + ": inconsistent stack");
+    }
+
+    // Returns false when control cannot fall through to the next instruction.
+    private boolean lowerOne(Instruction ins) {
+        switch (ins.op) {
+            case CONST_INT:
+                pushConst(Value.ofInt(ins.intVal != null ? ins.intVal.intValue() : 0));
+                return true;
+            case CONST_LONG:
+                pushConst(Value.ofLong(ins.longVal != null ? ins.longVal.longValue() : 0L));
+                return true;
+            case CONST_DOUBLE:
+                pushConst(Value.ofDouble(ins.doubleVal != null ? ins.doubleVal.doubleValue() : 0.0));
+                return true;
+            case CONST_BIGINT:
+                pushConst(Value.ofBigInt(new BigInteger(ins.text != null ? ins.text : "0")));
+                return true;
+            case CONST_STR:
+                pushConst(Value.str(ins.text != null ? ins.text : ""));
+                return true;
+            case CONST_BOOL:
+                pushConst(Value.bool(ins.boolVal != null && ins.boolVal.booleanValue()));
+                return true;
+            case CONST_NIL:
+                pushConst(Value.nil());
+                return true;
+            case LOAD:
+                loads.add(ins);
+                slots.add(RegChunk.operand(RegChunk.VAR, loads.size() - 1));
+                return true;
+            case CONST_FUNC:
+                emit(RegOp.FUNC, pushRegister(), -1, -1, -1, ins);
+                return true;
+            case STORE: {
+                int v = take(1)[0];
+                RegInstruction last = out.size() > barrier ? out.get(out.size() - 1) : null;
+                if (RegChunk.kind(v) == RegChunk.REG && last != null && last.dst == RegChunk.index(v)
+                        && last.dstVar == null) {
+                    last.dst = -1;
+                    last.dstVar = ins.name;
+                } else {
+                    emit(RegOp.MOVE, -1, v, -1, -1, ins).dstVar = ins.name;
+                }
+                return true;
+            }
+            case STORE_KEEP: {
+                int v = take(1)[0];
+                emit(RegOp.MOVE, -1, v, -1, -1, ins).dstVar = ins.name;
+                slots.add(v);
+                return true;
+            }
+            case POP: {
+                int v = take(1)[0];
+                if (RegChunk.kind(v) == RegChunk.VAR) {
+                    emit(RegOp.MOVE, slots.size(), v, -1, -1, ins);
+                    registers = Math.max(registers, slots.size() + 1);
+                }
+                return true;
+            }
+            case ADD:
+                return binary(RegOp.ADD, ins);
+            case SUB:
+                return binary(RegOp.SUB, ins);
+            case MUL:
+                return binary(RegOp.MUL, ins);
+            case DIV:
+                return binary(RegOp.DIV, ins);
+            case EQ:
+                return binary(RegOp.EQ, ins);
+            case NEQ:
+                return binary(RegOp.NEQ, ins);
+            case LT:
+                return binary(RegOp.LT, ins);
+            case GT:
+                return binary(RegOp.GT, ins);
+            case LE:
+                return binary(RegOp.LE, ins);
+            case GE:
+                return binary(RegOp.GE, ins);
+            case ARRAY_GET:
+                return binary(RegOp.ARRAY_GET, ins);
+            case NOT: {
+                int a = take(1)[0];
+                emit(RegOp.NOT, pushRegister(), a, -1, -1, ins);
+                return true;
+            }
+            case ITER_INIT: {
+                int a = take(1)[0];
+                emit(RegOp.ITER_INIT, pushRegister(), a, -1, -1, ins);
+                return true;
+            }
+            case ARRAY_SET: {
+                int[] o = take(3);
+                emit(RegOp.ARRAY_SET, pushRegister(), o[0], o[1], o[2], ins);
+                return true;
+            }
+            case ARRAY_ADD:
+            case ARRAY_SUB:
+            case ARRAY_MUL: {
+                int[] o = take(3);
+                emit(RegOp.ARRAY_UPDATE, -1, o[0], o[1], o[2], ins);
+                return true;
+            }
+            case ADD_VAR:
+            case SUB_VAR:
+            case MUL_VAR: {
+                int a = take(1)[0];
+                emit(RegOp.UPDATE_VAR, -1, a, -1, -1, ins);
+                return true;
+            }
+            case INC_VAR:
+                take(0);
+                emit(RegOp.INC_VAR, -1, -1, -1, -1, ins);
+                return true;
+            case PRINT: {
+                int a = take(1)[0];
+                emit(RegOp.PRINT, -1, a, -1, -1, ins);
+                return true;
+            }
+            case IMPORT:
+                take(0);
+                emit(RegOp.IMPORT, -1, -1, -1, -1, ins);
+                return true;
+            case CALL:
+                if (ins.isConst) {
+                    take(0);
+                    emit(RegOp.CALL, pushRegister(), -1, -1, -1, ins);
+                    return true;
+                }
+                return variadic(RegOp.CALL, ins.argCount, ins);
+            case CALL_VALUE:
+                return variadic(RegOp.CALL_VALUE, ins.argCount + 1, ins);
+            case ARRAY_NEW:
+                return variadic(RegOp.ARRAY_NEW, ins.argCount, ins);
+            case RANGE:
+                return variadic(RegOp.RANGE, ins.argCount, ins);
+            case RETURN: {
+                int a = slots.isEmpty() ? -1 : take(1)[0];
+                emit(RegOp.RETURN, -1, a, -1, -1, ins);
+                return false;
+            }
+            case JUMP:
+                materializeAll();
+                emit(RegOp.JUMP, -1, -1, -1, -1, ins);
+                return false;
+            case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE: {
+                for (int d = 0; d < slots.size() - 1; d++)
+                    materialize(d);
+                int a = take(1)[0];
+                emit(ins.op == OpCode.JUMP_IF_FALSE ? RegOp.JUMP_IF_FALSE : RegOp.JUMP_IF_TRUE, -1, a, -1, -1, ins);
+                return true;
+            }
+            case ITER_NEXT:
+            case RANGE_NEXT: {
+                materializeAll();
+                int it = slots.get(slots.size() - 1);
+                emit(ins.op == OpCode.ITER_NEXT ? RegOp.ITER_NEXT : RegOp.RANGE_NEXT, -1, it, -1, -1, ins);
+                return true;
+            }
+            default:
+                throw DogException.at(ins.line, ins.col, ins.sourceLine, "Cannot lower opcode: " + ins.op);
+        }
+    }
+
+    private boolean binary(RegOp op, Instruction ins) {
+        int[] o = take(2);
+        emit(op, pushRegister(), o[0], o[1], -1, ins);
+        return true;
+    }
+
+    // Arguments of a variadic instruction sit in consecutive registers starting at the result register.
+    private boolean variadic(RegOp op, int count, Instruction ins) {
+        int base = slots.size() - count;
+        for (int d = 0; d < slots.size(); d++) {
+            if (d >= base || RegChunk.kind(slots.get(d)) == RegChunk.VAR)
+                materialize(d);
+        }
+        take(count);
+        emit(op, pushRegister(), RegChunk.operand(RegChunk.REG, base), -1, -1, ins);
+        return true;
+    }
+
+    private void pushConst(Value v) {
+        consts.add(v);
+        slots.add(RegChunk.operand(RegChunk.CONST, consts.size() - 1));
+    }
+
+    private int pushRegister() {
+        int r = slots.size();
+        slots.add(RegChunk.operand(RegChunk.REG, r));
+        registers = Math.max(registers, r + 1);
+        return r;
+    }
+
+    // Pops the top count slots as operands, after forcing pending variable reads beneath them.
+    private int[] take(int count) {
+        int base = slots.size() - count;
+        for (int d = 0; d < base; d++) {
+            if (RegChunk.kind(slots.get(d)) == RegChunk.VAR)
+                materialize(d);
+        }
+        int[] o = new int[count];
+        for (int k = 0; k < count; k++)
+            o[k] = slots.get(base + k);
+        slots.subList(base, slots.size()).clear();
+        return o;
+    }
+
+    private void materializeAll() {
+        for (int d = 0; d < slots.size(); d++)
+            materialize(d);
+    }
+
+    private void materialize(int d) {
+        int o = slots.get(d);
+        if (RegChunk.kind(o) == RegChunk.REG)
+            return;
+        Instruction from = RegChunk.kind(o) == RegChunk.VAR ? loads.get(RegChunk.index(o)) : code.get(0);
+        emit(RegOp.MOVE, d, o, -1, -1, from);
+        slots.set(d, RegChunk.operand(RegChunk.REG, d));
+        registers = Math.max(registers, d + 1);
+    }
+
+    private RegInstruction emit(RegOp op, int dst, int a, int b, int c, Instruction origin) {
+        RegInstruction r = new RegInstruction(op, dst, a, b, c, origin);
+        out.add(r);
+        return r;
+    }
+}
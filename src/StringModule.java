@@ -1,82 +1,87 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public final class StringModule implements DogModule {
 
-    private interface Fn {
-        Value run(List<Value> args, DogContext ctx, int line, int col, String fullLine);
-    }
+    private static final Set<String> PURE = new HashSet<String>(Arrays.asList(
+            "len", "upper", "lower", "trim", "contains", "replace", "join", "sub"));
 
-    private final Map<String, Fn> fns = new HashMap<String, Fn>();
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
+    private final List<String> members;
 
     public StringModule() {
-        fns.put("len", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "len", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
+        fns.put("len", DogFunction.unary("str.len", (v0, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
             return Value.ofInt(s.length());
-        });
-        fns.put("upper", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "upper", line, col, fullLine);
-            return Value.str(requireString(args.get(0), line, col, fullLine).toUpperCase());
-        });
-        fns.put("lower", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "lower", line, col, fullLine);
-            return Value.str(requireString(args.get(0), line, col, fullLine).toLowerCase());
-        });
-        fns.put("trim", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 1, "trim", line, col, fullLine);
-            return Value.str(requireString(args.get(0), line, col, fullLine).trim());
-        });
-        fns.put("contains", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "contains", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
-            String sub = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("upper", DogFunction.unary("str.upper", (v0, ctx, line, col, fullLine) -> {
+            return Value.str(requireString(v0, line, col, fullLine).toUpperCase());
+        }));
+        fns.put("lower", DogFunction.unary("str.lower", (v0, ctx, line, col, fullLine) -> {
+            return Value.str(requireString(v0, line, col, fullLine).toLowerCase());
+        }));
+        fns.put("trim", DogFunction.unary("str.trim", (v0, ctx, line, col, fullLine) -> {
+            return Value.str(requireString(v0, line, col, fullLine).trim());
+        }));
+        fns.put("contains", DogFunction.binary("str.contains", (v0, v1, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
+            String sub = requireString(v1, line, col, fullLine);
             return Value.bool(s.contains(sub));
-        });
-        fns.put("replace", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 3, "replace", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
-            String a = requireString(args.get(1), line, col, fullLine);
-            String b = requireString(args.get(2), line, col, fullLine);
+        }));
+        fns.put("replace", DogFunction.ternary("str.replace", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
+            String a = requireString(v1, line, col, fullLine);
+            String b = requireString(v2, line, col, fullLine);
             return Value.str(s.replace(a, b));
-        });
-        fns.put("split", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "split", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
-            String sep = requireString(args.get(1), line, col, fullLine);
+        }));
+        fns.put("split", DogFunction.binary("str.split", (v0, v1, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
+            String sep = requireString(v1, line, col, fullLine);
             String[] parts = sep.isEmpty() ? s.split("") : s.split(java.util.regex.Pattern.quote(sep), -1);
             ArrayList<Value> out = new ArrayList<Value>(parts.length);
             for (String p : parts)
                 out.add(Value.str(p));
-            return Value.array(out);
-        });
-        fns.put("join", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 2, "join", line, col, fullLine);
-            Value arr = args.get(0);
-            String sep = requireString(args.get(1), line, col, fullLine);
-            if (arr == null || !arr.isArray()) {
+            return Value.arrayOwned(out);
+        }));
+        fns.put("join", DogFunction.binary("str.join", (arr, v1, ctx, line, col, fullLine) -> {
+            String sep = requireString(v1, line, col, fullLine);
+            if (arr == null || !(arr.isArray() || arr.isTypedArray())) {
                 throw DogException.at(line, col, fullLine, "str.join(arr, sep): arr must be an array");
             }
             StringBuilder sb = new StringBuilder();
+            if (arr.isTypedArray()) {
+                for (int i = 0; i < arr.typedVal.size(); i++) {
+                    if (i > 0)
+                        sb.append(sep);
+                    sb.append(arr.typedVal.get(i).printable());
+                }
+                return Value.str(sb.toString());
+            }
             for (int i = 0; i < arr.arrayVal.size(); i++) {
                 if (i > 0)
                     sb.append(sep);
                 sb.append(arr.arrayVal.get(i).printable());
             }
             return Value.str(sb.toString());
-        });
-        fns.put("sub", (args, ctx, line, col, fullLine) -> {
-            requireCount(args, 3, "sub", line, col, fullLine);
-            String s = requireString(args.get(0), line, col, fullLine);
-            int a = requireInt(args.get(1), line, col, fullLine);
-            int b = requireInt(args.get(2), line, col, fullLine);
+        }));
+        fns.put("sub", DogFunction.ternary("str.sub", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            String s = requireString(v0, line, col, fullLine);
+            int a = requireInt(v1, line, col, fullLine);
+            int b = requireInt(v2, line, col, fullLine);
             if (a < 0 || b < 0 || a > s.length() || b > s.length() || a > b) {
                 throw DogException.at(line, col, fullLine, "str.sub(s,a,b): bad range");
             }
             return Value.str(s.substring(a, b));
-        });
+        }));
+        TreeSet<String> names = new TreeSet<String>(fns.keySet());
+        members = Collections.unmodifiableList(new ArrayList<String>(names));
     }
 
     @Override
@@ -85,13 +90,13 @@ public final class StringModule implements DogModule {
     }
 
     @Override
-    public Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
-        Fn fn = fns.get(member);
-        if (fn == null) {
-            throw DogException.at(line, col, fullLine,
-                    "Unknown str function: " + member + ". Available: " + String.join(", ", fns.keySet()));
-        }
-        return fn.run(args, ctx, line, col, fullLine);
+    public List<String> members() {
+        return members;
+    }
+
+    @Override
+    public DogFunction resolve(String member) {
+        return fns.get(member);
     }
 
     @Override
@@ -99,10 +104,9 @@ public final class StringModule implements DogModule {
         throw DogException.at(line, col, fullLine, "str has no constants. Use functions like str.len(...)");
     }
 
-    private static void requireCount(List<Value> args, int n, String fn, int line, int col, String fullLine) {
-        if (args.size() != n) {
-            throw DogException.at(line, col, fullLine, "str." + fn + "(...) expects " + n + " argument(s)");
-        }
+    @Override
+    public boolean isPure(String member) {
+        return PURE.contains(member);
     }
 
     private static String requireString(Value v, int line, int col, String fullLine) {
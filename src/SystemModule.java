@@ -1,6 +1,11 @@
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public final class SystemModule implements DogModule {
+    private static final List<String> MEMBERS = Collections.unmodifiableList(Arrays.asList(
+            "os", "java", "user", "cwd", "checkpoint"));
+
     @Override
     public String name() {
         return "sys";
@@ -17,10 +22,18 @@ public final class SystemModule implements DogModule {
                 return Value.str(System.getProperty("user.name"));
             case "cwd":
                 return Value.str(System.getProperty("user.dir"));
+            case "checkpoint":
+                // Marks the end of the init phase for `--snapshot`; an ordinary run just continues.
+                return Value.nil();
         }
         throw DogException.at(line, col, src, "Unknown sys function: " + member);
     }
 
+    @Override
+    public List<String> members() {
+        return MEMBERS;
+    }
+
     @Override
     public Value getConstant(String member, DogContext ctx, int line, int col, String src) {
         return Value.nil();
@@ -4,235 +4,229 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class TimeModule implements DogModule {
+    private static final List<String> MEMBERS = Collections.unmodifiableList(Arrays.asList(
+            "now", "nowMillis", "nowSeconds", "sleep", "formatNow", "formatMillis", "isoNow", "isoMillis", "zone",
+            "offsetSeconds", "parseMillis", "year", "month", "day", "hour", "minute", "second", "weekday", "dayOfYear",
+            "measureStart", "measureEnd", "deadline", "expired", "waitUntil", "diff", "max", "min", "clamp",
+            "addMillis", "addSeconds", "addMinutes", "addHours", "addDays", "human", "humanDiff", "unique", "seed"));
 
-    @Override
-    public String name() {
-        return "time";
-    }
+    private final Map<String, DogFunction> fns = new HashMap<String, DogFunction>();
 
-    @Override
-    public Value call(String member, List<Value> args, DogContext ctx, int line, int col, String fullLine) {
-        switch (member) {
-            case "now":
-            case "nowMillis":
-                requireCount(args, 0, member, line, col, fullLine);
-                return Value.ofLong(System.currentTimeMillis());
-            case "nowSeconds":
-                requireCount(args, 0, member, line, col, fullLine);
-                return Value.ofLong(Instant.now().getEpochSecond());
-            case "sleep":
-                requireCount(args, 1, "sleep", line, col, fullLine);
-                long ms = requireLong(args.get(0), line, col, fullLine);
-                if (ms < 0)
-                    throw DogException.at(line, col, fullLine, "time.sleep(ms): must be >= 0");
+    public TimeModule() {
+        fns.put("now", DogFunction.nullary("time.now", (ctx, line, col, fullLine) -> {
+            return Value.ofLong(System.currentTimeMillis());
+        }));
+        fns.put("nowMillis", DogFunction.nullary("time.nowMillis", (ctx, line, col, fullLine) -> {
+            return Value.ofLong(System.currentTimeMillis());
+        }));
+        fns.put("nowSeconds", DogFunction.nullary("time.nowSeconds", (ctx, line, col, fullLine) -> {
+            return Value.ofLong(Instant.now().getEpochSecond());
+        }));
+        fns.put("sleep", DogFunction.unary("time.sleep", (v0, ctx, line, col, fullLine) -> {
+            long ms = requireLong(v0, line, col, fullLine);
+            if (ms < 0)
+                throw DogException.at(line, col, fullLine, "time.sleep(ms): must be >= 0");
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Value.nil();
+        }));
+        fns.put("formatNow", DogFunction.unary("time.formatNow", (v0, ctx, line, col, fullLine) -> {
+            String pattern = requireString(v0, line, col, fullLine);
+            return Value.str(LocalDateTime.now().format(DateTimeFormatter.ofPattern(pattern)));
+        }));
+        fns.put("formatMillis", DogFunction.binary("time.formatMillis", (v0, v1, ctx, line, col, fullLine) -> {
+            long ms2 = requireLong(v0, line, col, fullLine);
+            String pat = requireString(v1, line, col, fullLine);
+            DateTimeFormatter f2 = DateTimeFormatter.ofPattern(pat);
+            LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(ms2), ZoneId.systemDefault());
+            return Value.str(dt.format(f2));
+        }));
+        fns.put("isoNow", DogFunction.nullary("time.isoNow", (ctx, line, col, fullLine) -> {
+            return Value.str(Instant.now().toString());
+        }));
+        fns.put("isoMillis", DogFunction.unary("time.isoMillis", (v0, ctx, line, col, fullLine) -> {
+            long msIso = requireLong(v0, line, col, fullLine);
+            return Value.str(Instant.ofEpochMilli(msIso).toString());
+        }));
+        fns.put("zone", DogFunction.nullary("time.zone", (ctx, line, col, fullLine) -> {
+            return Value.str(ZoneId.systemDefault().getId());
+        }));
+        fns.put("offsetSeconds", DogFunction.nullary("time.offsetSeconds", (ctx, line, col, fullLine) -> {
+            ZonedDateTime zdt = ZonedDateTime.now(ZoneId.systemDefault());
+            return Value.ofInt(zdt.getOffset().getTotalSeconds());
+        }));
+        fns.put("parseMillis", DogFunction.binary("time.parseMillis", (v0, v1, ctx, line, col, fullLine) -> {
+            String text = requireString(v0, line, col, fullLine);
+            String fmtStr = requireString(v1, line, col, fullLine);
+            try {
+                DateTimeFormatter fmtP = DateTimeFormatter.ofPattern(fmtStr);
+                LocalDateTime ldt = LocalDateTime.parse(text, fmtP);
+                long outMs = ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                return Value.ofLong(outMs);
+            } catch (IllegalArgumentException e) {
+                throw DogException.at(line, col, fullLine,
+                        "time.parseMillis: bad format pattern: " + e.getMessage());
+            } catch (DateTimeParseException e) {
+                throw DogException.at(line, col, fullLine,
+                        "time.parseMillis: can't parse date: " + e.getParsedString());
+            }
+        }));
+        fns.put("year", DogFunction.nullary("time.year", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getYear());
+        }));
+        fns.put("month", DogFunction.nullary("time.month", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getMonthValue());
+        }));
+        fns.put("day", DogFunction.nullary("time.day", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getDayOfMonth());
+        }));
+        fns.put("hour", DogFunction.nullary("time.hour", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getHour());
+        }));
+        fns.put("minute", DogFunction.nullary("time.minute", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getMinute());
+        }));
+        fns.put("second", DogFunction.nullary("time.second", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getSecond());
+        }));
+        fns.put("weekday", DogFunction.nullary("time.weekday", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getDayOfWeek().getValue());
+        }));
+        fns.put("dayOfYear", DogFunction.nullary("time.dayOfYear", (ctx, line, col, fullLine) -> {
+            return Value.ofInt(LocalDateTime.now().getDayOfYear());
+        }));
+        fns.put("measureStart", DogFunction.nullary("time.measureStart", (ctx, line, col, fullLine) -> {
+            return Value.ofLong(System.nanoTime() / 1_000_000L);
+        }));
+        fns.put("measureEnd", DogFunction.unary("time.measureEnd", (v0, ctx, line, col, fullLine) -> {
+            long startMs = requireLong(v0, line, col, fullLine);
+            long nowMs = System.nanoTime() / 1_000_000L;
+            return Value.ofLong(nowMs - startMs);
+        }));
+        fns.put("deadline", DogFunction.unary("time.deadline", (v0, ctx, line, col, fullLine) -> {
+            long delta = requireLong(v0, line, col, fullLine);
+            return Value.ofLong(System.currentTimeMillis() + delta);
+        }));
+        fns.put("expired", DogFunction.unary("time.expired", (v0, ctx, line, col, fullLine) -> {
+            long deadline = requireLong(v0, line, col, fullLine);
+            return Value.bool(System.currentTimeMillis() >= deadline);
+        }));
+        fns.put("waitUntil", DogFunction.unary("time.waitUntil", (v0, ctx, line, col, fullLine) -> {
+            long deadline = requireLong(v0, line, col, fullLine);
+            long now = System.currentTimeMillis();
+            long left = deadline - now;
+            if (left > 0) {
                 try {
-                    Thread.sleep(ms);
+                    Thread.sleep(left);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
-                return Value.nil();
-            case "formatNow":
-                requireCount(args, 1, "formatNow", line, col, fullLine);
-                String pattern = requireString(args.get(0), line, col, fullLine);
-                return Value.str(LocalDateTime.now().format(DateTimeFormatter.ofPattern(pattern)));
-            case "formatMillis":
-                requireCount(args, 2, "formatMillis", line, col, fullLine);
-                long ms2 = requireLong(args.get(0), line, col, fullLine);
-                String pat = requireString(args.get(1), line, col, fullLine);
-                DateTimeFormatter f2 = DateTimeFormatter.ofPattern(pat);
-                LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(ms2), ZoneId.systemDefault());
-                return Value.str(dt.format(f2));
-            case "isoNow":
-                requireCount(args, 0, "isoNow", line, col, fullLine);
-                return Value.str(Instant.now().toString());
-            case "isoMillis":
-                requireCount(args, 1, "isoMillis", line, col, fullLine);
-                long msIso = requireLong(args.get(0), line, col, fullLine);
-                return Value.str(Instant.ofEpochMilli(msIso).toString());
-            case "zone":
-                requireCount(args, 0, "zone", line, col, fullLine);
-                return Value.str(ZoneId.systemDefault().getId());
-            case "offsetSeconds":
-                requireCount(args, 0, "offsetSeconds", line, col, fullLine);
-                ZonedDateTime zdt = ZonedDateTime.now(ZoneId.systemDefault());
-                return Value.ofInt(zdt.getOffset().getTotalSeconds());
-            case "parseMillis":
-                requireCount(args, 2, "parseMillis", line, col, fullLine);
-                String text = requireString(args.get(0), line, col, fullLine);
-                String fmtStr = requireString(args.get(1), line, col, fullLine);
-                try {
-                    DateTimeFormatter fmtP = DateTimeFormatter.ofPattern(fmtStr);
-                    LocalDateTime ldt = LocalDateTime.parse(text, fmtP);
-                    long outMs = ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    return Value.ofLong(outMs);
-                } catch (IllegalArgumentException e) {
-                    throw DogException.at(line, col, fullLine,
-                            "time.parseMillis: bad format pattern: " + e.getMessage());
-                } catch (DateTimeParseException e) {
-                    throw DogException.at(line, col, fullLine,
-                            "time.parseMillis: can't parse date: " + e.getParsedString());
-                }
-            case "year":
-                requireCount(args, 0, "year", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getYear());
-            case "month":
-                requireCount(args, 0, "month", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getMonthValue());
-            case "day":
-                requireCount(args, 0, "day", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getDayOfMonth());
-            case "hour":
-                requireCount(args, 0, "hour", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getHour());
-            case "minute":
-                requireCount(args, 0, "minute", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getMinute());
-            case "second":
-                requireCount(args, 0, "second", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getSecond());
-            case "weekday":
-                requireCount(args, 0, "weekday", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getDayOfWeek().getValue());
-            case "dayOfYear":
-                requireCount(args, 0, "dayOfYear", line, col, fullLine);
-                return Value.ofInt(LocalDateTime.now().getDayOfYear());
-            case "measureStart":
-                requireCount(args, 0, "measureStart", line, col, fullLine);
-                return Value.ofLong(System.nanoTime() / 1_000_000L);
-            case "measureEnd":
-                requireCount(args, 1, "measureEnd", line, col, fullLine);
-                long startMs = requireLong(args.get(0), line, col, fullLine);
-                long nowMs = System.nanoTime() / 1_000_000L;
-                return Value.ofLong(nowMs - startMs);
-            case "deadline": {
-                requireCount(args, 1, "deadline", line, col, fullLine);
-                long delta = requireLong(args.get(0), line, col, fullLine);
-                return Value.ofLong(System.currentTimeMillis() + delta);
             }
-            case "expired": {
-                requireCount(args, 1, "expired", line, col, fullLine);
-                long deadline = requireLong(args.get(0), line, col, fullLine);
-                return Value.bool(System.currentTimeMillis() >= deadline);
+            return Value.nil();
+        }));
+        fns.put("diff", DogFunction.binary("time.diff", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = requireLong(v0, line, col, fullLine);
+            long b = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(b - a);
+        }));
+        fns.put("max", DogFunction.binary("time.max", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = requireLong(v0, line, col, fullLine);
+            long b = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(Math.max(a, b));
+        }));
+        fns.put("min", DogFunction.binary("time.min", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = requireLong(v0, line, col, fullLine);
+            long b = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(Math.min(a, b));
+        }));
+        fns.put("clamp", DogFunction.ternary("time.clamp", (v0, v1, v2, ctx, line, col, fullLine) -> {
+            long x = requireLong(v0, line, col, fullLine);
+            long lo = requireLong(v1, line, col, fullLine);
+            long hi = requireLong(v2, line, col, fullLine);
+            if (lo > hi) {
+                long t = lo;
+                lo = hi;
+                hi = t;
             }
+            if (x < lo)
+                x = lo;
+            if (x > hi)
+                x = hi;
+            return Value.ofLong(x);
+        }));
+        fns.put("addMillis", DogFunction.binary("time.addMillis", (v0, v1, ctx, line, col, fullLine) -> {
+            long msBase = requireLong(v0, line, col, fullLine);
+            long delta = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(msBase + delta);
+        }));
+        fns.put("addSeconds", DogFunction.binary("time.addSeconds", (v0, v1, ctx, line, col, fullLine) -> {
+            long msBase = requireLong(v0, line, col, fullLine);
+            long s = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(msBase + safeMul(s, 1000L, line, col, fullLine));
+        }));
+        fns.put("addMinutes", DogFunction.binary("time.addMinutes", (v0, v1, ctx, line, col, fullLine) -> {
+            long msBase = requireLong(v0, line, col, fullLine);
+            long m = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(msBase + safeMul(m, 60_000L, line, col, fullLine));
+        }));
+        fns.put("addHours", DogFunction.binary("time.addHours", (v0, v1, ctx, line, col, fullLine) -> {
+            long msBase = requireLong(v0, line, col, fullLine);
+            long h = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(msBase + safeMul(h, 3_600_000L, line, col, fullLine));
+        }));
+        fns.put("addDays", DogFunction.binary("time.addDays", (v0, v1, ctx, line, col, fullLine) -> {
+            long msBase = requireLong(v0, line, col, fullLine);
+            long d = requireLong(v1, line, col, fullLine);
+            return Value.ofLong(msBase + safeMul(d, 86_400_000L, line, col, fullLine));
+        }));
+        fns.put("human", DogFunction.unary("time.human", (v0, ctx, line, col, fullLine) -> {
+            long msVal = requireLong(v0, line, col, fullLine);
+            return Value.str(humanDuration(msVal));
+        }));
+        fns.put("humanDiff", DogFunction.binary("time.humanDiff", (v0, v1, ctx, line, col, fullLine) -> {
+            long a = requireLong(v0, line, col, fullLine);
+            long b = requireLong(v1, line, col, fullLine);
+            return Value.str(humanDuration(b - a));
+        }));
+        fns.put("unique", DogFunction.nullary("time.unique", (ctx, line, col, fullLine) -> {
+            long t = System.currentTimeMillis();
+            int r = (int) (System.nanoTime() & 0xFFFF);
+            return Value.str(Long.toString(t) + "-" + Integer.toString(r));
+        }));
+        fns.put("seed", DogFunction.nullary("time.seed", (ctx, line, col, fullLine) -> {
+            long s = System.currentTimeMillis() ^ (System.nanoTime() << 1);
+            return Value.ofLong(s);
+        }));
+    }
 
-            case "waitUntil": {
-                requireCount(args, 1, "waitUntil", line, col, fullLine);
-                long deadline = requireLong(args.get(0), line, col, fullLine);
-                long now = System.currentTimeMillis();
-                long left = deadline - now;
-                if (left > 0) {
-                    try {
-                        Thread.sleep(left);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                return Value.nil();
-            }
-            case "diff": {
-                requireCount(args, 2, "diff", line, col, fullLine);
-                long a = requireLong(args.get(0), line, col, fullLine);
-                long b = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(b - a);
-            }
-            case "max": {
-                requireCount(args, 2, "max", line, col, fullLine);
-                long a = requireLong(args.get(0), line, col, fullLine);
-                long b = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(Math.max(a, b));
-            }
-            case "min": {
-                requireCount(args, 2, "min", line, col, fullLine);
-                long a = requireLong(args.get(0), line, col, fullLine);
-                long b = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(Math.min(a, b));
-            }
-            case "clamp": {
-                requireCount(args, 3, "clamp", line, col, fullLine);
-                long x = requireLong(args.get(0), line, col, fullLine);
-                long lo = requireLong(args.get(1), line, col, fullLine);
-                long hi = requireLong(args.get(2), line, col, fullLine);
-                if (lo > hi) {
-                    long t = lo;
-                    lo = hi;
-                    hi = t;
-                }
-                if (x < lo)
-                    x = lo;
-                if (x > hi)
-                    x = hi;
-                return Value.ofLong(x);
-            }
-            case "addMillis": {
-                requireCount(args, 2, "addMillis", line, col, fullLine);
-                long msBase = requireLong(args.get(0), line, col, fullLine);
-                long delta = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(msBase + delta);
-            }
-            case "addSeconds": {
-                requireCount(args, 2, "addSeconds", line, col, fullLine);
-                long msBase = requireLong(args.get(0), line, col, fullLine);
-                long s = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(msBase + safeMul(s, 1000L, line, col, fullLine));
-            }
-            case "addMinutes": {
-                requireCount(args, 2, "addMinutes", line, col, fullLine);
-                long msBase = requireLong(args.get(0), line, col, fullLine);
-                long m = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(msBase + safeMul(m, 60_000L, line, col, fullLine));
-            }
-            case "addHours": {
-                requireCount(args, 2, "addHours", line, col, fullLine);
-                long msBase = requireLong(args.get(0), line, col, fullLine);
-                long h = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(msBase + safeMul(h, 3_600_000L, line, col, fullLine));
-            }
-            case "addDays": {
-                requireCount(args, 2, "addDays", line, col, fullLine);
-                long msBase = requireLong(args.get(0), line, col, fullLine);
-                long d = requireLong(args.get(1), line, col, fullLine);
-                return Value.ofLong(msBase + safeMul(d, 86_400_000L, line, col, fullLine));
-            }
-            case "human": {
-                requireCount(args, 1, "human", line, col, fullLine);
-                long msVal = requireLong(args.get(0), line, col, fullLine);
-                return Value.str(humanDuration(msVal));
-            }
+    @Override
+    public String name() {
+        return "time";
+    }
 
-            case "humanDiff": {
-                requireCount(args, 2, "humanDiff", line, col, fullLine);
-                long a = requireLong(args.get(0), line, col, fullLine);
-                long b = requireLong(args.get(1), line, col, fullLine);
-                return Value.str(humanDuration(b - a));
-            }
-            case "unique": {
-                requireCount(args, 0, "unique", line, col, fullLine);
-                long t = System.currentTimeMillis();
-                int r = (int) (System.nanoTime() & 0xFFFF);
-                return Value.str(Long.toString(t) + "-" + Integer.toString(r));
-            }
-            case "seed": {
-                requireCount(args, 0, "seed", line, col, fullLine);
-                long s = System.currentTimeMillis() ^ (System.nanoTime() << 1);
-                return Value.ofLong(s);
-            }
-            default:
-                throw DogException.at(line, col, fullLine, "Unknown function in time module: " + member);
-        }
+    @Override
+    public List<String> members() {
+        return MEMBERS;
     }
 
     @Override
-    public Value getConstant(String member, DogContext ctx, int line, int col, String fullLine) {
-        throw DogException.at(line, col, fullLine, "time module has no constants");
+    public DogFunction resolve(String member) {
+        return fns.get(member);
     }
 
-    private static void requireCount(List<Value> args, int n, String fn, int line, int col, String fullLine) {
-        if (args.size() != n) {
-            throw DogException.at(line, col, fullLine, "time." + fn + "(...) expects " + n + " argument(s)");
-        }
+    @Override
+    public Value getConstant(String member, DogContext ctx, int line, int col, String fullLine) {
+        throw DogException.at(line, col, fullLine, "time module has no constants");
     }
 
     private static String requireString(Value v, int line, int col, String fullLine) {
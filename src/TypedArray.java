@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+public final class TypedArray {
+
+    public enum Elem {
+        INT, LONG, DOUBLE
+    }
+
+    public final Elem elem;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private int size;
+
+    private TypedArray(Elem elem, int capacity) {
+        this.elem = elem;
+        int cap = Math.max(0, capacity);
+        switch (elem) {
+            case INT:
+                ints = new int[cap];
+                break;
+            case LONG:
+                longs = new long[cap];
+                break;
+            default:
+                doubles = new double[cap];
+                break;
+        }
+    }
+
+    public static TypedArray zeros(Elem elem, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("negative size: " + n);
+        TypedArray a = new TypedArray(elem, n);
+        a.size = n;
+        return a;
+    }
+
+    public static TypedArray ofInts(int[] data) {
+        TypedArray a = new TypedArray(Elem.INT, 0);
+        a.ints = data;
+        a.size = data.length;
+        return a;
+    }
+
+    public static TypedArray ofLongs(long[] data) {
+        TypedArray a = new TypedArray(Elem.LONG, 0);
+        a.longs = data;
+        a.size = data.length;
+        return a;
+    }
+
+    public static TypedArray ofDoubles(double[] data) {
+        TypedArray a = new TypedArray(Elem.DOUBLE, 0);
+        a.doubles = data;
+        a.size = data.length;
+        return a;
+    }
+
+    public TypedArray copy() {
+        switch (elem) {
+            case INT:
+                return ofInts(Arrays.copyOf(ints, size));
+            case LONG:
+                return ofLongs(Arrays.copyOf(longs, size));
+            default:
+                return ofDoubles(Arrays.copyOf(doubles, size));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String elemName() {
+        switch (elem) {
+            case INT:
+                return "int";
+            case LONG:
+                return "long";
+            default:
+                return "double";
+        }
+    }
+
+    public Value get(int i) {
+        switch (elem) {
+            case INT:
+                return Value.ofInt(ints[i]);
+            case LONG:
+                return Value.ofLong(longs[i]);
+            default:
+                return Value.ofDouble(doubles[i]);
+        }
+    }
+
+    public long getLong(int i) {
+        switch (elem) {
+            case INT:
+                return ints[i];
+            case LONG:
+                return longs[i];
+            default:
+                return (long) doubles[i];
+        }
+    }
+
+    public double getDouble(int i) {
+        switch (elem) {
+            case INT:
+                return ints[i];
+            case LONG:
+                return longs[i];
+            default:
+                return doubles[i];
+        }
+    }
+
+    public boolean accepts(Value v) {
+        if (v == null || !v.isNumber())
+            return false;
+        switch (elem) {
+            case INT:
+                if (v.kind == Value.Kind.INT)
+                    return true;
+                if (v.kind == Value.Kind.LONG)
+                    return v.longVal >= Integer.MIN_VALUE && v.longVal <= Integer.MAX_VALUE;
+                if (v.kind == Value.Kind.DOUBLE)
+                    return v.doubleVal == Math.rint(v.doubleVal)
+                            && v.doubleVal >= Integer.MIN_VALUE && v.doubleVal <= Integer.MAX_VALUE;
+                return v.bigIntVal.bitLength() <= 31;
+            case LONG:
+                if (v.kind == Value.Kind.INT || v.kind == Value.Kind.LONG)
+                    return true;
+                if (v.kind == Value.Kind.DOUBLE)
+                    return v.doubleVal == Math.rint(v.doubleVal)
+                            && v.doubleVal >= Long.MIN_VALUE && v.doubleVal < Long.MAX_VALUE;
+                return v.bigIntVal.bitLength() <= 63;
+            default:
+                return true;
+        }
+    }
+
+    public void set(int i, Value v) {
+        if (i >= size) {
+            ensureCapacity(i + 1);
+            clearRange(size, i);
+            size = i + 1;
+        }
+        switch (elem) {
+            case INT:
+                ints[i] = (int) v.toLong();
+                break;
+            case LONG:
+                longs[i] = v.toLong();
+                break;
+            default:
+                doubles[i] = v.toDouble();
+                break;
+        }
+    }
+
+    public void add(Value v) {
+        set(size, v);
+    }
+
+    public Value removeLast() {
+        if (size == 0)
+            return Value.nil();
+        Value v = get(size - 1);
+        size--;
+        return v;
+    }
+
+    // Ascending, in place; parallel from DogSort.PARALLEL_MIN elements.
+    public void sort() {
+        boolean parallel = size >= DogSort.PARALLEL_MIN;
+        switch (elem) {
+            case INT:
+                if (parallel)
+                    Arrays.parallelSort(ints, 0, size);
+                else
+                    Arrays.sort(ints, 0, size);
+                break;
+            case LONG:
+                if (parallel)
+                    Arrays.parallelSort(longs, 0, size);
+                else
+                    Arrays.sort(longs, 0, size);
+                break;
+            default:
+                if (parallel)
+                    Arrays.parallelSort(doubles, 0, size);
+                else
+                    Arrays.sort(doubles, 0, size);
+                break;
+        }
+    }
+
+    private void ensureCapacity(int min) {
+        int cap = capacity();
+        if (min <= cap)
+            return;
+        int n = Math.max(min, cap + (cap >> 1) + 8);
+        switch (elem) {
+            case INT:
+                ints = Arrays.copyOf(ints, n);
+                break;
+            case LONG:
+                longs = Arrays.copyOf(longs, n);
+                break;
+            default:
+                doubles = Arrays.copyOf(doubles, n);
+                break;
+        }
+    }
+
+    private void clearRange(int from, int to) {
+        if (from >= to)
+            return;
+        switch (elem) {
+            case INT:
+                Arrays.fill(ints, from, to, 0);
+                break;
+            case LONG:
+                Arrays.fill(longs, from, to, 0L);
+                break;
+            default:
+                Arrays.fill(doubles, from, to, 0.0);
+                break;
+        }
+    }
+
+    private int capacity() {
+        switch (elem) {
+            case INT:
+                return ints.length;
+            case LONG:
+                return longs.length;
+            default:
+                return doubles.length;
+        }
+    }
+
+    public String printable() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(get(i).printable());
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
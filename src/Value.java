@@ -9,7 +9,8 @@ public final class Value {
     public enum Kind {
         INT, LONG, DOUBLE, BIGINT,
         STRING, BOOL, NIL,
-        ARRAY,
+        ARRAY, TYPED_ARRAY,
+        RANGE, ITERATOR,
         FUNCTION
     }
 
@@ -21,14 +22,18 @@ public final class Value {
     public final String stringVal;
     public final boolean boolVal;
     public final ArrayList<Value> arrayVal;
+    public final TypedArray typedVal;
     public final FunctionProto funcProto;
     public final Map<String, Value> closure;
+    public final DogRange rangeVal;
+    public final DogIterator iterVal;
 
     private Value(Kind kind,
             int intVal, long longVal, double doubleVal, BigInteger bigIntVal,
             String stringVal, boolean boolVal,
-            ArrayList<Value> arrayVal,
-            FunctionProto funcProto, Map<String, Value> closure) {
+            ArrayList<Value> arrayVal, TypedArray typedVal,
+            FunctionProto funcProto, Map<String, Value> closure,
+            DogRange rangeVal, DogIterator iterVal) {
         this.kind = kind;
         this.intVal = intVal;
         this.longVal = longVal;
@@ -37,52 +42,80 @@ public final class Value {
         this.stringVal = stringVal;
         this.boolVal = boolVal;
         this.arrayVal = arrayVal;
+        this.typedVal = typedVal;
         this.funcProto = funcProto;
         this.closure = closure;
+        this.rangeVal = rangeVal;
+        this.iterVal = iterVal;
     }
 
     public static Value ofInt(int v) {
-        return new Value(Kind.INT, v, 0L, 0.0, null, null, false, null, null, null);
+        return new Value(Kind.INT, v, 0L, 0.0, null, null, false, null, null, null, null, null, null);
     }
 
     public static Value ofLong(long v) {
-        return new Value(Kind.LONG, 0, v, 0.0, null, null, false, null, null, null);
+        return new Value(Kind.LONG, 0, v, 0.0, null, null, false, null, null, null, null, null, null);
     }
 
     public static Value ofDouble(double v) {
-        return new Value(Kind.DOUBLE, 0, 0L, v, null, null, false, null, null, null);
+        return new Value(Kind.DOUBLE, 0, 0L, v, null, null, false, null, null, null, null, null, null);
     }
 
     public static Value ofBigInt(BigInteger v) {
         if (v == null)
             v = BigInteger.ZERO;
-        return new Value(Kind.BIGINT, 0, 0L, 0.0, v, null, false, null, null, null);
+        return new Value(Kind.BIGINT, 0, 0L, 0.0, v, null, false, null, null, null, null, null, null);
     }
 
     public static Value str(String s) {
-        return new Value(Kind.STRING, 0, 0L, 0.0, null, s == null ? "" : s, false, null, null, null);
+        return new Value(Kind.STRING, 0, 0L, 0.0, null, s == null ? "" : s, false, null, null, null, null, null,
+                null);
     }
 
     public static Value bool(boolean b) {
-        return new Value(Kind.BOOL, 0, 0L, 0.0, null, null, b, null, null, null);
+        return new Value(Kind.BOOL, 0, 0L, 0.0, null, null, b, null, null, null, null, null, null);
     }
 
     public static Value nil() {
-        return new Value(Kind.NIL, 0, 0L, 0.0, null, null, false, null, null, null);
+        return new Value(Kind.NIL, 0, 0L, 0.0, null, null, false, null, null, null, null, null, null);
     }
 
     public static Value array(List<Value> items) {
         ArrayList<Value> a = new ArrayList<Value>();
         if (items != null)
             a.addAll(items);
-        return new Value(Kind.ARRAY, 0, 0L, 0.0, null, null, false, a, null, null);
+        return new Value(Kind.ARRAY, 0, 0L, 0.0, null, null, false, a, null, null, null, null, null);
+    }
+
+    public static Value arrayOwned(ArrayList<Value> items) {
+        if (items == null)
+            items = new ArrayList<Value>();
+        return new Value(Kind.ARRAY, 0, 0L, 0.0, null, null, false, items, null, null, null, null, null);
+    }
+
+    public static Value typedArray(TypedArray arr) {
+        if (arr == null)
+            throw new IllegalArgumentException("arr is null");
+        return new Value(Kind.TYPED_ARRAY, 0, 0L, 0.0, null, null, false, null, arr, null, null, null, null);
+    }
+
+    public static Value range(DogRange r) {
+        if (r == null)
+            throw new IllegalArgumentException("range is null");
+        return new Value(Kind.RANGE, 0, 0L, 0.0, null, null, false, null, null, null, null, r, null);
+    }
+
+    public static Value iterator(DogIterator it) {
+        if (it == null)
+            throw new IllegalArgumentException("iterator is null");
+        return new Value(Kind.ITERATOR, 0, 0L, 0.0, null, null, false, null, null, null, null, null, it);
     }
 
     public static Value function(FunctionProto proto, Map<String, Value> closure) {
         if (proto == null)
             throw new IllegalArgumentException("proto is null");
         Map<String, Value> cap = (closure == null) ? Collections.emptyMap() : closure;
-        return new Value(Kind.FUNCTION, 0, 0L, 0.0, null, null, false, null, proto, cap);
+        return new Value(Kind.FUNCTION, 0, 0L, 0.0, null, null, false, null, null, proto, cap, null, null);
     }
 
     public boolean isNumber() {
@@ -105,6 +138,14 @@ public final class Value {
         return kind == Kind.ARRAY;
     }
 
+    public boolean isTypedArray() {
+        return kind == Kind.TYPED_ARRAY;
+    }
+
+    public boolean isRange() {
+        return kind == Kind.RANGE;
+    }
+
     public boolean isFunction() {
         return kind == Kind.FUNCTION;
     }
@@ -124,6 +165,21 @@ public final class Value {
         }
     }
 
+    public long toLong() {
+        switch (kind) {
+            case INT:
+                return (long) intVal;
+            case LONG:
+                return longVal;
+            case DOUBLE:
+                return (long) doubleVal;
+            case BIGINT:
+                return bigIntVal.longValue();
+            default:
+                return 0L;
+        }
+    }
+
     public BigInteger toBigInteger() {
         switch (kind) {
             case INT:
@@ -180,6 +236,12 @@ public final class Value {
                 sb.append("]");
                 return sb.toString();
             }
+            case TYPED_ARRAY:
+                return typedVal.printable();
+            case RANGE:
+                return rangeVal.printable();
+            case ITERATOR:
+                return "<iterator>";
             case FUNCTION:
                 return "<fn(" + String.join(",", funcProto.params) + ")>";
         }